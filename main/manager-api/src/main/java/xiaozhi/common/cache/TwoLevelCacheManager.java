@@ -0,0 +1,208 @@
+package xiaozhi.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.utils.TransactionUtils;
+
+/**
+ * 两级缓存（本地缓存 + Redis）
+ * <p>
+ * 读取顺序为本地缓存、Redis、loader，下层命中时回填上层；loader返回null时不缓存。
+ * 失效时删除Redis缓存和本节点的本地缓存，并通过Redis频道通知其他节点失效本地缓存。
+ * 本地缓存中的对象由所有调用方共享，调用方如需修改返回值应先复制。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TwoLevelCacheManager implements MessageListener {
+    /**
+     * 通知消息中缓存类型与key的分隔符
+     */
+    private static final String SEPARATOR = "|";
+
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final Map<TwoLevelCacheType, Cache<String, Object>> localCaches = new EnumMap<>(TwoLevelCacheType.class);
+
+    @PostConstruct
+    public void init() {
+        for (TwoLevelCacheType type : TwoLevelCacheType.values()) {
+            localCaches.put(type, CacheBuilder.newBuilder()
+                    .maximumSize(type.getLocalMaximumSize())
+                    .expireAfterWrite(type.getLocalExpireSeconds(), TimeUnit.SECONDS)
+                    .build());
+        }
+        redisMessageListenerContainer.addMessageListener(this,
+                new ChannelTopic(RedisKeys.getTwoLevelCacheEvictChannel()));
+    }
+
+    /**
+     * 获取缓存，两级缓存都未命中时通过loader加载
+     *
+     * @param type   缓存类型
+     * @param key    业务key
+     * @param loader 加载数据的方法
+     * @return 缓存数据，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(TwoLevelCacheType type, String key, Function<String, V> loader) {
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        Cache<String, Object> localCache = localCaches.get(type);
+        Object value = localCache.getIfPresent(key);
+        if (value != null) {
+            return (V) value;
+        }
+        value = redisUtils.get(type.getRedisKey().apply(key));
+        if (value != null) {
+            localCache.put(key, value);
+            return (V) value;
+        }
+        return load(type, key, loader);
+    }
+
+    /**
+     * 批量获取缓存，本地缓存未命中的一次从Redis批量读取，仍未命中的一次通过loader批量加载
+     *
+     * @param type   缓存类型
+     * @param keys   业务key
+     * @param loader 批量加载数据的方法，返回业务key与数据，不存在的key不返回
+     * @return 业务key与缓存数据，不存在的key不返回
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> getAll(TwoLevelCacheType type, Collection<String> keys,
+            Function<Collection<String>, Map<String, V>> loader) {
+        Map<String, V> result = new HashMap<>();
+        List<String> missingKeys = new ArrayList<>();
+        Cache<String, Object> localCache = localCaches.get(type);
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (StringUtils.isBlank(key)) {
+                continue;
+            }
+            Object value = localCache.getIfPresent(key);
+            if (value != null) {
+                result.put(key, (V) value);
+            } else {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+
+        List<Object> values = redisUtils.multiGet(missingKeys.stream().map(type.getRedisKey()).toList());
+        List<String> loadKeys = new ArrayList<>();
+        for (int i = 0; i < missingKeys.size(); i++) {
+            Object value = values == null ? null : values.get(i);
+            if (value != null) {
+                localCache.put(missingKeys.get(i), value);
+                result.put(missingKeys.get(i), (V) value);
+            } else {
+                loadKeys.add(missingKeys.get(i));
+            }
+        }
+        if (loadKeys.isEmpty()) {
+            return result;
+        }
+
+        Map<String, V> loaded = loader.apply(loadKeys);
+        loaded.forEach((key, value) -> {
+            if (value != null) {
+                redisUtils.set(type.getRedisKey().apply(key), value, type.getRedisExpireSeconds());
+                localCache.put(key, value);
+                result.put(key, value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 跳过缓存直接通过loader加载，并写入两级缓存
+     *
+     * @param type   缓存类型
+     * @param key    业务key
+     * @param loader 加载数据的方法
+     * @return 加载的数据，不存在时返回null
+     */
+    public <V> V load(TwoLevelCacheType type, String key, Function<String, V> loader) {
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        V value = loader.apply(key);
+        if (value != null) {
+            redisUtils.set(type.getRedisKey().apply(key), value, type.getRedisExpireSeconds());
+            localCaches.get(type).put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 使指定key的缓存在所有节点失效。处于事务中时提交后会再失效一次，避免提交前有请求用旧数据重建缓存
+     *
+     * @param type 缓存类型
+     * @param key  业务key
+     */
+    public void evict(TwoLevelCacheType type, String key) {
+        if (StringUtils.isBlank(key)) {
+            return;
+        }
+        TransactionUtils.runNowAndAfterCommit(() -> {
+            redisUtils.delete(type.getRedisKey().apply(key));
+            localCaches.get(type).invalidate(key);
+            publish(type.name() + SEPARATOR + key);
+        });
+    }
+
+    private void publish(String message) {
+        try {
+            redisUtils.publish(RedisKeys.getTwoLevelCacheEvictChannel(), message);
+        } catch (Exception e) {
+            // 通知失败时其他节点依靠本地缓存过期时间失效
+            log.error("发布缓存失效通知失败: {}", message, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisUtils.deserializeMessage(message.getBody());
+        if (!(body instanceof String text)) {
+            return;
+        }
+        int index = text.indexOf(SEPARATOR);
+        if (index <= 0) {
+            return;
+        }
+        try {
+            TwoLevelCacheType type = TwoLevelCacheType.valueOf(text.substring(0, index));
+            localCaches.get(type).invalidate(text.substring(index + 1));
+        } catch (IllegalArgumentException e) {
+            // 其他版本节点发布的未知缓存类型
+            log.debug("忽略未知的缓存失效通知: {}", text);
+        }
+    }
+}
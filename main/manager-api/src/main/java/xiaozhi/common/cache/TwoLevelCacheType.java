@@ -0,0 +1,60 @@
+package xiaozhi.common.cache;
+
+import java.util.function.Function;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+
+/**
+ * 两级缓存定义
+ * <p>
+ * 每一项对应一类缓存数据：本地缓存（L1）的容量和过期时间，Redis缓存（L2）的key和过期时间。
+ * 本地缓存的过期时间是跨节点失效通知丢失时的兜底，各节点读到旧数据的时间不会超过该值。
+ */
+@Getter
+@AllArgsConstructor
+public enum TwoLevelCacheType {
+    /**
+     * 模型配置（模型ID）
+     */
+    MODEL_CONFIG(RedisKeys::getModelConfigById, 1000, 60, RedisUtils.DEFAULT_EXPIRE),
+    /**
+     * 模型名称（模型ID）
+     */
+    MODEL_NAME(RedisKeys::getModelNameById, 2000, 300, RedisUtils.DEFAULT_EXPIRE),
+    /**
+     * 音色详情（音色ID）
+     */
+    TIMBRE_DETAILS(RedisKeys::getTimbreDetailsKey, 5000, 300, RedisUtils.DEFAULT_EXPIRE),
+    /**
+     * 音色名称（音色ID）
+     */
+    TIMBRE_NAME(RedisKeys::getTimbreNameById, 5000, 300, RedisUtils.DEFAULT_EXPIRE),
+    /**
+     * 字典数据（字典类型）
+     */
+    DICT_DATA(RedisKeys::getDictDataByTypeKey, 200, 300, RedisUtils.DEFAULT_EXPIRE),
+    /**
+     * 用户名（用户ID）
+     */
+    USERNAME(userId -> RedisKeys.getUserIdKey(Long.valueOf(userId)), 10000, 10, 10);
+
+    /**
+     * 由业务key生成Redis key
+     */
+    private final Function<String, String> redisKey;
+    /**
+     * 本地缓存最大条数
+     */
+    private final long localMaximumSize;
+    /**
+     * 本地缓存过期时间（秒）
+     */
+    private final long localExpireSeconds;
+    /**
+     * Redis缓存过期时间（秒）
+     */
+    private final long redisExpireSeconds;
+}
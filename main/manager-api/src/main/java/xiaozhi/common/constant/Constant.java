@@ -67,6 +67,14 @@ public interface Constant {
      * 每页显示记录数
      */
     String LIMIT = "limit";
+    /**
+     * 游标分页的游标，传空值表示游标分页的第一页
+     */
+    String CURSOR = "cursor";
+    /**
+     * 游标分页时是否统计总记录数
+     */
+    String WITH_TOTAL = "withTotal";
     /**
      * 排序字段
      */
@@ -122,11 +130,56 @@ public interface Constant {
      */
     String SERVER_MCP_ENDPOINT = "server.mcp_endpoint";
 
+    /**
+     * 设备是否优先分配到上次的websocket地址
+     */
+    String SERVER_WEBSOCKET_AFFINITY = "server.websocket_affinity";
+
     /**
      * mcp接入点路径
      */
     String SERVER_VOICE_PRINT = "server.voice_print";
 
+    /**
+     * 聊天记录保留天数，0表示永久保留
+     */
+    String SERVER_CHAT_HISTORY_RETENTION_DAYS = "server.chat_history_retention_days";
+
+    /**
+     * 聊天音频保留天数，0表示永久保留
+     */
+    String SERVER_CHAT_AUDIO_RETENTION_DAYS = "server.chat_audio_retention_days";
+
+    /**
+     * 每个智能体最多保留的聊天记录条数，0表示不限制
+     */
+    String SERVER_CHAT_HISTORY_MAX_MESSAGES = "server.chat_history_max_messages";
+
+    /**
+     * 固件发布后首批可升级的设备比例（0-100），100表示不分批
+     */
+    String SERVER_OTA_ROLLOUT_INITIAL_PERCENT = "server.ota_rollout_initial_percent";
+
+    /**
+     * 固件分批升级每次增加的设备比例（0-100）
+     */
+    String SERVER_OTA_ROLLOUT_STEP_PERCENT = "server.ota_rollout_step_percent";
+
+    /**
+     * 固件分批升级的间隔（分钟）
+     */
+    String SERVER_OTA_ROLLOUT_STEP_MINUTES = "server.ota_rollout_step_minutes";
+
+    /**
+     * 每个固件同时下载的最大设备数，0表示不限制
+     */
+    String SERVER_OTA_MAX_ACTIVE_DOWNLOADS = "server.ota_max_active_downloads";
+
+    /**
+     * 每个固件每秒最多下发的新下载地址数，0表示不限制
+     */
+    String SERVER_OTA_DOWNLOAD_RATE = "server.ota_download_rate";
+
     /**
      * 无记忆
      */
@@ -0,0 +1,186 @@
+package xiaozhi.common.page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.exception.ErrorCode;
+import xiaozhi.common.exception.RenException;
+import xiaozhi.common.utils.JsonUtils;
+
+/**
+ * 游标分页工具类
+ * <p>
+ * 游标是上一页最后一条记录的 (排序字段, 主键) 值，Base64编码后返回给调用方，调用方原样带回。
+ * 下一页按 (排序字段, 主键) 做范围查询，翻到多深都只扫描一页的数据，默认也不执行COUNT(*)。
+ * 排序字段必须非空，且排序字段和主键上需要有联合索引（InnoDB二级索引自带主键）。
+ */
+public class PageCursor {
+    /**
+     * 默认每页记录数
+     */
+    private static final int DEFAULT_LIMIT = 10;
+    /**
+     * 每页最多记录数
+     */
+    private static final int MAX_LIMIT = 1000;
+
+    private final String sortValue;
+    private final String idValue;
+
+    private PageCursor(String sortValue, String idValue) {
+        this.sortValue = sortValue;
+        this.idValue = idValue;
+    }
+
+    /**
+     * 请求参数中带了游标（可以为空值）时使用游标分页，否则仍按页码分页
+     */
+    public static boolean isCursorMode(Object cursor) {
+        return cursor != null;
+    }
+
+    public static boolean isCursorMode(Map<String, Object> params) {
+        return isCursorMode(params.get(Constant.CURSOR));
+    }
+
+    /**
+     * 游标分页时是否需要统计总记录数
+     */
+    public static boolean isWithTotal(Map<String, Object> params) {
+        return "true".equalsIgnoreCase(String.valueOf(params.get(Constant.WITH_TOTAL)));
+    }
+
+    /**
+     * 解析每页记录数
+     */
+    public static int parseLimit(Object limit) {
+        if (limit == null || StringUtils.isBlank(limit.toString())) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limit.toString())));
+        } catch (NumberFormatException e) {
+            throw new RenException(ErrorCode.PARAMS_GET_ERROR);
+        }
+    }
+
+    /**
+     * 解析游标，空值表示第一页，返回null
+     */
+    public static PageCursor decode(Object cursor) {
+        if (cursor == null || StringUtils.isBlank(cursor.toString())) {
+            return null;
+        }
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor.toString()), StandardCharsets.UTF_8);
+            List<String> values = JsonUtils.parseArray(json, String.class);
+            if (values == null || values.size() != 2) {
+                throw new RenException(ErrorCode.PARAMS_GET_ERROR);
+            }
+            return new PageCursor(values.get(0), values.get(1));
+        } catch (RenException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new RenException(ErrorCode.PARAMS_GET_ERROR);
+        }
+    }
+
+    /**
+     * 生成游标，日期按毫秒时间戳保存
+     */
+    public static String encode(Object sortValue, Object idValue) {
+        String json = JsonUtils.toJsonString(new String[] { toText(sortValue), toText(idValue) });
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 在查询条件中追加游标之后的范围条件和排序，并多查一条用于判断是否有下一页
+     *
+     * @param wrapper    查询条件
+     * @param cursor     游标，为null时查询第一页
+     * @param sortColumn 排序字段，为null时只按主键排序
+     * @param idColumn   主键字段
+     * @param asc        是否升序
+     * @param limit      每页记录数
+     * @param sortValueParser 游标中排序字段值的转换
+     * @param idValueParser   游标中主键值的转换
+     */
+    public static <T> void apply(QueryWrapper<T> wrapper, PageCursor cursor, String sortColumn, String idColumn,
+            boolean asc, int limit, Function<String, Object> sortValueParser, Function<String, Object> idValueParser) {
+        if (cursor != null) {
+            Object id = idValueParser.apply(cursor.idValue);
+            if (sortColumn == null) {
+                wrapper.gt(asc, idColumn, id).lt(!asc, idColumn, id);
+            } else {
+                Object sort = sortValueParser.apply(cursor.sortValue);
+                wrapper.and(w -> w.gt(asc, sortColumn, sort).lt(!asc, sortColumn, sort)
+                        .or(o -> o.eq(sortColumn, sort).gt(asc, idColumn, id).lt(!asc, idColumn, id)));
+            }
+        }
+        if (sortColumn != null) {
+            wrapper.orderBy(true, asc, sortColumn);
+        }
+        wrapper.orderBy(true, asc, idColumn);
+        wrapper.last("LIMIT " + (limit + 1));
+    }
+
+    /**
+     * 截掉多查的一条记录，返回下一页游标
+     *
+     * @param records   查询结果，会被截断为一页
+     * @param limit     每页记录数
+     * @param sortValue 取记录排序字段值，为null时只按主键排序
+     * @param idValue   取记录主键值
+     * @return 下一页游标，没有下一页时返回null
+     */
+    public static <T> String next(List<T> records, int limit, Function<T, Object> sortValue,
+            Function<T, Object> idValue) {
+        if (records.size() <= limit) {
+            return null;
+        }
+        records.subList(limit, records.size()).clear();
+        T last = records.get(limit - 1);
+        return encode(sortValue == null ? null : sortValue.apply(last), idValue.apply(last));
+    }
+
+    /**
+     * 毫秒时间戳游标值转日期
+     */
+    public static Date parseDate(String value) {
+        try {
+            return new Date(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            throw new RenException(ErrorCode.PARAMS_GET_ERROR);
+        }
+    }
+
+    /**
+     * 游标值转Long
+     */
+    public static Long parseLong(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new RenException(ErrorCode.PARAMS_GET_ERROR);
+        }
+    }
+
+    private static String toText(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Date date) {
+            return String.valueOf(date.getTime());
+        }
+        return value.toString();
+    }
+}
@@ -14,12 +14,15 @@ import lombok.Data;
 @Data
 @Schema(description = "分页数据")
 public class PageData<T> implements Serializable {
-    @Schema(description = "总记录数")
+    @Schema(description = "总记录数，游标分页且未统计总数时为-1")
     private int total;
 
     @Schema(description = "列表数据")
     private List<T> list;
 
+    @Schema(description = "下一页游标，没有下一页时为空")
+    private String nextCursor;
+
     /**
      * 分页
      *
@@ -30,4 +33,16 @@ public class PageData<T> implements Serializable {
         this.list = list;
         this.total = (int) total;
     }
+
+    /**
+     * 游标分页
+     *
+     * @param list       列表数据
+     * @param total      总记录数，未统计时为-1
+     * @param nextCursor 下一页游标
+     */
+    public PageData(List<T> list, long total, String nextCursor) {
+        this(list, total);
+        this.nextCursor = nextCursor;
+    }
 }
\ No newline at end of file
@@ -69,6 +69,48 @@ public class RedisKeys {
         return "agent:device:lastConnected:" + id;
     }
 
+    /**
+     * 设备缓存失效通知频道
+     */
+    public static String getDeviceCacheEvictChannel() {
+        return "channel:device:cache:evict";
+    }
+
+    /**
+     * 最近新增或变更的设备MAC地址标记，布隆过滤器判定不存在时用于确认
+     */
+    public static String getDeviceRecentMacKey(String macAddress) {
+        return "device:mac:recent:" + macAddress;
+    }
+
+    /**
+     * 两级缓存本地缓存失效通知频道
+     */
+    public static String getTwoLevelCacheEvictChannel() {
+        return "channel:cache:evict";
+    }
+
+    /**
+     * 配置变更事件通知频道
+     */
+    public static String getConfigChangeChannel() {
+        return "channel:config:change";
+    }
+
+    /**
+     * 系统参数版本号key，参数变更时递增
+     */
+    public static String getSysParamsVersionKey() {
+        return "sys:params:version";
+    }
+
+    /**
+     * 配置变更事件序号key
+     */
+    public static String getConfigChangeSeqKey() {
+        return "config:change:seq";
+    }
+
     /**
      * 获取系统配置缓存key
      */
@@ -76,6 +118,20 @@ public class RedisKeys {
         return "server:config";
     }
 
+    /**
+     * 获取系统配置版本号缓存key
+     */
+    public static String getServerConfigVersionKey() {
+        return "server:config:version";
+    }
+
+    /**
+     * 获取智能体配置快照缓存key
+     */
+    public static String getAgentConfigSnapshotKey() {
+        return "agent:config:snapshot";
+    }
+
     /**
      * 获取音色详情缓存key
      */
@@ -83,6 +139,20 @@ public class RedisKeys {
         return "timbre:details:" + id;
     }
 
+    /**
+     * xiaozhi-server节点心跳和负载的Key
+     */
+    public static String getServerNodesKey() {
+        return "sys:server:nodes";
+    }
+
+    /**
+     * 设备上次分配的websocket地址的Key
+     */
+    public static String getDeviceWebsocketAffinityKey(String macAddress) {
+        return "device:ws:affinity:" + macAddress;
+    }
+
     /**
      * 获取版本号Key
      */
@@ -97,6 +167,34 @@ public class RedisKeys {
         return "ota:id:" + uuid;
     }
 
+    /**
+     * OTA固件正在进行的下载的Key（zset，成员为下载ID，score为租约到期时间）
+     */
+    public static String getOtaActiveDownloadsKey(String otaId) {
+        return "ota:rollout:active:" + otaId;
+    }
+
+    /**
+     * OTA固件各设备当前占用下载名额的下载ID的Key（hash：MAC地址 -> 下载ID）
+     */
+    public static String getOtaDeviceDownloadKey(String otaId) {
+        return "ota:rollout:device:" + otaId;
+    }
+
+    /**
+     * OTA固件下载地址令牌桶的Key
+     */
+    public static String getOtaDownloadBucketKey(String otaId) {
+        return "ota:rollout:bucket:" + otaId;
+    }
+
+    /**
+     * 已上传固件文件信息的Key（hash：md5、sha256、size、etag），保存固件时据此填充
+     */
+    public static String getOtaUploadKey(String firmwarePath) {
+        return "ota:upload:" + firmwarePath;
+    }
+
     /**
      * OTA固件下载次数的Key
      */
@@ -104,6 +202,13 @@ public class RedisKeys {
         return "ota:download:count:" + uuid;
     }
 
+    /**
+     * OTA下载链接最近一次计数下载的进度的Key（hash：etag、served、resumes），断点续传时据此判断是否为该次下载的续传
+     */
+    public static String getOtaDownloadProgressKey(String uuid) {
+        return "ota:download:progress:" + uuid;
+    }
+
     /**
      * 获取字典数据的缓存key
      */
@@ -118,6 +223,13 @@ public class RedisKeys {
         return "agent:audio:id:" + uuid;
     }
 
+    /**
+     * 音频下载ID首次使用后，允许同一音频继续Range请求的缓存key
+     */
+    public static String getAgentAudioRangeKey(String uuid) {
+        return "agent:audio:range:" + uuid;
+    }
+
     /**
      * 获取短信验证码的缓存key
      */
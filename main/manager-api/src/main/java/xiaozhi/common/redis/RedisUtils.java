@@ -4,12 +4,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.Resource;
@@ -28,6 +31,11 @@ public class RedisUtils {
     @Autowired
     private ResourcesUtils resourceUtils;
 
+    /**
+     * 已加载的脚本，避免每次执行都读取文件，同时可通过EVALSHA执行
+     */
+    private final Map<String, DefaultRedisScript<?>> scripts = new ConcurrentHashMap<>();
+
     /**
      * 默认过期时长为24小时，单位：秒
      */
@@ -86,6 +94,10 @@ public class RedisUtils {
         return get(key, NOT_EXPIRE);
     }
 
+    public List<Object> multiGet(Collection<String> keys) {
+        return redisTemplate.opsForValue().multiGet(keys);
+    }
+
     public void delete(String key) {
         redisTemplate.delete(key);
     }
@@ -98,6 +110,11 @@ public class RedisUtils {
         return redisTemplate.opsForHash().get(key, field);
     }
 
+    public List<Object> hMultiGet(String key, Collection<String> fields) {
+        HashOperations<String, String, Object> hashOperations = redisTemplate.opsForHash();
+        return hashOperations.multiGet(key, fields);
+    }
+
     public Map<String, Object> hGetAll(String key) {
         HashOperations<String, String, Object> hashOperations = redisTemplate.opsForHash();
         return hashOperations.entries(key);
@@ -151,6 +168,20 @@ public class RedisUtils {
         return redisTemplate.opsForList().rightPop(key);
     }
 
+    /**
+     * 向指定频道发布消息，消息使用与value相同的序列化方式
+     */
+    public void publish(String channel, Object message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 反序列化频道消息
+     */
+    public Object deserializeMessage(byte[] body) {
+        return redisTemplate.getValueSerializer().deserialize(body);
+    }
+
 
     /**
      * 清空所有 Redis 数据库中的所有键
@@ -190,6 +221,32 @@ public class RedisUtils {
         return redisTemplate.execute(redisScript, keys, defaultValue,expiresInSecond);
     }
 
+    /**
+     * 执行lua目录下的脚本，参数和返回值按字符串序列化（数字参数在脚本中可直接tonumber）
+     *
+     * @param scriptPath 脚本路径，如lua/xxx.lua
+     * @param resultType 返回值类型，支持Long、String、Boolean
+     * @param keys       脚本使用的key
+     * @param args       脚本参数
+     * @return 脚本返回值
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T executeScript(String scriptPath, Class<T> resultType, List<String> keys, Object... args) {
+        DefaultRedisScript<T> redisScript = (DefaultRedisScript<T>) scripts.computeIfAbsent(scriptPath, path -> {
+            DefaultRedisScript<T> script = new DefaultRedisScript<>();
+            script.setScriptText(resourceUtils.loadString(path));
+            script.setResultType(resultType);
+            return script;
+        });
+        Object[] stringArgs = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            stringArgs[i] = String.valueOf(args[i]);
+        }
+        // 数字类型的返回值不经过序列化器
+        RedisSerializer<T> resultSerializer = (RedisSerializer<T>) StringRedisSerializer.UTF_8;
+        return redisTemplate.execute(redisScript, StringRedisSerializer.UTF_8, resultSerializer, keys, stringArgs);
+    }
+
 
 
 }
\ No newline at end of file
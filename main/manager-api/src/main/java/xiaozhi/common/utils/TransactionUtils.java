@@ -0,0 +1,47 @@
+package xiaozhi.common.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务相关工具类
+ */
+public class TransactionUtils {
+
+    /**
+     * 立即执行一次，若当前处于事务中则在事务提交后再执行一次。
+     * 用于缓存失效：避免事务提交前有请求用旧数据重建缓存
+     *
+     * @param task 要执行的任务
+     */
+    public static void runNowAndAfterCommit(Runnable task) {
+        task.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * 若当前处于事务中则在事务提交后执行，事务回滚时不执行；否则立即执行。
+     * 用于把后台任务的提交推迟到数据落库之后
+     *
+     * @param task 要执行的任务
+     */
+    public static void runAfterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+}
@@ -10,6 +10,18 @@ import java.util.Map;
  * 小智MCP JSON-RPC 请求json
  */
 public class XiaoZhiMcpJsonRpcJson {
+    public static final String METHOD_INITIALIZE = "initialize";
+    public static final String METHOD_NOTIFICATIONS_INITIALIZED = "notifications/initialized";
+    public static final String METHOD_TOOLS_LIST = "tools/list";
+    //小智初始化mcp请求参数
+    private static final Map<String, Object> INITIALIZE_PARAMS = Map.of(
+            "protocolVersion", "2024-11-05",
+            "capabilities", Map.of(
+                    "roots", Map.of("listChanged", false),
+                    "sampling", Map.of()),
+            "clientInfo", Map.of(
+                    "name", "xz-mcp-broker",
+                    "version", "0.0.1"));
     //小智初始化mcp请求json
     private static final String INITIALIZE_JSON;
     //小智mcp初始化成功，返回通知请求json
@@ -18,18 +30,12 @@ public class XiaoZhiMcpJsonRpcJson {
     private static final String TOOLS_LIST_REQUEST;
     // 延迟加载
     static {
-        INITIALIZE_JSON = JsonUtils.toJsonString(new JsonRpcTwo("initialize",
-                Map.of(
-                        "protocolVersion", "2024-11-05",
-                        "capabilities", Map.of(
-                                "roots", Map.of("listChanged", false),
-                                "sampling", Map.of()),
-                        "clientInfo", Map.of(
-                                "name", "xz-mcp-broker",
-                                "version", "0.0.1")),
-                1));
+        INITIALIZE_JSON = JsonUtils.toJsonString(new JsonRpcTwo(METHOD_INITIALIZE, INITIALIZE_PARAMS, 1));
         NOTIFICATIONS_INITIALIZED_JSON = "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}";
-        TOOLS_LIST_REQUEST = JsonUtils.toJsonString(new JsonRpcTwo("tools/list", null, 2));
+        TOOLS_LIST_REQUEST = JsonUtils.toJsonString(new JsonRpcTwo(METHOD_TOOLS_LIST, null, 2));
+    }
+    public static Map<String, Object> getInitializeParams(){
+        return INITIALIZE_PARAMS;
     }
     public static String getInitializeJson(){
         return INITIALIZE_JSON;
@@ -0,0 +1,804 @@
+package xiaozhi.modules.agent.buffer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.fasterxml.jackson.annotation.JsonAlias;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.exception.RenException;
+import xiaozhi.common.utils.JsonUtils;
+import xiaozhi.modules.agent.dao.AiAgentChatHistoryDao;
+import xiaozhi.modules.agent.dao.AiAgentChatSessionDao;
+import xiaozhi.modules.agent.entity.AgentChatAudioEntity;
+import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
+import xiaozhi.modules.agent.entity.AgentChatSessionEntity;
+import xiaozhi.modules.agent.entity.AgentEntity;
+import xiaozhi.modules.agent.service.AgentChatAudioService;
+import xiaozhi.modules.agent.service.AgentService;
+import xiaozhi.modules.device.entity.DeviceEntity;
+import xiaozhi.modules.device.service.DeviceService;
+
+/**
+ * 聊天记录上报写入队列
+ * <p>
+ * 聊天上报请求只把记录放入内存队列后立即返回，由单独的线程批量取出，
+ * 在一个事务里用多行INSERT写入音频和聊天记录。
+ * <ul>
+ * <li>队列有条数和字节数上限，任一达到上限时写入本地追加文件（溢出文件），溢出文件也达到上限时拒绝上报</li>
+ * <li>音频在队列和溢出文件中保持Base64编码，只有智能体配置了记录音频、实际保存时才解码；
+ * 二进制上报的音频先写入溢出目录下的音频文件，队列中只保存文件路径，写入成功后删除</li>
+ * <li>批量写入失败时逐条重试，只有失败的记录才处理：数据本身有问题（超长、违反约束）的记录写入死信文件，
+ * 数据库不可用等临时错误时本条及之后的记录写入溢出文件</li>
+ * <li>溢出文件由单独的线程定时导入，不占用队列的写入线程；重试次数超过上限的记录写入死信文件</li>
+ * <li>应用关闭时先写完队列中的记录，未写完的写入溢出文件，下次启动后导入</li>
+ * </ul>
+ * 溢出文件按至少一次导入，导入过程中进程崩溃可能产生重复记录。死信文件只追加不导入，供人工排查。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatHistoryIngestBuffer {
+    /**
+     * 内存队列容量
+     */
+    private static final int QUEUE_CAPACITY = 10000;
+    /**
+     * 内存队列中记录的字节数上限（按音频Base64和聊天内容估算）
+     */
+    static final long MAX_QUEUE_BYTES = 64L * 1024 * 1024;
+    /**
+     * 估算记录大小时，每条记录除音频和内容外的固定开销
+     */
+    private static final int REPORT_OVERHEAD_BYTES = 256;
+    /**
+     * 每批最多写入的记录数
+     */
+    private static final int BATCH_SIZE = 200;
+    /**
+     * 等待凑批的最长时间（毫秒）
+     */
+    private static final long BATCH_WAIT_MILLIS = 200;
+    /**
+     * 检查溢出文件的间隔（毫秒）
+     */
+    private static final long REPLAY_INTERVAL_MILLIS = 5000;
+    /**
+     * 写入失败后，间隔多久再导入溢出文件（毫秒）
+     */
+    private static final long REPLAY_BACKOFF_MILLIS = 30000;
+    /**
+     * 单条记录最大重试次数
+     */
+    static final int MAX_ATTEMPTS = 10;
+    /**
+     * 溢出文件大小上限
+     */
+    private static final long MAX_SPILL_BYTES = 512L * 1024 * 1024;
+    /**
+     * 死信文件大小上限
+     */
+    private static final long MAX_DEAD_LETTER_BYTES = 64L * 1024 * 1024;
+    /**
+     * 会话汇总中最后一条消息摘要的长度（字符），超出时截取前97个字符加"..."，
+     * 与变更脚本202510181400.sql中回填已有会话摘要的规则一致
+     */
+    private static final int SESSION_SNIPPET_LENGTH = 100;
+    /**
+     * 聊天记录表content、session_id、mac_address列的长度（字符）
+     */
+    private static final int MAX_CONTENT_LENGTH = 1024;
+    private static final int MAX_SESSION_ID_LENGTH = 50;
+    private static final int MAX_MAC_ADDRESS_LENGTH = 50;
+    private static final String SPILL_FILE_NAME = "spill.jsonl";
+    private static final String REPLAY_FILE_NAME = "spill.jsonl.replay";
+    private static final String DEAD_LETTER_FILE_NAME = "dead-letter.jsonl";
+    private static final String AUDIO_DIR_NAME = "audio";
+
+    private final AgentService agentService;
+    private final AiAgentChatHistoryDao aiAgentChatHistoryDao;
+    private final AiAgentChatSessionDao aiAgentChatSessionDao;
+    private final AgentChatAudioService agentChatAudioService;
+    private final DeviceService deviceService;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 溢出文件和死信文件所在目录
+     */
+    @Value("${chat.history.spill-path:data/chat-history}")
+    private String spillPath;
+
+    private final BlockingQueue<ChatReport> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final Object spillLock = new Object();
+    private final Object deadLetterLock = new Object();
+    private volatile boolean running;
+    private volatile long lastFailureMillis;
+    private Thread worker;
+    private ScheduledExecutorService replayExecutor;
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong committedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+    private final AtomicLong totalCommitMillis = new AtomicLong();
+    private final AtomicLong maxCommitMillis = new AtomicLong();
+    private volatile long lastCommitMillis;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::run, "chat-history-ingest");
+        worker.setDaemon(true);
+        worker.start();
+        replayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-history-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayExecutor.scheduleWithFixedDelay(this::replayIfHealthy, REPLAY_INTERVAL_MILLIS,
+                REPLAY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        // 正在导入的批次写完后停止，未导入的记录放回溢出文件，下次启动后继续
+        replayExecutor.shutdown();
+        try {
+            replayExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 超时未写完的记录写入溢出文件
+        List<ChatReport> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        releaseQueuedBytes(remaining);
+        if (!remaining.isEmpty() && !spill(remaining)) {
+            droppedCount.addAndGet(remaining.size());
+            log.error("关闭时聊天记录写入溢出文件失败，丢弃 {} 条", remaining.size());
+        }
+    }
+
+    /**
+     * 提交一条聊天上报记录，队列条数或字节数达到上限时写入溢出文件
+     *
+     * @param report 聊天上报记录
+     * @throws RenException 队列和溢出文件都已满
+     */
+    public void offer(ChatReport report) {
+        if (!running) {
+            throw new RenException("服务正在关闭，请稍后重试");
+        }
+        long bytes = estimateBytes(report);
+        if (queuedBytes.addAndGet(bytes) <= MAX_QUEUE_BYTES && queue.offer(report)) {
+            acceptedCount.incrementAndGet();
+            return;
+        }
+        queuedBytes.addAndGet(-bytes);
+        if (!spill(List.of(report))) {
+            droppedCount.incrementAndGet();
+            throw new RenException("聊天记录上报繁忙，请稍后重试");
+        }
+        acceptedCount.incrementAndGet();
+    }
+
+    /**
+     * 在溢出目录下创建一个文件，用于暂存二进制上报的音频，记录写入成功后删除
+     *
+     * @return 文件的绝对路径
+     */
+    public Path createAudioFile() throws IOException {
+        Path dir = Paths.get(spillPath, AUDIO_DIR_NAME).toAbsolutePath();
+        Files.createDirectories(dir);
+        return dir.resolve(IdWorker.get32UUID() + ".opus");
+    }
+
+    /**
+     * 删除已写入的记录暂存的音频文件
+     */
+    private static void deleteAudioFiles(List<ChatReport> reports) {
+        for (ChatReport report : reports) {
+            if (report.getAudioFile() == null) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(Paths.get(report.getAudioFile()));
+            } catch (IOException e) {
+                log.warn("删除聊天音频暂存文件失败: {}", report.getAudioFile(), e);
+            }
+        }
+    }
+
+    /**
+     * 估算记录在内存中占用的字节数
+     */
+    private static long estimateBytes(ChatReport report) {
+        long bytes = REPORT_OVERHEAD_BYTES;
+        if (report.getAudioBase64() != null) {
+            bytes += report.getAudioBase64().length();
+        }
+        if (report.getContent() != null) {
+            bytes += 2L * report.getContent().length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 记录从队列取出后，归还其占用的字节数
+     */
+    private void releaseQueuedBytes(List<ChatReport> reports) {
+        long bytes = 0;
+        for (ChatReport report : reports) {
+            bytes += estimateBytes(report);
+        }
+        queuedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * 获取队列运行指标
+     */
+    public Map<String, Object> getStats() {
+        long batches = batchCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueSize", queue.size());
+        stats.put("queueCapacity", QUEUE_CAPACITY);
+        stats.put("queueBytes", queuedBytes.get());
+        stats.put("queueMaxBytes", MAX_QUEUE_BYTES);
+        stats.put("spillBytes", fileSize(spillFile()) + fileSize(replayFile()));
+        stats.put("deadLetterBytes", fileSize(deadLetterFile()));
+        stats.put("acceptedCount", acceptedCount.get());
+        stats.put("committedCount", committedCount.get());
+        stats.put("spilledCount", spilledCount.get());
+        stats.put("deadLetterCount", deadLetterCount.get());
+        stats.put("droppedCount", droppedCount.get());
+        stats.put("batchCount", batches);
+        stats.put("failedBatchCount", failedBatchCount.get());
+        stats.put("lastCommitMillis", lastCommitMillis);
+        stats.put("avgCommitMillis", batches == 0 ? 0 : totalCommitMillis.get() / batches);
+        stats.put("maxCommitMillis", maxCommitMillis.get());
+        return stats;
+    }
+
+    private void run() {
+        List<ChatReport> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatReport first = queue.poll(BATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                releaseQueuedBytes(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("聊天记录写入线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批记录。批量写入失败时逐条重试：
+     * 数据有问题的记录写入死信文件，遇到临时错误时本条及之后的记录写入溢出文件等待重试
+     *
+     * @return 是否没有遇到临时错误
+     */
+    boolean commit(List<ChatReport> batch) {
+        List<ChatReport> valid = new ArrayList<>(batch.size());
+        for (ChatReport report : batch) {
+            String invalidReason = validate(report);
+            if (invalidReason == null) {
+                valid.add(report);
+            } else {
+                deadLetter(report, invalidReason);
+            }
+        }
+        if (valid.isEmpty()) {
+            return true;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, String> connectedAgents;
+        try {
+            connectedAgents = transactionTemplate.execute(status -> write(valid));
+        } catch (Exception e) {
+            failedBatchCount.incrementAndGet();
+            log.warn("批量写入聊天记录失败，共 {} 条，逐条重试: {}", valid.size(), e.getMessage());
+            return commitOneByOne(valid);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        lastCommitMillis = elapsed;
+        totalCommitMillis.addAndGet(elapsed);
+        maxCommitMillis.accumulateAndGet(elapsed, Math::max);
+        batchCount.incrementAndGet();
+        committedCount.addAndGet(valid.size());
+        deleteAudioFiles(valid);
+        updateConnectionInfo(connectedAgents);
+        return true;
+    }
+
+    /**
+     * 逐条写入，每条一个事务
+     *
+     * @return 是否没有遇到临时错误
+     */
+    private boolean commitOneByOne(List<ChatReport> reports) {
+        for (int i = 0; i < reports.size(); i++) {
+            ChatReport report = reports.get(i);
+            Map<String, String> connectedAgents;
+            try {
+                connectedAgents = transactionTemplate.execute(status -> write(List.of(report)));
+            } catch (DataIntegrityViolationException e) {
+                // 超长、违反非空约束等，重试也不会成功
+                deadLetter(report, e.getMostSpecificCause().getMessage());
+                continue;
+            } catch (Exception e) {
+                lastFailureMillis = System.currentTimeMillis();
+                log.error("写入聊天记录失败，剩余 {} 条写入溢出文件等待重试", reports.size() - i, e);
+                retryLater(reports.subList(i, reports.size()));
+                return false;
+            }
+            committedCount.incrementAndGet();
+            deleteAudioFiles(List.of(report));
+            updateConnectionInfo(connectedAgents);
+        }
+        return true;
+    }
+
+    /**
+     * 增加重试次数后写入溢出文件，超过重试上限的写入死信文件
+     */
+    private void retryLater(List<ChatReport> reports) {
+        List<ChatReport> retry = new ArrayList<>(reports.size());
+        for (ChatReport report : reports) {
+            report.setAttempts(report.getAttempts() + 1);
+            if (report.getAttempts() < MAX_ATTEMPTS) {
+                retry.add(report);
+            } else {
+                deadLetter(report, "重试次数超过上限");
+            }
+        }
+        if (!retry.isEmpty() && !spill(retry)) {
+            droppedCount.addAndGet(retry.size());
+            log.error("聊天记录写入溢出文件失败，丢弃 {} 条", retry.size());
+        }
+    }
+
+    /**
+     * 检查记录能否写入数据库
+     *
+     * @return 无法写入的原因，可以写入时返回null
+     */
+    private static String validate(ChatReport report) {
+        if (StringUtils.isBlank(report.getMacAddress()) || report.getReportTime() == null) {
+            return "缺少MAC地址或上报时间";
+        }
+        if (codePointLength(report.getMacAddress()) > MAX_MAC_ADDRESS_LENGTH) {
+            return "MAC地址超长";
+        }
+        if (codePointLength(report.getSessionId()) > MAX_SESSION_ID_LENGTH) {
+            return "会话ID超长";
+        }
+        if (codePointLength(report.getContent()) > MAX_CONTENT_LENGTH) {
+            return "聊天内容超长";
+        }
+        return null;
+    }
+
+    /**
+     * 字符数，与MySQL utf8mb4的VARCHAR长度一致
+     */
+    private static int codePointLength(String value) {
+        return value == null ? 0 : value.codePointCount(0, value.length());
+    }
+
+    /**
+     * 会话摘要，按字符截取，不会截断emoji等代理对
+     */
+    static String snippet(String content) {
+        if (codePointLength(content) <= SESSION_SNIPPET_LENGTH) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, SESSION_SNIPPET_LENGTH - 3)) + "...";
+    }
+
+    /**
+     * 更新设备最后连接时间，智能体最后对话时间的缓存会在写入数据库后同步刷新
+     */
+    private void updateConnectionInfo(Map<String, String> connectedAgents) {
+        if (connectedAgents == null) {
+            return;
+        }
+        connectedAgents.forEach((macAddress, agentId) -> {
+            DeviceEntity device = deviceService.getDeviceByMacAddress(macAddress);
+            if (device != null) {
+                deviceService.updateDeviceConnectionInfo(agentId, device.getId(), null);
+            } else {
+                log.warn("聊天记录上报时，未找到mac地址为 {} 的设备", macAddress);
+            }
+        });
+    }
+
+    /**
+     * 按智能体的聊天记录配置组装并写入音频和聊天记录
+     *
+     * @return 本批涉及的设备MAC地址与智能体ID
+     */
+    private Map<String, String> write(List<ChatReport> batch) {
+        Map<String, Optional<AgentEntity>> agents = new HashMap<>();
+        Map<String, String> connectedAgents = new HashMap<>();
+        List<AgentChatAudioEntity> audios = new ArrayList<>();
+        List<ChatReport> audioReports = new ArrayList<>();
+        List<AgentChatHistoryEntity> histories = new ArrayList<>(batch.size());
+
+        for (ChatReport report : batch) {
+            // 根据设备MAC地址查询对应的默认智能体，判断是否需要上报
+            AgentEntity agent = agents.computeIfAbsent(report.getMacAddress(),
+                    mac -> Optional.ofNullable(agentService.getDefaultAgentByMacAddress(mac))).orElse(null);
+            if (agent == null) {
+                continue;
+            }
+            connectedAgents.put(report.getMacAddress(), agent.getId());
+
+            Integer chatHistoryConf = agent.getChatHistoryConf();
+            boolean recordText = Objects.equals(chatHistoryConf, Constant.ChatHistoryConfEnum.RECORD_TEXT.getCode());
+            boolean recordAudio = Objects.equals(chatHistoryConf,
+                    Constant.ChatHistoryConfEnum.RECORD_TEXT_AUDIO.getCode());
+            if (!recordText && !recordAudio) {
+                continue;
+            }
+
+            String audioId = null;
+            if (recordAudio && (report.getAudioFile() != null || StringUtils.isNotEmpty(report.getAudioBase64()))) {
+                // 重试时沿用上次的音频ID，已写入音频存储的不再重复写入
+                if (report.getAudioId() == null) {
+                    report.setAudioId(IdWorker.get32UUID());
+                }
+                AgentChatAudioEntity audio = new AgentChatAudioEntity();
+                audio.setId(report.getAudioId());
+                if (report.getAudioStorageKey() != null) {
+                    audio.setStorageKey(report.getAudioStorageKey());
+                } else if (report.getAudioFile() != null) {
+                    audio.setAudioFile(Paths.get(report.getAudioFile()));
+                } else {
+                    audio.setAudio(decodeAudio(report));
+                }
+                audios.add(audio);
+                audioReports.add(report);
+                audioId = audio.getId();
+            }
+            histories.add(AgentChatHistoryEntity.builder()
+                    .macAddress(report.getMacAddress())
+                    .agentId(agent.getId())
+                    .sessionId(report.getSessionId())
+                    .chatType(report.getChatType())
+                    .content(report.getContent())
+                    .audioId(audioId)
+                    .createdAt(new Date(report.getReportTime()))
+                    .build());
+        }
+
+        if (!audios.isEmpty()) {
+            try {
+                agentChatAudioService.saveAudioBatch(audios);
+            } finally {
+                // 事务回滚时音频存储中的内容不会回滚，记下存储key供重试时使用
+                for (int i = 0; i < audios.size(); i++) {
+                    if (audios.get(i).getStorageKey() != null) {
+                        audioReports.get(i).setAudioStorageKey(audios.get(i).getStorageKey());
+                    }
+                }
+            }
+        }
+        if (!histories.isEmpty()) {
+            aiAgentChatHistoryDao.insertBatch(histories);
+            List<AgentChatSessionEntity> sessions = summarize(histories);
+            if (!sessions.isEmpty()) {
+                aiAgentChatSessionDao.upsertBatch(sessions);
+            }
+        }
+        return connectedAgents;
+    }
+
+    /**
+     * 解码音频，无效的Base64作为数据错误处理，记录进入死信文件
+     */
+    private static byte[] decodeAudio(ChatReport report) {
+        try {
+            return Base64.getDecoder().decode(report.getAudioBase64());
+        } catch (IllegalArgumentException e) {
+            throw new DataIntegrityViolationException("音频数据不是有效的Base64编码", e);
+        }
+    }
+
+    /**
+     * 把本批聊天记录按会话汇总，用于增量更新会话汇总表。没有会话ID的记录不属于任何会话，不汇总
+     */
+    private List<AgentChatSessionEntity> summarize(List<AgentChatHistoryEntity> histories) {
+        Map<String, AgentChatSessionEntity> sessions = new LinkedHashMap<>();
+        for (AgentChatHistoryEntity history : histories) {
+            if (StringUtils.isBlank(history.getSessionId())) {
+                continue;
+            }
+            AgentChatSessionEntity session = sessions.computeIfAbsent(
+                    history.getAgentId() + ":" + history.getSessionId(),
+                    key -> AgentChatSessionEntity.builder()
+                            .agentId(history.getAgentId())
+                            .sessionId(history.getSessionId())
+                            .macAddress(history.getMacAddress())
+                            .firstChatAt(history.getCreatedAt())
+                            .lastChatAt(history.getCreatedAt())
+                            .chatCount(0)
+                            .build());
+            session.setChatCount(session.getChatCount() + 1);
+            if (history.getCreatedAt().before(session.getFirstChatAt())) {
+                session.setFirstChatAt(history.getCreatedAt());
+            }
+            if (!history.getCreatedAt().before(session.getLastChatAt())) {
+                session.setLastChatAt(history.getCreatedAt());
+                session.setLastContent(snippet(history.getContent()));
+            }
+        }
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * 把记录追加到溢出文件
+     *
+     * @return 是否写入成功
+     */
+    private boolean spill(List<ChatReport> reports) {
+        StringBuilder lines = new StringBuilder();
+        for (ChatReport report : reports) {
+            lines.append(JsonUtils.toJsonString(report)).append('\n');
+        }
+        synchronized (spillLock) {
+            if (!append(spillFile(), lines.toString(), MAX_SPILL_BYTES)) {
+                return false;
+            }
+            spilledCount.addAndGet(reports.size());
+            return true;
+        }
+    }
+
+    /**
+     * 把无法写入的记录追加到死信文件，附带失败原因
+     */
+    private void deadLetter(ChatReport report, String reason) {
+        deadLetterCount.incrementAndGet();
+        log.error("聊天记录无法写入，转入死信文件: macAddress={}, sessionId={}, reason={}", report.getMacAddress(),
+                report.getSessionId(), reason);
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("reason", reason);
+        record.put("failedAt", System.currentTimeMillis());
+        record.put("report", report);
+        synchronized (deadLetterLock) {
+            if (!append(deadLetterFile(), JsonUtils.toJsonString(record) + '\n', MAX_DEAD_LETTER_BYTES)) {
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 追加写入文件并刷盘，调用方负责加锁
+     */
+    private boolean append(Path file, String lines, long maxBytes) {
+        byte[] bytes = lines.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (fileSize(file) + bytes.length > maxBytes) {
+                log.error("聊天记录文件已达到上限: {}", file.toAbsolutePath());
+                return false;
+            }
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("写入聊天记录文件失败: {}", file.toAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 最近没有写入失败时导入溢出文件，在导入线程中执行
+     */
+    private void replayIfHealthy() {
+        if (!running || System.currentTimeMillis() - lastFailureMillis <= REPLAY_BACKOFF_MILLIS) {
+            return;
+        }
+        try {
+            replaySpill();
+        } catch (Exception e) {
+            log.error("导入聊天记录溢出文件异常", e);
+        }
+    }
+
+    /**
+     * 导入溢出文件。先把溢出文件改名为导入文件，导入期间新的溢出写入新文件。
+     * 导入中遇到临时错误或应用关闭时停止，剩余未导入的记录原样放回溢出文件，不增加重试次数
+     */
+    void replaySpill() {
+        Path replayFile = replayFile();
+        synchronized (spillLock) {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile())) {
+                    return;
+                }
+                try {
+                    Files.move(spillFile(), replayFile, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    log.error("聊天记录溢出文件改名失败", e);
+                    return;
+                }
+            }
+        }
+
+        log.info("开始导入聊天记录溢出文件: {}", replayFile.toAbsolutePath());
+        List<ChatReport> batch = new ArrayList<>(BATCH_SIZE);
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            String line;
+            boolean healthy = true;
+            while (healthy && running && (line = reader.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                ChatReport report;
+                try {
+                    report = JsonUtils.parseObject(line, ChatReport.class);
+                } catch (Exception e) {
+                    droppedCount.incrementAndGet();
+                    log.error("聊天记录溢出文件中存在无法解析的记录，已跳过", e);
+                    continue;
+                }
+                batch.add(report);
+                if (batch.size() >= BATCH_SIZE) {
+                    healthy = commit(batch);
+                    batch.clear();
+                }
+            }
+            if (healthy && !batch.isEmpty()) {
+                healthy = commit(batch);
+            }
+            boolean complete = healthy && running;
+            if (!complete && !respill(reader)) {
+                // 放回失败时保留导入文件，下次继续导入（已导入的部分会重复）
+                return;
+            }
+            Files.delete(replayFile);
+            log.info(complete ? "聊天记录溢出文件导入完成" : "聊天记录溢出文件暂停导入，剩余记录已放回溢出文件");
+        } catch (IOException e) {
+            log.error("导入聊天记录溢出文件失败", e);
+        }
+    }
+
+    /**
+     * 把导入文件中剩余的行原样追加到溢出文件
+     */
+    private boolean respill(BufferedReader reader) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (StringUtils.isNotBlank(line)) {
+                lines.append(line).append('\n');
+            }
+        }
+        if (lines.isEmpty()) {
+            return true;
+        }
+        synchronized (spillLock) {
+            return append(spillFile(), lines.toString(), Long.MAX_VALUE);
+        }
+    }
+
+    private Path spillFile() {
+        return Paths.get(spillPath, SPILL_FILE_NAME);
+    }
+
+    private Path replayFile() {
+        return Paths.get(spillPath, REPLAY_FILE_NAME);
+    }
+
+    private Path deadLetterFile() {
+        return Paths.get(spillPath, DEAD_LETTER_FILE_NAME);
+    }
+
+    private static long fileSize(Path path) {
+        try {
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 待写入的聊天上报记录
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChatReport {
+        private String macAddress;
+        private String sessionId;
+        private Byte chatType;
+        private String content;
+        /**
+         * opus音频数据的Base64编码，可为空。保存音频时才解码；兼容旧溢出文件中的audio字段（同为Base64）
+         */
+        @JsonAlias("audio")
+        private String audioBase64;
+        /**
+         * 二进制上报时暂存音频的文件路径，可为空，与audioBase64二选一
+         */
+        private String audioFile;
+        /**
+         * 音频ID，首次写入时生成，重试时沿用
+         */
+        private String audioId;
+        /**
+         * 音频已写入音频存储时的存储key，重试时不再重复写入
+         */
+        private String audioStorageKey;
+        /**
+         * 上报时间（毫秒）
+         */
+        private Long reportTime;
+        /**
+         * 已重试次数
+         */
+        private int attempts;
+    }
+}
@@ -0,0 +1,135 @@
+package xiaozhi.modules.agent.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
+
+/**
+ * 智能体MCP工具列表缓存
+ * <p>
+ * 获取工具列表需要与MCP接入点完成一次初始化和tools/list请求，耗时可达数秒，而智能体页面每次打开都会调用。
+ * 这里按智能体缓存工具列表：
+ * <ul>
+ * <li>缓存未过期（{@link #FRESH_SECONDS}秒内）直接返回</li>
+ * <li>缓存已过期但仍保留（{@link #EXPIRE_MINUTES}分钟内）时先返回旧值，同时在后台刷新</li>
+ * <li>同一智能体同时只会有一个刷新请求，并发请求共用结果</li>
+ * <li>刷新失败时保留旧值；没有旧值时失败结果不缓存</li>
+ * </ul>
+ * MCP接入点参数变化时（所有节点的参数快照重新加载时得知）清空缓存。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class McpToolCatalogCache {
+    /**
+     * 缓存视为最新的时间（秒）
+     */
+    private static final long FRESH_SECONDS = 60;
+    /**
+     * 缓存最长保留时间（分钟），超过后需重新获取
+     */
+    private static final long EXPIRE_MINUTES = 30;
+
+    private final SysParamsSnapshot sysParamsSnapshot;
+
+    private final Cache<String, CatalogEntry> cache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 进行中的刷新，用于合并同一智能体的并发请求
+     */
+    private final Map<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存代次，清空缓存时递增，清空前发起的刷新结果不再写入缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        sysParamsSnapshot.addListener(Constant.SERVER_MCP_ENDPOINT, param -> invalidateAll());
+    }
+
+    /**
+     * 获取智能体的工具列表
+     *
+     * @param agentId 智能体ID
+     * @param loader  从MCP接入点获取工具列表的方法，失败时返回异常完成的future
+     * @return 工具列表
+     */
+    public CompletableFuture<List<String>> get(String agentId, Function<String, CompletableFuture<List<String>>> loader) {
+        CatalogEntry entry = cache.getIfPresent(agentId);
+        if (entry == null) {
+            return refresh(agentId, loader);
+        }
+        if (System.currentTimeMillis() - entry.loadedAt > TimeUnit.SECONDS.toMillis(FRESH_SECONDS)) {
+            // 先返回旧值，后台刷新
+            refresh(agentId, loader);
+        }
+        return CompletableFuture.completedFuture(entry.tools);
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        log.info("MCP接入点变更，已清空智能体MCP工具列表缓存");
+    }
+
+    private CompletableFuture<List<String>> refresh(String agentId,
+            Function<String, CompletableFuture<List<String>>> loader) {
+        CompletableFuture<List<String>> created = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inFlight.putIfAbsent(agentId, created);
+        if (existing != null) {
+            return existing;
+        }
+        long currentGeneration = generation.get();
+        CompletableFuture<List<String>> loading;
+        try {
+            loading = loader.apply(agentId);
+        } catch (Exception e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((tools, e) -> {
+            if (e == null && tools != null && generation.get() == currentGeneration) {
+                cache.put(agentId, new CatalogEntry(List.copyOf(tools), System.currentTimeMillis()));
+            }
+            inFlight.remove(agentId, created);
+            if (e != null) {
+                created.completeExceptionally(e);
+            } else {
+                created.complete(tools);
+            }
+        });
+        return created;
+    }
+
+    private static class CatalogEntry {
+        private final List<String> tools;
+        private final long loadedAt;
+
+        CatalogEntry(List<String> tools, long loadedAt) {
+            this.tools = tools;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,16 +1,27 @@
 package xiaozhi.modules.agent.controller;
 
+import java.util.Map;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import xiaozhi.common.utils.Result;
+import xiaozhi.modules.agent.buffer.ChatHistoryIngestBuffer;
 import xiaozhi.modules.agent.dto.AgentChatHistoryReportDTO;
+import xiaozhi.modules.agent.retention.ChatHistoryPurger;
+import xiaozhi.modules.agent.service.AgentChatAudioService;
 import xiaozhi.modules.agent.service.biz.AgentChatHistoryBizService;
 
 @Tag(name = "智能体聊天历史管理")
@@ -19,6 +30,9 @@ import xiaozhi.modules.agent.service.biz.AgentChatHistoryBizService;
 @RequestMapping("/agent/chat-history")
 public class AgentChatHistoryController {
     private final AgentChatHistoryBizService agentChatHistoryBizService;
+    private final ChatHistoryIngestBuffer chatHistoryIngestBuffer;
+    private final AgentChatAudioService agentChatAudioService;
+    private final ChatHistoryPurger chatHistoryPurger;
 
     /**
      * 小智服务聊天上报请求
@@ -33,4 +47,61 @@ public class AgentChatHistoryController {
         Boolean result = agentChatHistoryBizService.report(request);
         return new Result<Boolean>().ok(result);
     }
+
+    /**
+     * 小智服务聊天上报请求（二进制音频）
+     * <p>
+     * 以multipart/form-data上报，文本信息作为表单字段，opus音频作为audio文件直接上传，
+     * 省去Base64编码带来的体积膨胀和解码复制，音频部分也不会经过XSS过滤。
+     *
+     * @param request 聊天上报信息（不使用audioBase64字段）
+     * @param audio   opus音频数据，可为空
+     */
+    @Operation(summary = "小智服务聊天上报请求（二进制音频）")
+    @PostMapping(value = "/report/binary", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Result<Boolean> uploadBinary(@Valid @ModelAttribute AgentChatHistoryReportDTO request,
+            @RequestPart(value = "audio", required = false) MultipartFile audio) {
+        Boolean result = agentChatHistoryBizService.report(request, audio);
+        return new Result<Boolean>().ok(result);
+    }
+
+    @Operation(summary = "聊天记录写入队列指标")
+    @GetMapping("/ingest-stats")
+    @RequiresPermissions("sys:role:superAdmin")
+    public Result<Map<String, Object>> getIngestStats() {
+        return new Result<Map<String, Object>>().ok(chatHistoryIngestBuffer.getStats());
+    }
+
+    /**
+     * 把数据库中的聊天音频迁移到音频存储
+     * <p>
+     * 迁移在后台分批执行，进度见日志，可重复调用，已迁移的音频不会重复处理。
+     */
+    @Operation(summary = "迁移聊天音频到音频存储")
+    @PostMapping("/audio/migrate")
+    @RequiresPermissions("sys:role:superAdmin")
+    public Result<Void> migrateAudio() {
+        agentChatAudioService.migrateAudioToStorage();
+        return new Result<>();
+    }
+
+    @Operation(summary = "聊天记录清理进度指标")
+    @GetMapping("/purge-stats")
+    @RequiresPermissions("sys:role:superAdmin")
+    public Result<Map<String, Object>> getPurgeStats() {
+        return new Result<Map<String, Object>>().ok(chatHistoryPurger.getStats());
+    }
+
+    /**
+     * 立即按保留策略清理一次聊天记录
+     * <p>
+     * 清理在后台分块执行，进度见清理指标。
+     */
+    @Operation(summary = "立即按保留策略清理聊天记录")
+    @PostMapping("/purge")
+    @RequiresPermissions("sys:role:superAdmin")
+    public Result<Void> purge() {
+        chatHistoryPurger.triggerSweep();
+        return new Result<>();
+    }
 }
@@ -1,11 +1,15 @@
 package xiaozhi.modules.agent.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -15,6 +19,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -49,6 +54,7 @@ import xiaozhi.modules.agent.service.AgentService;
 import xiaozhi.modules.agent.service.AgentTemplateService;
 import xiaozhi.modules.agent.vo.AgentChatHistoryUserVO;
 import xiaozhi.modules.agent.vo.AgentInfoVO;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
 import xiaozhi.modules.device.entity.DeviceEntity;
 import xiaozhi.modules.device.service.DeviceService;
 import xiaozhi.modules.security.user.SecurityUser;
@@ -58,6 +64,11 @@ import xiaozhi.modules.security.user.SecurityUser;
 @RestController
 @RequestMapping("/agent")
 public class AgentController {
+    /**
+     * 音频下载ID首次使用后，继续Range请求的有效期（秒）
+     */
+    private static final long PLAY_RANGE_EXPIRE = 5 * 60L;
+
     private final AgentService agentService;
     private final AgentTemplateService agentTemplateService;
     private final DeviceService deviceService;
@@ -65,6 +76,7 @@ public class AgentController {
     private final AgentChatAudioService agentChatAudioService;
     private final AgentPluginMappingService agentPluginMappingService;
     private final RedisUtils redisUtils;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
 
     @GetMapping("/list")
     @Operation(summary = "获取用户智能体列表")
@@ -137,6 +149,8 @@ public class AgentController {
         agentPluginMappingService.deleteByAgentId(id);
         // 再删除智能体
         agentService.deleteById(id);
+        // 清除智能体配置快照
+        agentConfigSnapshotCache.evict(id);
         return new Result<>();
     }
 
@@ -153,8 +167,10 @@ public class AgentController {
     @Operation(summary = "获取智能体会话列表")
     @RequiresPermissions("sys:role:normal")
     @Parameters({
-            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始", required = true),
+            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始，游标分页时不需要"),
             @Parameter(name = Constant.LIMIT, description = "每页显示记录数", required = true),
+            @Parameter(name = Constant.CURSOR, description = "游标分页的游标，第一页传空值，之后传上一页返回的nextCursor"),
+            @Parameter(name = Constant.WITH_TOTAL, description = "游标分页时是否统计总数"),
     })
     public Result<PageData<AgentChatSessionDTO>> getAgentSessions(
             @PathVariable("id") String id,
@@ -182,6 +198,29 @@ public class AgentController {
         List<AgentChatHistoryDTO> result = agentChatHistoryService.getChatHistoryBySessionId(id, sessionId);
         return new Result<List<AgentChatHistoryDTO>>().ok(result);
     }
+
+    @GetMapping("/{id}/chat-history/{sessionId}/page")
+    @Operation(summary = "游标分页获取智能体聊天记录")
+    @RequiresPermissions("sys:role:normal")
+    @Parameters({
+            @Parameter(name = Constant.LIMIT, description = "每页显示记录数", required = true),
+            @Parameter(name = Constant.CURSOR, description = "游标，第一页不传，之后传上一页返回的nextCursor"),
+            @Parameter(name = Constant.WITH_TOTAL, description = "是否统计总数"),
+    })
+    public Result<PageData<AgentChatHistoryDTO>> getAgentChatHistoryPage(
+            @PathVariable("id") String id,
+            @PathVariable("sessionId") String sessionId,
+            @Parameter(hidden = true) @RequestParam Map<String, Object> params) {
+        UserDetail user = SecurityUser.getUser();
+        if (!agentService.checkAgentPermission(id, user.getId())) {
+            return new Result<PageData<AgentChatHistoryDTO>>().error("没有权限查看该智能体的聊天记录");
+        }
+
+        PageData<AgentChatHistoryDTO> page = agentChatHistoryService.getChatHistoryPageBySessionId(id, sessionId,
+                params);
+        return new Result<PageData<AgentChatHistoryDTO>>().ok(page);
+    }
+
     @GetMapping("/{id}/chat-history/user")
     @Operation(summary = "获取智能体聊天记录（用户）")
     @RequiresPermissions("sys:role:normal")
@@ -214,8 +253,7 @@ public class AgentController {
     @Operation(summary = "获取音频下载ID")
     @RequiresPermissions("sys:role:normal")
     public Result<String> getAudioId(@PathVariable("audioId") String audioId) {
-        byte[] audioData = agentChatAudioService.getAudio(audioId);
-        if (audioData == null) {
+        if (!agentChatAudioService.existsAudio(audioId)) {
             return new Result<String>().error("音频不存在");
         }
         String uuid = UUID.randomUUID().toString();
@@ -225,22 +263,54 @@ public class AgentController {
 
     @GetMapping("/play/{uuid}")
     @Operation(summary = "播放音频")
-    public ResponseEntity<byte[]> playAudio(@PathVariable("uuid") String uuid) {
+    public ResponseEntity<Resource> playAudio(@PathVariable("uuid") String uuid,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
 
+        // 下载ID只能使用一次；浏览器播放时会按Range多次请求，
+        // 首次使用后的短时间内只允许对同一音频继续发起Range请求
         String audioId = (String) redisUtils.get(RedisKeys.getAgentAudioIdKey(uuid));
+        if (StringUtils.isNotBlank(audioId)) {
+            redisUtils.delete(RedisKeys.getAgentAudioIdKey(uuid));
+            redisUtils.set(RedisKeys.getAgentAudioRangeKey(uuid), audioId, PLAY_RANGE_EXPIRE);
+        } else if (StringUtils.isNotBlank(range)) {
+            audioId = (String) redisUtils.get(RedisKeys.getAgentAudioRangeKey(uuid));
+        }
         if (StringUtils.isBlank(audioId)) {
             return ResponseEntity.notFound().build();
         }
 
-        byte[] audioData = agentChatAudioService.getAudio(audioId);
-        if (audioData == null) {
+        Resource audio = agentChatAudioService.getAudioResource(audioId);
+        if (audio == null) {
             return ResponseEntity.notFound().build();
         }
-        redisUtils.delete(RedisKeys.getAgentAudioIdKey(uuid));
+        // 以资源作为响应体，由Spring流式输出并处理Range请求（206）
         return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"play.wav\"")
-                .body(audioData);
+                .contentType(detectAudioType(audio))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"play.wav\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(audio);
+    }
+
+    /**
+     * 根据文件头识别音频格式（上报的音频为WAV）
+     */
+    private MediaType detectAudioType(Resource audio) {
+        byte[] header = new byte[12];
+        try (InputStream in = audio.getInputStream()) {
+            if (in.readNBytes(header, 0, header.length) == header.length) {
+                String riff = new String(header, 0, 4, StandardCharsets.US_ASCII);
+                String wave = new String(header, 8, 4, StandardCharsets.US_ASCII);
+                if ("RIFF".equals(riff) && "WAVE".equals(wave)) {
+                    return MediaType.parseMediaType("audio/wav");
+                }
+                if ("OggS".equals(riff)) {
+                    return MediaType.parseMediaType("audio/ogg");
+                }
+            }
+        } catch (IOException e) {
+            // 无法识别时按二进制流返回
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
     }
 
 }
\ No newline at end of file
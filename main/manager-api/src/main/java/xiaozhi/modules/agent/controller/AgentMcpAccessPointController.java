@@ -1,6 +1,7 @@
 package xiaozhi.modules.agent.controller;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -52,15 +53,16 @@ public class AgentMcpAccessPointController {
     @Operation(summary = "获取智能体的Mcp工具列表")
     @GetMapping("/tools/{agentId}")
     @RequiresPermissions("sys:role:normal")
-    public Result<List<String>> getAgentMcpToolsList(@PathVariable("agentId") String agentId) {
+    public CompletableFuture<Result<List<String>>> getAgentMcpToolsList(@PathVariable("agentId") String agentId) {
         // 获取当前用户
         UserDetail user = SecurityUser.getUser();
 
         // 检查权限
         if (!agentService.checkAgentPermission(agentId, user.getId())) {
-            return new Result<List<String>>().error("没有权限查看该智能体的MCP工具列表");
+            return CompletableFuture.completedFuture(new Result<List<String>>().error("没有权限查看该智能体的MCP工具列表"));
         }
-        List<String> agentMcpToolsList = agentMcpAccessPointService.getAgentMcpToolsList(agentId);
-        return new Result<List<String>>().ok(agentMcpToolsList);
+        // 异步返回，等待MCP响应期间不占用请求线程
+        return agentMcpAccessPointService.getAgentMcpToolsListAsync(agentId)
+                .thenApply(agentMcpToolsList -> new Result<List<String>>().ok(agentMcpToolsList));
     }
 }
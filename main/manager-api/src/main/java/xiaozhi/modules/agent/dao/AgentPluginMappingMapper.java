@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Param;
 import xiaozhi.modules.agent.entity.AgentPluginMapping;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -15,6 +16,8 @@ import java.util.List;
 @Mapper
 public interface AgentPluginMappingMapper extends BaseMapper<AgentPluginMapping> {
     List<AgentPluginMapping> selectPluginsByAgentId(@Param("agentId") String agentId);
+
+    List<AgentPluginMapping> selectPluginsByAgentIds(@Param("agentIds") Collection<String> agentIds);
 }
 
 
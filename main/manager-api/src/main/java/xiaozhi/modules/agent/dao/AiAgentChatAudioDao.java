@@ -1,6 +1,9 @@
 package xiaozhi.modules.agent.dao;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
@@ -15,4 +18,18 @@ import xiaozhi.modules.agent.entity.AgentChatAudioEntity;
  */
 @Mapper
 public interface AiAgentChatAudioDao extends BaseMapper<AgentChatAudioEntity> {
+    /**
+     * 批量插入音频（多行INSERT），调用方需要预先生成ID
+     *
+     * @param list 音频列表
+     */
+    void insertBatch(@Param("list") List<AgentChatAudioEntity> list);
+
+    /**
+     * 按主键顺序取出一批音频ID，用于扫描无引用的音频
+     *
+     * @param afterId 从该ID之后开始，为空时从头开始
+     * @param limit   条数
+     */
+    List<String> selectIdsAfter(@Param("afterId") String afterId, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package xiaozhi.modules.agent.dao;
 
+import java.util.Date;
+import java.util.List;
+
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
@@ -16,23 +20,72 @@ import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
 @Mapper
 public interface AiAgentChatHistoryDao extends BaseMapper<AgentChatHistoryEntity> {
     /**
-     * 根据智能体ID删除音频
+     * 批量插入聊天历史记录（多行INSERT）
      *
-     * @param agentId 智能体ID
+     * @param list 聊天历史记录列表
      */
-    void deleteAudioByAgentId(String agentId);
+    void insertBatch(@Param("list") List<AgentChatHistoryEntity> list);
 
     /**
-     * 根据智能体ID删除聊天历史记录
+     * 按主键顺序取出一个智能体的一批聊天记录（只含id、session_id、audio_id），用于分块清理
      *
-     * @param agentId 智能体ID
+     * @param agentId   智能体ID
+     * @param afterId   从该主键之后开始
+     * @param audioOnly 是否只取带音频的记录
+     * @param limit     条数
+     */
+    List<AgentChatHistoryEntity> selectPurgeChunkByAgentId(@Param("agentId") String agentId,
+            @Param("afterId") Long afterId, @Param("audioOnly") boolean audioOnly, @Param("limit") int limit);
+
+    /**
+     * 按 (created_at, id) 顺序取出创建时间早于cutoff的一批聊天记录（只含id、agent_id、session_id、audio_id、created_at），
+     * 用于分块清理
+     *
+     * @param cutoff    创建时间上限（不含）
+     * @param afterTime 从上一块最后一条记录的创建时间之后开始，第一块为null
+     * @param afterId   上一块最后一条记录的主键，创建时间相同时从该主键之后开始
+     * @param audioOnly 是否只取带音频的记录
+     * @param limit     条数
      */
-    void deleteHistoryByAgentId(String agentId);
+    List<AgentChatHistoryEntity> selectPurgeChunkBefore(@Param("cutoff") Date cutoff,
+            @Param("afterTime") Date afterTime, @Param("afterId") Long afterId,
+            @Param("audioOnly") boolean audioOnly, @Param("limit") int limit);
 
     /**
-     * 根据智能体ID删除音频ID
+     * 按 (created_at, id) 查询智能体倒数第 offset+1 条聊天记录（只含id、created_at），用于按条数上限清理
      *
      * @param agentId 智能体ID
+     * @param offset  保留的条数
+     * @return 聊天记录，记录数不超过 offset 时返回null
+     */
+    AgentChatHistoryEntity selectByAgentIdOffset(@Param("agentId") String agentId, @Param("offset") int offset);
+
+    /**
+     * 按 (created_at, id) 顺序取出一个智能体不晚于指定记录的一批聊天记录
+     * （只含id、agent_id、session_id、audio_id、created_at），用于分块清理
+     *
+     * @param agentId   智能体ID
+     * @param maxTime   最后一条要清理的记录的创建时间
+     * @param maxId     最后一条要清理的记录的主键
+     * @param afterTime 从上一块最后一条记录的创建时间之后开始，第一块为null
+     * @param afterId   上一块最后一条记录的主键，创建时间相同时从该主键之后开始
+     * @param limit     条数
+     */
+    List<AgentChatHistoryEntity> selectPurgeChunkUpTo(@Param("agentId") String agentId,
+            @Param("maxTime") Date maxTime, @Param("maxId") Long maxId, @Param("afterTime") Date afterTime,
+            @Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * 查询仍被聊天记录引用的音频ID
+     *
+     * @param audioIds 音频ID列表
+     */
+    List<String> selectReferencedAudioIds(@Param("audioIds") List<String> audioIds);
+
+    /**
+     * 按主键批量清空音频ID
+     *
+     * @param ids 主键列表
      */
-    void deleteAudioIdByAgentId(String agentId);
+    void clearAudioIdByIds(@Param("ids") List<Long> ids);
 }
@@ -0,0 +1,51 @@
+package xiaozhi.modules.agent.dao;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+import xiaozhi.modules.agent.entity.AgentChatSessionEntity;
+
+/**
+ * {@link AgentChatSessionEntity} 智能体聊天会话汇总Dao对象
+ */
+@Mapper
+public interface AiAgentChatSessionDao extends BaseMapper<AgentChatSessionEntity> {
+    /**
+     * 累加会话汇总，会话不存在时新增
+     *
+     * @param list 本批聊天记录按会话汇总后的结果
+     */
+    void upsertBatch(@Param("list") List<AgentChatSessionEntity> list);
+
+    /**
+     * 按聊天记录重新计算会话的条数和第一条消息时间
+     *
+     * @param list 会话（只需agentId、sessionId）
+     */
+    void refreshSessions(@Param("list") List<AgentChatSessionEntity> list);
+
+    /**
+     * 删除已没有聊天记录的会话
+     *
+     * @param list 会话（只需agentId、sessionId）
+     */
+    void deleteEmptySessions(@Param("list") List<AgentChatSessionEntity> list);
+
+    /**
+     * 查询智能体已删除但仍有会话汇总（即仍有聊天记录）的智能体ID
+     *
+     * @param limit 条数
+     */
+    List<String> selectOrphanAgentIds(@Param("limit") int limit);
+
+    /**
+     * 查询聊天记录总条数超过上限的智能体ID
+     *
+     * @param maxMessages 条数上限
+     */
+    List<String> selectAgentIdsOverCount(@Param("maxMessages") int maxMessages);
+}
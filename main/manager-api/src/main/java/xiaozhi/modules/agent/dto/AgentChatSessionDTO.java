@@ -23,4 +23,9 @@ public class AgentChatSessionDTO {
      * 聊天条数
      */
     private Integer chatCount;
+
+    /**
+     * 最后一条消息内容摘要
+     */
+    private String lastContent;
 }
\ No newline at end of file
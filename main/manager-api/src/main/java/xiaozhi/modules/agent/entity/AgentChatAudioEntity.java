@@ -1,6 +1,9 @@
 package xiaozhi.modules.agent.entity;
 
+import java.nio.file.Path;
+
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 
@@ -23,7 +26,18 @@ public class AgentChatAudioEntity {
     private String id;
 
     /**
-     * 音频opus数据
+     * 音频opus数据，音频保存在外部存储时为空
      */
     private byte[] audio;
+
+    /**
+     * 音频在外部存储中的key（内容SHA-256），为空时音频保存在audio字段
+     */
+    private String storageKey;
+
+    /**
+     * 待保存的音频文件，保存时流式读取，不入库
+     */
+    @TableField(exist = false)
+    private Path audioFile;
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package xiaozhi.modules.agent.entity;
+
+import java.util.Date;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 智能体聊天会话汇总表，聊天上报时增量更新
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@TableName(value = "ai_agent_chat_session")
+public class AgentChatSessionEntity {
+    /**
+     * 智能体ID
+     */
+    @TableField(value = "agent_id")
+    private String agentId;
+
+    /**
+     * 会话ID
+     */
+    @TableField(value = "session_id")
+    private String sessionId;
+
+    /**
+     * MAC地址
+     */
+    @TableField(value = "mac_address")
+    private String macAddress;
+
+    /**
+     * 第一条消息时间
+     */
+    @TableField(value = "first_chat_at")
+    private Date firstChatAt;
+
+    /**
+     * 最后一条消息时间
+     */
+    @TableField(value = "last_chat_at")
+    private Date lastChatAt;
+
+    /**
+     * 聊天条数
+     */
+    @TableField(value = "chat_count")
+    private Integer chatCount;
+
+    /**
+     * 最后一条消息内容摘要
+     */
+    @TableField(value = "last_content")
+    private String lastContent;
+}
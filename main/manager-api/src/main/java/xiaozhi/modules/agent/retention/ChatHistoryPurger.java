@@ -0,0 +1,361 @@
+package xiaozhi.modules.agent.retention;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.modules.agent.dao.AiAgentChatAudioDao;
+import xiaozhi.modules.agent.dao.AiAgentChatHistoryDao;
+import xiaozhi.modules.agent.dao.AiAgentChatSessionDao;
+import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
+import xiaozhi.modules.agent.entity.AgentChatSessionEntity;
+import xiaozhi.modules.sys.service.SysParamsService;
+
+/**
+ * 聊天记录清理器
+ * <p>
+ * 所有删除都在后台线程里分块执行，每块最多 {@link #CHUNK_SIZE} 条，块之间暂停，避免长时间锁表：
+ * <ul>
+ * <li>删除智能体、关闭记忆或只记录文字时提交的清理任务，同一智能体的任务合并执行</li>
+ * <li>定时按保留策略清理：超过保留天数的聊天记录、超过保留天数的音频、超过条数上限的聊天记录</li>
+ * <li>定时回收已删除智能体遗留的聊天记录和没有聊天记录引用的音频</li>
+ * </ul>
+ * 清理任务只保存在内存中，进程重启后已删除智能体的记录由定时回收处理。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatHistoryPurger {
+    /**
+     * 每块删除的记录数
+     */
+    private static final int CHUNK_SIZE = 500;
+    /**
+     * 块之间暂停的时间（毫秒）
+     */
+    private static final long CHUNK_PAUSE_MILLIS = 50;
+    /**
+     * 启动后第一次定时清理的延迟（分钟）
+     */
+    private static final long SWEEP_INITIAL_DELAY_MINUTES = 5;
+    /**
+     * 定时清理的间隔（分钟）
+     */
+    private static final long SWEEP_INTERVAL_MINUTES = 60;
+    /**
+     * 每次定时清理最多处理的已删除智能体数
+     */
+    private static final int ORPHAN_AGENT_LIMIT = 100;
+
+    private final AiAgentChatHistoryDao aiAgentChatHistoryDao;
+    private final AiAgentChatAudioDao aiAgentChatAudioDao;
+    private final AiAgentChatSessionDao aiAgentChatSessionDao;
+    private final SysParamsService sysParamsService;
+
+    /**
+     * 待清理的智能体，值为是否删除文字（否则只删除音频）
+     */
+    private final Map<String, Boolean> pendingAgents = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+    private volatile String currentTask;
+    private volatile long lastSweepAt;
+    private volatile long lastSweepMillis;
+
+    private final AtomicLong deletedHistoryCount = new AtomicLong();
+    private final AtomicLong clearedAudioCount = new AtomicLong();
+    private final AtomicLong deletedAudioCount = new AtomicLong();
+    private final AtomicLong orphanAudioCount = new AtomicLong();
+    private final AtomicLong chunkCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-history-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweep, SWEEP_INITIAL_DELAY_MINUTES, SWEEP_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交智能体聊天记录清理任务，立即返回
+     *
+     * @param agentId     智能体ID
+     * @param deleteAudio 是否删除音频
+     * @param deleteText  是否删除文字（同时删除音频）
+     */
+    public void purgeAgent(String agentId, boolean deleteAudio, boolean deleteText) {
+        if (StringUtils.isBlank(agentId) || (!deleteAudio && !deleteText)) {
+            return;
+        }
+        pendingAgents.merge(agentId, deleteText, Boolean::logicalOr);
+        executor.execute(this::drainPending);
+    }
+
+    /**
+     * 立即执行一次定时清理
+     */
+    public void triggerSweep() {
+        executor.execute(this::sweep);
+    }
+
+    /**
+     * 清理进度指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingAgents", pendingAgents.size());
+        stats.put("currentTask", currentTask);
+        stats.put("deletedHistoryCount", deletedHistoryCount.get());
+        stats.put("clearedAudioCount", clearedAudioCount.get());
+        stats.put("deletedAudioCount", deletedAudioCount.get());
+        stats.put("orphanAudioCount", orphanAudioCount.get());
+        stats.put("chunkCount", chunkCount.get());
+        stats.put("failedCount", failedCount.get());
+        stats.put("lastSweepAt", lastSweepAt);
+        stats.put("lastSweepMillis", lastSweepMillis);
+        return stats;
+    }
+
+    private void drainPending() {
+        for (String agentId : pendingAgents.keySet()) {
+            Boolean deleteText = pendingAgents.remove(agentId);
+            if (deleteText == null) {
+                continue;
+            }
+            try {
+                purgeAgentNow(agentId, deleteText);
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                log.error("清理智能体{}的聊天记录失败", agentId, e);
+            } finally {
+                currentTask = null;
+            }
+        }
+    }
+
+    void sweep() {
+        long start = System.currentTimeMillis();
+        try {
+            for (String agentId : aiAgentChatSessionDao.selectOrphanAgentIds(ORPHAN_AGENT_LIMIT)) {
+                purgeAgentNow(agentId, true);
+            }
+
+            int retentionDays = getIntParam(Constant.SERVER_CHAT_HISTORY_RETENTION_DAYS);
+            if (retentionDays > 0) {
+                currentTask = "retention";
+                purgeBefore(daysAgo(retentionDays), false);
+            }
+            int audioRetentionDays = getIntParam(Constant.SERVER_CHAT_AUDIO_RETENTION_DAYS);
+            if (audioRetentionDays > 0) {
+                currentTask = "audio-retention";
+                purgeBefore(daysAgo(audioRetentionDays), true);
+            }
+            int maxMessages = getIntParam(Constant.SERVER_CHAT_HISTORY_MAX_MESSAGES);
+            if (maxMessages > 0) {
+                for (String agentId : aiAgentChatSessionDao.selectAgentIdsOverCount(maxMessages)) {
+                    currentTask = "max-messages:" + agentId;
+                    purgeOverCount(agentId, maxMessages);
+                }
+            }
+
+            currentTask = "orphan-audio";
+            collectOrphanAudio();
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            log.error("定时清理聊天记录失败", e);
+        } finally {
+            currentTask = null;
+            lastSweepAt = start;
+            lastSweepMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * 清理一个智能体的全部聊天记录或全部音频
+     */
+    private void purgeAgentNow(String agentId, boolean deleteText) {
+        currentTask = (deleteText ? "agent:" : "agent-audio:") + agentId;
+        long afterId = 0;
+        while (running) {
+            List<AgentChatHistoryEntity> chunk = aiAgentChatHistoryDao.selectPurgeChunkByAgentId(agentId, afterId,
+                    !deleteText, CHUNK_SIZE);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            deleteChunk(chunk, !deleteText, false);
+            afterId = chunk.getLast().getId();
+            pause();
+        }
+        if (deleteText && running) {
+            // 会话汇总最后删除，中途失败时定时回收还能通过它找到遗留的记录
+            aiAgentChatSessionDao.delete(new QueryWrapper<AgentChatSessionEntity>().eq("agent_id", agentId));
+        }
+    }
+
+    /**
+     * 清理指定时间之前的聊天记录或音频
+     * <p>
+     * 创建时间是设备上报的时间，溢出文件导入的记录也会带着较早的时间以新的主键写入，主键顺序与创建时间无关，
+     * 因此不能把时间换成主键区间：按时间索引以 (created_at, id) 分块，每块的查询都带上时间条件。
+     */
+    private void purgeBefore(Date cutoff, boolean audioOnly) {
+        Date afterTime = null;
+        long afterId = 0;
+        while (running) {
+            List<AgentChatHistoryEntity> chunk = aiAgentChatHistoryDao.selectPurgeChunkBefore(cutoff, afterTime,
+                    afterId, audioOnly, CHUNK_SIZE);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            deleteChunk(chunk, audioOnly, true);
+            AgentChatHistoryEntity last = chunk.getLast();
+            afterTime = last.getCreatedAt();
+            afterId = last.getId();
+            pause();
+        }
+    }
+
+    /**
+     * 清理一个智能体超过条数上限的最早的聊天记录
+     */
+    private void purgeOverCount(String agentId, int maxMessages) {
+        // 与按时间清理一样按 (created_at, id) 排序，溢出文件导入的较早记录主键较大，不能按主键判断新旧
+        AgentChatHistoryEntity boundary = aiAgentChatHistoryDao.selectByAgentIdOffset(agentId, maxMessages);
+        if (boundary == null) {
+            return;
+        }
+        Date afterTime = null;
+        long afterId = 0;
+        while (running) {
+            List<AgentChatHistoryEntity> chunk = aiAgentChatHistoryDao.selectPurgeChunkUpTo(agentId,
+                    boundary.getCreatedAt(), boundary.getId(), afterTime, afterId, CHUNK_SIZE);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            deleteChunk(chunk, false, true);
+            AgentChatHistoryEntity last = chunk.getLast();
+            afterTime = last.getCreatedAt();
+            afterId = last.getId();
+            pause();
+        }
+    }
+
+    /**
+     * 回收没有聊天记录引用的音频
+     * <p>
+     * 音频和聊天记录在同一个事务里写入，先查到的音频如果有引用，引用一定已经可见。
+     */
+    private void collectOrphanAudio() {
+        String afterId = null;
+        while (running) {
+            List<String> audioIds = aiAgentChatAudioDao.selectIdsAfter(afterId, CHUNK_SIZE);
+            if (audioIds.isEmpty()) {
+                break;
+            }
+            List<String> orphans = new ArrayList<>(audioIds);
+            orphans.removeAll(aiAgentChatHistoryDao.selectReferencedAudioIds(audioIds));
+            if (!orphans.isEmpty()) {
+                aiAgentChatAudioDao.deleteBatchIds(orphans);
+                orphanAudioCount.addAndGet(orphans.size());
+            }
+            afterId = audioIds.getLast();
+            pause();
+        }
+    }
+
+    /**
+     * 删除一块聊天记录及其音频
+     *
+     * @param chunk           聊天记录（只需id、agent_id、session_id、audio_id）
+     * @param audioOnly       是否只删除音频，保留文字
+     * @param refreshSessions 是否重新计算涉及的会话汇总
+     */
+    private void deleteChunk(List<AgentChatHistoryEntity> chunk, boolean audioOnly, boolean refreshSessions) {
+        List<Long> ids = chunk.stream().map(AgentChatHistoryEntity::getId).toList();
+        List<String> audioIds = chunk.stream().map(AgentChatHistoryEntity::getAudioId)
+                .filter(Objects::nonNull).distinct().toList();
+
+        // 先去掉引用再删音频，中途失败只会留下无引用的音频，由定时回收处理
+        if (audioOnly) {
+            aiAgentChatHistoryDao.clearAudioIdByIds(ids);
+            clearedAudioCount.addAndGet(ids.size());
+        } else {
+            aiAgentChatHistoryDao.deleteBatchIds(ids);
+            deletedHistoryCount.addAndGet(ids.size());
+        }
+        if (!audioIds.isEmpty()) {
+            aiAgentChatAudioDao.deleteBatchIds(audioIds);
+            deletedAudioCount.addAndGet(audioIds.size());
+        }
+
+        if (refreshSessions && !audioOnly) {
+            Map<String, AgentChatSessionEntity> sessions = new LinkedHashMap<>();
+            for (AgentChatHistoryEntity history : chunk) {
+                sessions.computeIfAbsent(history.getAgentId() + ":" + history.getSessionId(),
+                        key -> AgentChatSessionEntity.builder()
+                                .agentId(history.getAgentId())
+                                .sessionId(history.getSessionId())
+                                .build());
+            }
+            List<AgentChatSessionEntity> keys = new ArrayList<>(sessions.values());
+            aiAgentChatSessionDao.refreshSessions(keys);
+            aiAgentChatSessionDao.deleteEmptySessions(keys);
+        }
+        chunkCount.incrementAndGet();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(CHUNK_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private int getIntParam(String paramCode) {
+        String value = sysParamsService.getValue(paramCode, true);
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return (int) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            log.warn("参数{}不是数字: {}", paramCode, value);
+            return 0;
+        }
+    }
+
+    private static Date daysAgo(int days) {
+        return new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+    }
+}
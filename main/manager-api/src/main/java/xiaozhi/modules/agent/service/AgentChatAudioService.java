@@ -1,5 +1,9 @@
 package xiaozhi.modules.agent.service;
 
+import java.util.List;
+
+import org.springframework.core.io.Resource;
+
 import com.baomidou.mybatisplus.extension.service.IService;
 
 import xiaozhi.modules.agent.entity.AgentChatAudioEntity;
@@ -27,4 +31,32 @@ public interface AgentChatAudioService extends IService<AgentChatAudioEntity> {
      * @return 音频数据
      */
     byte[] getAudio(String audioId);
+
+    /**
+     * 获取音频资源，用于流式输出，保存在音频存储中的音频不会整体复制到堆内存
+     *
+     * @param audioId 音频ID
+     * @return 音频资源，不存在时返回null
+     */
+    Resource getAudioResource(String audioId);
+
+    /**
+     * 判断音频是否存在
+     *
+     * @param audioId 音频ID
+     * @return 是否存在
+     */
+    boolean existsAudio(String audioId);
+
+    /**
+     * 批量保存音频，调用方需要预先生成ID；设置了audioFile的音频从文件读取
+     *
+     * @param audios 音频列表
+     */
+    void saveAudioBatch(List<AgentChatAudioEntity> audios);
+
+    /**
+     * 把数据库中的音频分批迁移到音频存储，迁移在后台执行
+     */
+    void migrateAudioToStorage();
 }
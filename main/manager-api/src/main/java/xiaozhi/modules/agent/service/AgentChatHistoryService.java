@@ -38,7 +38,7 @@ public interface AgentChatHistoryService extends IService<AgentChatHistoryEntity
     List<AgentChatHistoryDTO> getChatHistoryBySessionId(String agentId, String sessionId);
 
     /**
-     * 根据智能体ID删除聊天记录
+     * 根据智能体ID删除聊天记录，在后台分块删除，立即返回
      *
      * @param agentId     智能体ID
      * @param deleteAudio 是否删除音频
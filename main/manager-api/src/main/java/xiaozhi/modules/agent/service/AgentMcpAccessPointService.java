@@ -2,6 +2,7 @@ package xiaozhi.modules.agent.service;
 
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 智能体Mcp接入点处理service
@@ -22,4 +23,11 @@ public interface AgentMcpAccessPointService {
      * @return 工具列表
      */
    List<String> getAgentMcpToolsList(String id);
+
+    /**
+     * 异步获取智能体的mcp接入点已有的工具列表，获取失败时返回空列表
+     * @param id 智能体id
+     * @return 工具列表
+     */
+   CompletableFuture<List<String>> getAgentMcpToolsListAsync(String id);
 }
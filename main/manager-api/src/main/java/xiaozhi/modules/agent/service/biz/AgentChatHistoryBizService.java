@@ -1,5 +1,7 @@
 package xiaozhi.modules.agent.service.biz;
 
+import org.springframework.web.multipart.MultipartFile;
+
 import xiaozhi.modules.agent.dto.AgentChatHistoryReportDTO;
 
 /**
@@ -19,4 +21,13 @@ public interface AgentChatHistoryBizService {
      * @return 上传结果，true表示成功，false表示失败
      */
     Boolean report(AgentChatHistoryReportDTO agentChatHistoryReportDTO);
+
+    /**
+     * 聊天上报方法，音频以二进制文件上传
+     *
+     * @param agentChatHistoryReportDTO 包含聊天上报所需信息的输入对象，不使用其中的audioBase64字段
+     * @param audio                     opus音频文件，可为空
+     * @return 上传结果，true表示成功，false表示失败
+     */
+    Boolean report(AgentChatHistoryReportDTO agentChatHistoryReportDTO, MultipartFile audio);
 }
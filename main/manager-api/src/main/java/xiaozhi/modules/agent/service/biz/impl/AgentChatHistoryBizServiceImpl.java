@@ -1,26 +1,20 @@
 package xiaozhi.modules.agent.service.biz.impl;
 
-import java.util.Base64;
-import java.util.Date;
-import java.util.Objects;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import xiaozhi.common.constant.Constant;
-import xiaozhi.common.redis.RedisKeys;
-import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.exception.RenException;
+import xiaozhi.modules.agent.buffer.ChatHistoryIngestBuffer;
 import xiaozhi.modules.agent.dto.AgentChatHistoryReportDTO;
-import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
-import xiaozhi.modules.agent.entity.AgentEntity;
-import xiaozhi.modules.agent.service.AgentChatAudioService;
-import xiaozhi.modules.agent.service.AgentChatHistoryService;
 import xiaozhi.modules.agent.service.AgentService;
 import xiaozhi.modules.agent.service.biz.AgentChatHistoryBizService;
-import xiaozhi.modules.device.entity.DeviceEntity;
-import xiaozhi.modules.device.service.DeviceService;
 
 /**
  * {@link AgentChatHistoryBizService} impl
@@ -34,93 +28,74 @@ import xiaozhi.modules.device.service.DeviceService;
 @RequiredArgsConstructor
 public class AgentChatHistoryBizServiceImpl implements AgentChatHistoryBizService {
     private final AgentService agentService;
-    private final AgentChatHistoryService agentChatHistoryService;
-    private final AgentChatAudioService agentChatAudioService;
-    private final RedisUtils redisUtils;
-    private final DeviceService deviceService;
+    private final ChatHistoryIngestBuffer chatHistoryIngestBuffer;
 
     /**
      * 处理聊天记录上报，包括文件上传和相关信息记录
+     * <p>
+     * 记录放入写入队列后立即返回，由队列批量写入数据库
      *
      * @param report 包含聊天上报所需信息的输入对象
-     * @return 上传结果，true表示成功，false表示失败
+     * @return 上传结果，true表示已接收，false表示设备没有绑定智能体
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Boolean report(AgentChatHistoryReportDTO report) {
+        // 音频保持Base64编码放入写入队列，实际保存时才解码
+        return doReport(report, StringUtils.defaultIfEmpty(report.getAudioBase64(), null), null);
+    }
+
+    @Override
+    public Boolean report(AgentChatHistoryReportDTO report, MultipartFile audio) {
+        return doReport(report, null, audio != null && !audio.isEmpty() ? audio : null);
+    }
+
+    private Boolean doReport(AgentChatHistoryReportDTO report, String audioBase64, MultipartFile audio) {
         String macAddress = report.getMacAddress();
         Byte chatType = report.getChatType();
         Long reportTimeMillis = null != report.getReportTime() ? report.getReportTime() * 1000 : System.currentTimeMillis();
         log.info("小智设备聊天上报请求: macAddress={}, type={} reportTime={}", macAddress, chatType, reportTimeMillis);
 
-        // 根据设备MAC地址查询对应的默认智能体，判断是否需要上报
-        AgentEntity agentEntity = agentService.getDefaultAgentByMacAddress(macAddress);
-        if (agentEntity == null) {
+        // 根据设备MAC地址查询对应的默认智能体，设备没有绑定智能体时不上报
+        if (agentService.getDefaultAgentByMacAddress(macAddress) == null) {
             return Boolean.FALSE;
         }
 
-        Integer chatHistoryConf = agentEntity.getChatHistoryConf();
-        String agentId = agentEntity.getId();
-
-        if (Objects.equals(chatHistoryConf, Constant.ChatHistoryConfEnum.RECORD_TEXT.getCode())) {
-            saveChatText(report, agentId, macAddress, null, reportTimeMillis);
-        } else if (Objects.equals(chatHistoryConf, Constant.ChatHistoryConfEnum.RECORD_TEXT_AUDIO.getCode())) {
-            String audioId = saveChatAudio(report);
-            saveChatText(report, agentId, macAddress, audioId, reportTimeMillis);
-        }
-
-        // 更新设备最后对话时间
-        redisUtils.set(RedisKeys.getAgentDeviceLastConnectedAtById(agentId), new Date());
-
-        // 更新设备最后连接时间
-        DeviceEntity device = deviceService.getDeviceByMacAddress(macAddress);
-        if (device != null) {
-            deviceService.updateDeviceConnectionInfo(agentId, device.getId(), null);
-        } else {
-            log.warn("聊天记录上报时，未找到mac地址为 {} 的设备", macAddress);
+        Path audioFile = audio != null ? spoolAudio(audio) : null;
+        try {
+            chatHistoryIngestBuffer.offer(new ChatHistoryIngestBuffer.ChatReport(macAddress, report.getSessionId(),
+                    chatType, report.getContent(), audioBase64, audioFile != null ? audioFile.toString() : null,
+                    null, null, reportTimeMillis, 0));
+        } catch (RenException e) {
+            deleteQuietly(audioFile);
+            throw e;
         }
-
         return Boolean.TRUE;
     }
 
     /**
-     * base64解码report.getOpusDataBase64(),存入ai_agent_chat_audio表
+     * 把上传的音频流式写入暂存文件，不把整段音频读入内存
      */
-    private String saveChatAudio(AgentChatHistoryReportDTO report) {
-        String audioId = null;
-
-        if (report.getAudioBase64() != null && !report.getAudioBase64().isEmpty()) {
-            try {
-                byte[] audioData = Base64.getDecoder().decode(report.getAudioBase64());
-                audioId = agentChatAudioService.saveAudio(audioData);
-                log.info("音频数据保存成功，audioId={}", audioId);
-            } catch (Exception e) {
-                log.error("音频数据保存失败", e);
-                return null;
-            }
+    private Path spoolAudio(MultipartFile audio) {
+        Path audioFile = null;
+        try {
+            audioFile = chatHistoryIngestBuffer.createAudioFile();
+            audio.transferTo(audioFile);
+            return audioFile;
+        } catch (IOException e) {
+            deleteQuietly(audioFile);
+            log.error("读取上报音频失败", e);
+            throw new RenException("读取上报音频失败");
         }
-        return audioId;
     }
 
-    /**
-     * 组装上报数据
-     */
-    private void saveChatText(AgentChatHistoryReportDTO report, String agentId, String macAddress, String audioId, Long reportTime) {
-        // 构建聊天记录实体
-        AgentChatHistoryEntity entity = AgentChatHistoryEntity.builder()
-                .macAddress(macAddress)
-                .agentId(agentId)
-                .sessionId(report.getSessionId())
-                .chatType(report.getChatType())
-                .content(report.getContent())
-                .audioId(audioId)
-                .createdAt(new Date(reportTime))
-                // NOTE(haotian): 2025/5/26 updateAt可以不设置，重点是createAt，而且这样可以看到上报延迟
-                .build();
-
-        // 保存数据
-        agentChatHistoryService.save(entity);
-
-        log.info("设备 {} 对应智能体 {} 上报成功", macAddress, agentId);
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除聊天音频暂存文件失败: {}", file, e);
+        }
     }
 }
@@ -1,34 +1,198 @@
 package xiaozhi.modules.agent.service.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import xiaozhi.modules.agent.dao.AiAgentChatAudioDao;
 import xiaozhi.modules.agent.entity.AgentChatAudioEntity;
 import xiaozhi.modules.agent.service.AgentChatAudioService;
+import xiaozhi.modules.agent.storage.AudioStorage;
+import xiaozhi.modules.agent.storage.ByteBufferResource;
 
 /**
  * 智能体聊天音频数据表处理service {@link AgentChatAudioService} impl
+ * <p>
+ * 配置了音频存储时，音频内容写入音频存储，表中只记录存储key；
+ * 未迁移的历史数据仍从audio字段读取。
  *
  * @author Goody
  * @version 1.0, 2025/5/8
  * @since 1.0.0
  */
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class AgentChatAudioServiceImpl extends ServiceImpl<AiAgentChatAudioDao, AgentChatAudioEntity>
         implements AgentChatAudioService {
+    /**
+     * 单条INSERT最多包含的音频数，音频保存在数据库时避免超过max_allowed_packet
+     */
+    private static final int INSERT_BATCH_SIZE = 20;
+    /**
+     * 每批迁移的音频数
+     */
+    private static final int MIGRATE_BATCH_SIZE = 100;
+
+    private final ObjectProvider<AudioStorage> audioStorageProvider;
+    private final AtomicBoolean migrating = new AtomicBoolean(false);
+
     @Override
     public String saveAudio(byte[] audioData) {
         AgentChatAudioEntity entity = new AgentChatAudioEntity();
         entity.setAudio(audioData);
+        moveToStorage(entity);
         save(entity);
         return entity.getId();
     }
 
     @Override
     public byte[] getAudio(String audioId) {
-        AgentChatAudioEntity entity = getById(audioId);
+        AgentChatAudioEntity entity = selectWithoutAudio(audioId);
+        if (entity == null) {
+            return null;
+        }
+        if (entity.getStorageKey() != null) {
+            AudioStorage audioStorage = getAudioStorage(audioId);
+            return audioStorage != null ? audioStorage.get(entity.getStorageKey()) : null;
+        }
+        entity = getById(audioId);
         return entity != null ? entity.getAudio() : null;
     }
+
+    @Override
+    public Resource getAudioResource(String audioId) {
+        AgentChatAudioEntity entity = selectWithoutAudio(audioId);
+        if (entity == null) {
+            return null;
+        }
+        if (entity.getStorageKey() != null) {
+            AudioStorage audioStorage = getAudioStorage(audioId);
+            ByteBuffer buffer = audioStorage != null ? audioStorage.read(entity.getStorageKey()) : null;
+            return buffer != null ? new ByteBufferResource(buffer) : null;
+        }
+        entity = getById(audioId);
+        return entity != null && entity.getAudio() != null ? new ByteArrayResource(entity.getAudio()) : null;
+    }
+
+    @Override
+    public boolean existsAudio(String audioId) {
+        return count(new LambdaQueryWrapper<AgentChatAudioEntity>().eq(AgentChatAudioEntity::getId, audioId)) > 0;
+    }
+
+    @Override
+    public void saveAudioBatch(List<AgentChatAudioEntity> audios) {
+        audios.forEach(this::moveToStorage);
+        for (int i = 0; i < audios.size(); i += INSERT_BATCH_SIZE) {
+            baseMapper.insertBatch(audios.subList(i, Math.min(i + INSERT_BATCH_SIZE, audios.size())));
+        }
+    }
+
+    @Async
+    @Override
+    public void migrateAudioToStorage() {
+        AudioStorage audioStorage = audioStorageProvider.getIfAvailable();
+        if (audioStorage == null) {
+            log.warn("未配置音频存储，跳过音频迁移");
+            return;
+        }
+        if (!migrating.compareAndSet(false, true)) {
+            log.info("音频迁移正在进行中");
+            return;
+        }
+        long migrated = 0;
+        try {
+            while (true) {
+                List<Object> ids = baseMapper.selectObjs(new LambdaQueryWrapper<AgentChatAudioEntity>()
+                        .select(AgentChatAudioEntity::getId)
+                        .isNull(AgentChatAudioEntity::getStorageKey)
+                        .isNotNull(AgentChatAudioEntity::getAudio)
+                        .last("LIMIT " + MIGRATE_BATCH_SIZE));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Object id : ids) {
+                    AgentChatAudioEntity entity = getById((String) id);
+                    if (entity == null || entity.getAudio() == null) {
+                        continue;
+                    }
+                    String storageKey = audioStorage.put(entity.getAudio());
+                    update(new LambdaUpdateWrapper<AgentChatAudioEntity>()
+                            .set(AgentChatAudioEntity::getStorageKey, storageKey)
+                            .set(AgentChatAudioEntity::getAudio, null)
+                            .eq(AgentChatAudioEntity::getId, entity.getId())
+                            .isNull(AgentChatAudioEntity::getStorageKey));
+                }
+                migrated += ids.size();
+                log.info("音频迁移中，已迁移 {} 条", migrated);
+            }
+            log.info("音频迁移完成，共迁移 {} 条", migrated);
+        } catch (Exception e) {
+            log.error("音频迁移失败，已迁移 {} 条", migrated, e);
+        } finally {
+            migrating.set(false);
+        }
+    }
+
+    /**
+     * 查询音频记录，不加载audio字段
+     */
+    private AgentChatAudioEntity selectWithoutAudio(String audioId) {
+        return getOne(new LambdaQueryWrapper<AgentChatAudioEntity>()
+                .select(AgentChatAudioEntity::getId, AgentChatAudioEntity::getStorageKey)
+                .eq(AgentChatAudioEntity::getId, audioId));
+    }
+
+    private AudioStorage getAudioStorage(String audioId) {
+        AudioStorage audioStorage = audioStorageProvider.getIfAvailable();
+        if (audioStorage == null) {
+            log.error("音频 {} 保存在音频存储中，但未配置音频存储", audioId);
+        }
+        return audioStorage;
+    }
+
+    /**
+     * 配置了音频存储时，把音频内容写入存储，实体只保留存储key；音频来自文件时流式写入。
+     * 未配置音频存储时音频保存在数据库，来自文件的音频需要完整读入
+     */
+    private void moveToStorage(AgentChatAudioEntity entity) {
+        AudioStorage audioStorage = audioStorageProvider.getIfAvailable();
+        Path audioFile = entity.getAudioFile();
+        if (audioFile != null) {
+            try {
+                if (audioStorage != null) {
+                    try (InputStream in = Files.newInputStream(audioFile)) {
+                        entity.setStorageKey(audioStorage.put(in, Files.size(audioFile)));
+                    }
+                } else {
+                    entity.setAudio(Files.readAllBytes(audioFile));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("读取待保存的音频文件失败: " + audioFile, e);
+            }
+            entity.setAudioFile(null);
+            return;
+        }
+        if (audioStorage == null || entity.getAudio() == null) {
+            return;
+        }
+        entity.setStorageKey(audioStorage.put(entity.getAudio()));
+        entity.setAudio(null);
+    }
 }
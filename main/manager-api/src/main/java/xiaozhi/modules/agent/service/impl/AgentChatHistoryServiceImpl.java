@@ -1,12 +1,12 @@
 package xiaozhi.modules.agent.service.impl;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
@@ -14,15 +14,21 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 
+import lombok.RequiredArgsConstructor;
 import xiaozhi.common.constant.Constant;
+import xiaozhi.common.page.PageCursor;
 import xiaozhi.common.page.PageData;
 import xiaozhi.common.utils.ConvertUtils;
 import xiaozhi.common.utils.JsonUtils;
+import xiaozhi.common.utils.TransactionUtils;
 import xiaozhi.modules.agent.Enums.AgentChatHistoryType;
 import xiaozhi.modules.agent.dao.AiAgentChatHistoryDao;
+import xiaozhi.modules.agent.dao.AiAgentChatSessionDao;
 import xiaozhi.modules.agent.dto.AgentChatHistoryDTO;
 import xiaozhi.modules.agent.dto.AgentChatSessionDTO;
 import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
+import xiaozhi.modules.agent.entity.AgentChatSessionEntity;
+import xiaozhi.modules.agent.retention.ChatHistoryPurger;
 import xiaozhi.modules.agent.service.AgentChatHistoryService;
 import xiaozhi.modules.agent.vo.AgentChatHistoryUserVO;
 
@@ -34,35 +40,60 @@ import xiaozhi.modules.agent.vo.AgentChatHistoryUserVO;
  * @since 1.0.0
  */
 @Service
+@RequiredArgsConstructor
 public class AgentChatHistoryServiceImpl extends ServiceImpl<AiAgentChatHistoryDao, AgentChatHistoryEntity>
         implements AgentChatHistoryService {
+    private final AiAgentChatSessionDao aiAgentChatSessionDao;
+    private final ChatHistoryPurger chatHistoryPurger;
 
     @Override
     public PageData<AgentChatSessionDTO> getSessionListByAgentId(Map<String, Object> params) {
         String agentId = (String) params.get("agentId");
+        if (PageCursor.isCursorMode(params)) {
+            return getSessionListByCursor(agentId, params);
+        }
         int page = Integer.parseInt(params.get(Constant.PAGE).toString());
         int limit = Integer.parseInt(params.get(Constant.LIMIT).toString());
 
-        // 构建查询条件
-        QueryWrapper<AgentChatHistoryEntity> wrapper = new QueryWrapper<>();
-        wrapper.select("session_id", "MAX(created_at) as created_at", "COUNT(*) as chat_count")
-                .eq("agent_id", agentId)
-                .groupBy("session_id")
-                .orderByDesc("created_at");
+        // 会话汇总表按 (agent_id, last_chat_at) 索引范围扫描，不再对聊天记录做GROUP BY
+        LambdaQueryWrapper<AgentChatSessionEntity> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(AgentChatSessionEntity::getAgentId, agentId)
+                .orderByDesc(AgentChatSessionEntity::getLastChatAt);
 
         // 执行分页查询
-        Page<Map<String, Object>> pageParam = new Page<>(page, limit);
-        IPage<Map<String, Object>> result = this.baseMapper.selectMapsPage(pageParam, wrapper);
+        Page<AgentChatSessionEntity> pageParam = new Page<>(page, limit);
+        IPage<AgentChatSessionEntity> result = aiAgentChatSessionDao.selectPage(pageParam, wrapper);
 
-        List<AgentChatSessionDTO> records = result.getRecords().stream().map(map -> {
+        return new PageData<>(toSessionDTO(result.getRecords()), result.getTotal());
+    }
+
+    /**
+     * 按 (last_chat_at, session_id) 游标分页查询会话列表
+     */
+    private PageData<AgentChatSessionDTO> getSessionListByCursor(String agentId, Map<String, Object> params) {
+        int limit = PageCursor.parseLimit(params.get(Constant.LIMIT));
+        QueryWrapper<AgentChatSessionEntity> wrapper = new QueryWrapper<>();
+        wrapper.eq("agent_id", agentId);
+        long total = PageCursor.isWithTotal(params) ? aiAgentChatSessionDao.selectCount(wrapper) : -1;
+
+        PageCursor.apply(wrapper, PageCursor.decode(params.get(Constant.CURSOR)), "last_chat_at", "session_id",
+                false, limit, PageCursor::parseDate, value -> value);
+        List<AgentChatSessionEntity> sessions = aiAgentChatSessionDao.selectList(wrapper);
+        String nextCursor = PageCursor.next(sessions, limit, AgentChatSessionEntity::getLastChatAt,
+                AgentChatSessionEntity::getSessionId);
+
+        return new PageData<>(toSessionDTO(sessions), total, nextCursor);
+    }
+
+    private List<AgentChatSessionDTO> toSessionDTO(List<AgentChatSessionEntity> sessions) {
+        return sessions.stream().map(session -> {
             AgentChatSessionDTO dto = new AgentChatSessionDTO();
-            dto.setSessionId((String) map.get("session_id"));
-            dto.setCreatedAt((LocalDateTime) map.get("created_at"));
-            dto.setChatCount(((Number) map.get("chat_count")).intValue());
+            dto.setSessionId(session.getSessionId());
+            dto.setCreatedAt(LocalDateTime.ofInstant(session.getLastChatAt().toInstant(), ZoneId.systemDefault()));
+            dto.setChatCount(session.getChatCount());
+            dto.setLastContent(session.getLastContent());
             return dto;
         }).collect(Collectors.toList());
-
-        return new PageData<>(records, result.getTotal());
     }
 
     @Override
@@ -81,18 +112,30 @@ public class AgentChatHistoryServiceImpl extends ServiceImpl<AiAgentChatHistoryD
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void deleteByAgentId(String agentId, Boolean deleteAudio, Boolean deleteText) {
-        if (deleteAudio) {
-            baseMapper.deleteAudioByAgentId(agentId);
-        }
-        if (deleteAudio && !deleteText) {
-            baseMapper.deleteAudioIdByAgentId(agentId);
-        }
-        if (deleteText) {
-            baseMapper.deleteHistoryByAgentId(agentId);
-        }
+    public PageData<AgentChatHistoryDTO> getChatHistoryPageBySessionId(String agentId, String sessionId,
+            Map<String, Object> params) {
+        int limit = PageCursor.parseLimit(params.get(Constant.LIMIT));
+        QueryWrapper<AgentChatHistoryEntity> wrapper = new QueryWrapper<>();
+        wrapper.eq("agent_id", agentId)
+                .eq("session_id", sessionId);
+        long total = PageCursor.isWithTotal(params) ? count(wrapper) : -1;
 
+        // 走 (agent_id, session_id, created_at) 索引，按 (created_at, id) 定位下一页
+        PageCursor.apply(wrapper, PageCursor.decode(params.get(Constant.CURSOR)), "created_at", "id", true, limit,
+                PageCursor::parseDate, PageCursor::parseLong);
+        List<AgentChatHistoryEntity> historyList = list(wrapper);
+        String nextCursor = PageCursor.next(historyList, limit, AgentChatHistoryEntity::getCreatedAt,
+                AgentChatHistoryEntity::getId);
+
+        return new PageData<>(ConvertUtils.sourceToTarget(historyList, AgentChatHistoryDTO.class), total,
+                nextCursor);
+    }
+
+    @Override
+    public void deleteByAgentId(String agentId, Boolean deleteAudio, Boolean deleteText) {
+        // 交给后台分块删除，调用方事务回滚时不删除
+        TransactionUtils.runAfterCommit(() -> chatHistoryPurger.purgeAgent(agentId,
+                Boolean.TRUE.equals(deleteAudio), Boolean.TRUE.equals(deleteText)));
     }
 
     @Override
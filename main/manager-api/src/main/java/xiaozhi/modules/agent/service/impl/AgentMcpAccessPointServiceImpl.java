@@ -1,33 +1,45 @@
 package xiaozhi.modules.agent.service.impl;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import xiaozhi.common.constant.Constant;
 import xiaozhi.common.utils.AESUtils;
 import xiaozhi.common.utils.HashEncryptionUtil;
-import xiaozhi.common.utils.JsonUtils;
 import xiaozhi.modules.agent.Enums.XiaoZhiMcpJsonRpcJson;
+import xiaozhi.modules.agent.cache.McpToolCatalogCache;
 import xiaozhi.modules.agent.service.AgentMcpAccessPointService;
 import xiaozhi.modules.sys.service.SysParamsService;
+import xiaozhi.modules.sys.utils.WebSocketChannelPool;
 import xiaozhi.modules.sys.utils.WebSocketClientManager;
 
 @AllArgsConstructor
 @Service
 @Slf4j
 public class AgentMcpAccessPointServiceImpl implements AgentMcpAccessPointService {
+    /**
+     * MCP单次请求的超时时间（秒）
+     */
+    private static final long MCP_REQUEST_TIMEOUT_SECONDS = 10;
+
     private SysParamsService sysParamsService;
+    private WebSocketChannelPool webSocketChannelPool;
+    private McpToolCatalogCache mcpToolCatalogCache;
 
     @Override
     public String getAgentMcpAccessAddress(String id) {
@@ -52,123 +64,99 @@ public class AgentMcpAccessPointServiceImpl implements AgentMcpAccessPointServic
 
     @Override
     public List<String> getAgentMcpToolsList(String id) {
+        return getAgentMcpToolsListAsync(id).join();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAgentMcpToolsListAsync(String id) {
+        if (StringUtils.isBlank(getAgentMcpAccessAddress(id))) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        // 优先使用缓存，过期时先返回旧值并在后台刷新
+        return mcpToolCatalogCache.get(id, this::fetchAgentMcpToolsList)
+                .exceptionally(e -> {
+                    log.error("获取智能体 MCP 工具列表失败，智能体ID: {},错误原因：{}", id, e.getMessage());
+                    return List.of();
+                });
+    }
+
+    /**
+     * 从MCP接入点获取工具列表，失败时返回异常完成的future
+     *
+     * @param id 智能体id
+     * @return 工具列表
+     */
+    private CompletableFuture<List<String>> fetchAgentMcpToolsList(String id) {
         String wsUrl = getAgentMcpAccessAddress(id);
         if (StringUtils.isBlank(wsUrl)) {
-            return List.of();
+            return CompletableFuture.completedFuture(List.of());
         }
 
         // 将 /mcp 替换为 /call
         wsUrl = wsUrl.replace("/mcp/", "/call/");
 
-        try {
-            // 创建 WebSocket 连接，增加超时时间到15秒
-            try (WebSocketClientManager client = WebSocketClientManager.build(
-                    new WebSocketClientManager.Builder()
-                            .uri(wsUrl)
-                            .bufferSize(1024 * 1024)
-                            .connectTimeout(8, TimeUnit.SECONDS)
-                            .maxSessionDuration(10, TimeUnit.SECONDS))) {
-
-                // 步骤1: 发送初始化消息并等待响应
-                log.info("发送MCP初始化消息，智能体ID: {}", id);
-                client.sendText(XiaoZhiMcpJsonRpcJson.getInitializeJson());
-
-                // 等待初始化响应 (id=1) - 移除固定延迟，改为响应驱动
-                List<String> initResponses = client.listenerWithoutClose(response -> {
-                    try {
-                        Map<String, Object> jsonMap = JsonUtils.parseObject(response, Map.class);
-                        if (jsonMap != null && Integer.valueOf(1).equals(jsonMap.get("id"))) {
-                            // 检查是否有result字段，表示初始化成功
-                            return jsonMap.containsKey("result") && !jsonMap.containsKey("error");
-                        }
-                        return false;
-                    } catch (Exception e) {
-                        log.warn("解析初始化响应失败: {}", response, e);
-                        return false;
-                    }
-                });
+        WebSocketClientManager.Builder builder = new WebSocketClientManager.Builder()
+                .uri(wsUrl)
+                .bufferSize(1024 * 1024)
+                .connectTimeout(8, TimeUnit.SECONDS)
+                .maxSessionDuration(10, TimeUnit.SECONDS);
+        // 借用到该智能体MCP接入点的长连接，新建的连接先完成初始化握手
+        return webSocketChannelPool.executeAsync(builder, client -> initializeMcp(client, id),
+                client -> listMcpTools(client, id));
+    }
 
-                // 验证初始化响应
-                boolean initSucceeded = false;
-                for (String response : initResponses) {
-                    try {
-                        Map<String, Object> jsonMap = JsonUtils.parseObject(response, Map.class);
-                        if (jsonMap != null && Integer.valueOf(1).equals(jsonMap.get("id"))) {
-                            if (jsonMap.containsKey("result")) {
-                                log.info("MCP初始化成功，智能体ID: {}", id);
-                                initSucceeded = true;
-                                break;
-                            } else if (jsonMap.containsKey("error")) {
-                                log.error("MCP初始化失败，智能体ID: {}, 错误: {}", id, jsonMap.get("error"));
-                                return List.of();
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.warn("处理初始化响应失败: {}", response, e);
-                    }
-                }
+    /**
+     * MCP初始化握手：initialize → notifications/initialized，每条连接只需执行一次
+     *
+     * @param client  WebSocket连接
+     * @param agentId 智能体ID
+     */
+    private void initializeMcp(WebSocketClientManager client, String agentId) throws Exception {
+        // 步骤1: 发送初始化消息并等待响应 (按请求ID关联响应)
+        log.info("发送MCP初始化消息，智能体ID: {}", agentId);
+        JsonNode response = client.sendRequest(XiaoZhiMcpJsonRpcJson.METHOD_INITIALIZE,
+                XiaoZhiMcpJsonRpcJson.getInitializeParams(), MCP_REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS).get();
+        if (response.has("error") || !response.has("result")) {
+            throw new IOException("MCP初始化失败: " + response.get("error"));
+        }
+        log.info("MCP初始化成功，智能体ID: {}", agentId);
 
-                if (!initSucceeded) {
-                    log.error("未收到有效的MCP初始化响应，智能体ID: {}", id);
-                    return List.of();
-                }
-
-                // 步骤2: 发送初始化完成通知 - 只有在收到initialize响应后才发送
-                log.info("发送MCP初始化完成通知，智能体ID: {}", id);
-                client.sendText(XiaoZhiMcpJsonRpcJson.getNotificationsInitializedJson());
-                // 步骤3: 发送工具列表请求 - 立即发送，无需额外延迟
-                log.info("发送MCP工具列表请求，智能体ID: {}", id);
-                client.sendText(XiaoZhiMcpJsonRpcJson.getToolsListJson());
-
-                // 等待工具列表响应 (id=2)
-                List<String> toolsResponses = client.listener(response -> {
-                    try {
-                        Map<String, Object> jsonMap = JsonUtils.parseObject(response, Map.class);
-                        return jsonMap != null && Integer.valueOf(2).equals(jsonMap.get("id"));
-                    } catch (Exception e) {
-                        log.warn("解析工具列表响应失败: {}", response, e);
-                        return false;
-                    }
-                });
+        // 步骤2: 发送初始化完成通知 - 只有在收到initialize响应后才发送
+        log.info("发送MCP初始化完成通知，智能体ID: {}", agentId);
+        client.sendNotification(XiaoZhiMcpJsonRpcJson.METHOD_NOTIFICATIONS_INITIALIZED, null);
+    }
 
-                // 处理工具列表响应
-                for (String response : toolsResponses) {
-                    try {
-                        Map<String, Object> jsonMap = JsonUtils.parseObject(response, Map.class);
-                        if (jsonMap != null && Integer.valueOf(2).equals(jsonMap.get("id"))) {
-                            // 检查是否有result字段
-                            Object resultObj = jsonMap.get("result");
-                            if (resultObj instanceof Map) {
-                                Map<String, Object> resultMap = (Map<String, Object>) resultObj;
-                                Object toolsObj = resultMap.get("tools");
-                                if (toolsObj instanceof List) {
-                                    List<Map<String, Object>> toolsList = (List<Map<String, Object>>) toolsObj;
-                                    // 提取工具名称列表
-                                    List<String> result = toolsList.stream()
-                                            .map(tool -> (String) tool.get("name"))
-                                            .filter(name -> name != null)
-                                            .collect(Collectors.toList());
-                                    log.info("成功获取MCP工具列表，智能体ID: {}, 工具数量: {}", id, result.size());
-                                    return result;
-                                }
-                            } else if (jsonMap.containsKey("error")) {
-                                log.error("获取工具列表失败，智能体ID: {}, 错误: {}", id, jsonMap.get("error"));
-                                return List.of();
-                            }
+    /**
+     * 在已初始化的连接上获取工具列表
+     *
+     * @param client  WebSocket连接
+     * @param agentId 智能体ID
+     * @return 工具名称列表
+     */
+    private CompletableFuture<List<String>> listMcpTools(WebSocketClientManager client, String agentId) {
+        // 步骤3: 发送工具列表请求
+        log.info("发送MCP工具列表请求，智能体ID: {}", agentId);
+        return client.sendRequest(XiaoZhiMcpJsonRpcJson.METHOD_TOOLS_LIST, null, MCP_REQUEST_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS).thenApply(response -> {
+                    // 失败时抛出异常，避免空列表覆盖缓存中的旧值
+                    if (response.has("error")) {
+                        throw new CompletionException(new IOException("获取工具列表失败: " + response.get("error")));
+                    }
+                    JsonNode tools = response.path("result").path("tools");
+                    if (!tools.isArray()) {
+                        throw new CompletionException(new IOException("未找到有效的工具列表响应"));
+                    }
+                    // 提取工具名称列表
+                    List<String> result = new ArrayList<>();
+                    for (JsonNode tool : tools) {
+                        JsonNode name = tool.get("name");
+                        if (name != null && name.isTextual()) {
+                            result.add(name.asText());
                         }
-                    } catch (Exception e) {
-                        log.warn("处理工具列表响应失败: {}", response, e);
                     }
-                }
-
-                log.warn("未找到有效的工具列表响应，智能体ID: {}", id);
-                return List.of();
-
-            }
-        } catch (Exception e) {
-            log.error("获取智能体 MCP 工具列表失败，智能体ID: {},错误原因：{}", id, e.getMessage());
-            return List.of();
-        }
+                    log.info("成功获取MCP工具列表，智能体ID: {}, 工具数量: {}", agentId, result.size());
+                    return result;
+                });
     }
 
     /**
@@ -11,6 +11,7 @@ import lombok.RequiredArgsConstructor;
 import xiaozhi.modules.agent.dao.AgentPluginMappingMapper;
 import xiaozhi.modules.agent.entity.AgentPluginMapping;
 import xiaozhi.modules.agent.service.AgentPluginMappingService;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
 
 /**
  * @description 针对表【ai_agent_plugin_mapping(Agent与插件的唯一映射表)】的数据库操作Service实现
@@ -21,6 +22,7 @@ import xiaozhi.modules.agent.service.AgentPluginMappingService;
 public class AgentPluginMappingServiceImpl extends ServiceImpl<AgentPluginMappingMapper, AgentPluginMapping>
         implements AgentPluginMappingService {
     private final AgentPluginMappingMapper agentPluginMappingMapper;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
 
     @Override
     public List<AgentPluginMapping> agentPluginParamsByAgentId(String agentId) {
@@ -32,6 +34,7 @@ public class AgentPluginMappingServiceImpl extends ServiceImpl<AgentPluginMappin
         UpdateWrapper<AgentPluginMapping> updateWrapper = new UpdateWrapper<>();
         updateWrapper.eq("agent_id", agentId);
         agentPluginMappingMapper.delete(updateWrapper);
+        agentConfigSnapshotCache.evict(agentId);
     }
 
 }
@@ -39,6 +39,8 @@ import xiaozhi.modules.agent.service.AgentPluginMappingService;
 import xiaozhi.modules.agent.service.AgentService;
 import xiaozhi.modules.agent.service.AgentTemplateService;
 import xiaozhi.modules.agent.vo.AgentInfoVO;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
 import xiaozhi.modules.device.service.DeviceService;
 import xiaozhi.modules.model.dto.ModelProviderDTO;
 import xiaozhi.modules.model.entity.ModelConfigEntity;
@@ -60,6 +62,8 @@ public class AgentServiceImpl extends BaseServiceImpl<AgentDao, AgentEntity> imp
     private final AgentChatHistoryService agentChatHistoryService;
     private final AgentTemplateService agentTemplateService;
     private final ModelProviderService modelProviderService;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
+    private final ConfigChangePublisher configChangePublisher;
 
     @Override
     public PageData<AgentEntity> adminAgentList(Map<String, Object> params) {
@@ -331,6 +335,9 @@ public class AgentServiceImpl extends BaseServiceImpl<AgentDao, AgentEntity> imp
             throw new RenException("LLM大模型和Intent意图识别，选择参数不匹配");
         }
         this.updateById(existingEntity);
+        // 智能体或插件变化，配置快照失效
+        agentConfigSnapshotCache.evict(agentId);
+        configChangePublisher.agentChanged(agentId);
     }
 
     /**
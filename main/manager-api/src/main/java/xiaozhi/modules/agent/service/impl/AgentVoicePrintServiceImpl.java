@@ -38,6 +38,7 @@ import xiaozhi.modules.agent.service.AgentChatAudioService;
 import xiaozhi.modules.agent.service.AgentChatHistoryService;
 import xiaozhi.modules.agent.service.AgentVoicePrintService;
 import xiaozhi.modules.agent.vo.AgentVoicePrintVO;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
 import xiaozhi.modules.sys.service.SysParamsService;
 
 /**
@@ -56,16 +57,19 @@ public class AgentVoicePrintServiceImpl extends ServiceImpl<AgentVoicePrintDao,
     // 识别度
     private final Double RECOGNITION = 0.5;
     private final Executor taskExecutor;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
 
     public AgentVoicePrintServiceImpl(AgentChatAudioService agentChatAudioService, RestTemplate restTemplate,
                                       SysParamsService sysParamsService, AgentChatHistoryService agentChatHistoryService,
-                                      TransactionTemplate transactionTemplate, @Qualifier("taskExecutor") Executor taskExecutor) {
+                                      TransactionTemplate transactionTemplate, @Qualifier("taskExecutor") Executor taskExecutor,
+                                      AgentConfigSnapshotCache agentConfigSnapshotCache) {
         this.agentChatAudioService = agentChatAudioService;
         this.restTemplate = restTemplate;
         this.sysParamsService = sysParamsService;
         this.agentChatHistoryService = agentChatHistoryService;
         this.transactionTemplate = transactionTemplate;
         this.taskExecutor = taskExecutor;
+        this.agentConfigSnapshotCache = agentConfigSnapshotCache;
     }
 
     @Override
@@ -82,7 +86,7 @@ public class AgentVoicePrintServiceImpl extends ServiceImpl<AgentVoicePrintDao,
         }
         AgentVoicePrintEntity entity = ConvertUtils.sourceToTarget(dto, AgentVoicePrintEntity.class);
         // 开启事务
-        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+        boolean b = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
             try {
                 // 保存声纹信息
                 int row = baseMapper.insert(entity);
@@ -103,10 +107,16 @@ public class AgentVoicePrintServiceImpl extends ServiceImpl<AgentVoicePrintDao,
                 throw new RenException("保存声纹错误，请联系管理员");
             }
         }));
+        if (b) {
+            agentConfigSnapshotCache.evict(dto.getAgentId());
+        }
+        return b;
     }
 
     @Override
     public boolean delete(Long userId, String voicePrintId) {
+        // 先记录声纹所属智能体，用于删除后清除智能体配置快照
+        AgentVoicePrintEntity voicePrint = baseMapper.selectById(voicePrintId);
         // 开启事务
         boolean b = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
             try {
@@ -128,6 +138,9 @@ public class AgentVoicePrintServiceImpl extends ServiceImpl<AgentVoicePrintDao,
         }));
         // 数据库声纹数据删除成功才继续执行删除声纹服务的数据
         if(b){
+            if (voicePrint != null) {
+                agentConfigSnapshotCache.evict(voicePrint.getAgentId());
+            }
             taskExecutor.execute(()-> {
                 try {
                     cancelVoicePrint(voicePrintId);
@@ -186,7 +199,7 @@ public class AgentVoicePrintServiceImpl extends ServiceImpl<AgentVoicePrintDao,
             resource = null;
         }
         // 开启事务
-        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+        boolean b = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
             try {
                 AgentVoicePrintEntity entity = ConvertUtils.sourceToTarget(dto, AgentVoicePrintEntity.class);
                 int row = baseMapper.updateById(entity);
@@ -211,6 +224,10 @@ public class AgentVoicePrintServiceImpl extends ServiceImpl<AgentVoicePrintDao,
                 throw new RenException("修改声纹错误，请联系管理员");
             }
         }));
+        if (b) {
+            agentConfigSnapshotCache.evict(agentId);
+        }
+        return b;
     }
 
     /**
@@ -0,0 +1,56 @@
+package xiaozhi.modules.agent.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 聊天音频存储
+ * <p>
+ * 音频按内容寻址：以内容的SHA-256作为key，相同内容只存一份。
+ * ai_agent_chat_audio 表只记录 audio_id 到 key 的映射，audio_id 的用法保持不变。
+ */
+public interface AudioStorage {
+
+    /**
+     * 保存音频，内容已存在时直接返回key
+     *
+     * @param data 音频数据
+     * @return 音频key（内容SHA-256）
+     */
+    String put(byte[] data);
+
+    /**
+     * 流式保存音频，不把整段音频读入内存，内容已存在时不保留本次写入
+     *
+     * @param in     音频数据，由调用方关闭
+     * @param length 音频长度
+     * @return 音频key（内容SHA-256）
+     * @throws IOException 读取音频数据失败
+     */
+    String put(InputStream in, long length) throws IOException;
+
+    /**
+     * 读取音频，返回的缓冲区为只读，可能直接映射到存储文件
+     *
+     * @param key 音频key
+     * @return 音频数据，不存在时返回null
+     */
+    ByteBuffer read(String key);
+
+    /**
+     * 读取音频到字节数组
+     *
+     * @param key 音频key
+     * @return 音频数据，不存在时返回null
+     */
+    default byte[] get(String key) {
+        ByteBuffer buffer = read(key);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+}
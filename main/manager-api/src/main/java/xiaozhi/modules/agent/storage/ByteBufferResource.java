@@ -0,0 +1,88 @@
+package xiaozhi.modules.agent.storage;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * 以ByteBuffer（例如文件映射区域）作为内容的资源，输出时按需读取，不会整体复制到堆内存
+ */
+public class ByteBufferResource extends AbstractResource {
+    private final ByteBuffer buffer;
+
+    public ByteBufferResource(ByteBuffer buffer) {
+        this.buffer = buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public String getDescription() {
+        return "ByteBuffer resource [" + buffer.remaining() + " bytes]";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    /**
+     * ByteBuffer输入流，skip直接移动位置，Range请求无需读取跳过的内容
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package xiaozhi.modules.agent.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 本地分段文件音频存储
+ * <p>
+ * 音频追加写入分段文件（segment-000001.dat ...），每个分段最大256MB；
+ * 索引文件 index.log 每行记录一条 "key 分段号 偏移量 长度"，同样只追加写入，启动时加载到内存。
+ * 先写数据再写索引，进程崩溃时超出分段文件长度的索引会被忽略；末尾未写完（没有换行符）的索引行在启动时截掉，
+ * 避免之后追加的索引行接在它后面。
+ * 读取时将分段文件映射到内存，直接返回映射区域的只读切片。
+ * <p>
+ * 写入只进入页缓存，不在聊天记录写入事务中刷盘，由后台线程每秒统一刷盘一次（先分段文件后索引）。
+ * 进程崩溃不丢数据；操作系统崩溃或断电时最近一秒写入的音频可能丢失，对应聊天记录的音频读取为空。
+ * <p>
+ * 存储目录只允许一个进程写入，启动时对目录下的 lock 文件加排他锁，获取失败则启动失败。
+ * 多实例部署时不要使用本地存储，应使用数据库存储（默认）。
+ * <p>
+ * 删除聊天记录不会回收分段文件中的空间（内容可能被多条记录共享）。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "audio.storage.type", havingValue = "local")
+public class LocalSegmentAudioStorage implements AudioStorage {
+    /**
+     * 分段文件最大字节数
+     */
+    private static final long MAX_SEGMENT_BYTES = 256L * 1024 * 1024;
+    private static final String INDEX_FILE = "index.log";
+    private static final String LOCK_FILE = "lock";
+    /**
+     * 刷盘间隔（毫秒）
+     */
+    private static final long SYNC_INTERVAL_MS = 1000;
+    /**
+     * 流式写入时的缓冲区大小
+     */
+    private static final int STREAM_BUFFER_BYTES = 64 * 1024;
+
+    private final Path root;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, MappedByteBuffer> mappedSegments = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "audio-storage-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel indexChannel;
+    private FileChannel segmentChannel;
+    private int segmentId;
+    private long segmentSize;
+    /**
+     * 上次刷盘后是否有新的写入
+     */
+    private boolean dirty;
+
+    public LocalSegmentAudioStorage(@Value("${audio.storage.path:uploadfile/audio}") String path) {
+        this.root = Paths.get(path);
+    }
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        Files.createDirectories(root);
+        acquireLock();
+        loadIndex();
+        segmentId = Math.max(segmentId, latestSegmentId());
+        openSegment(Math.max(segmentId, 1));
+        indexChannel = FileChannel.open(root.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncExecutor.scheduleWithFixedDelay(this::syncQuietly, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        log.info("本地音频存储已加载，目录: {}，音频数: {}", root.toAbsolutePath(), index.size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        syncExecutor.shutdown();
+        synchronized (this) {
+            try {
+                sync();
+            } finally {
+                if (segmentChannel != null) {
+                    segmentChannel.close();
+                }
+                if (indexChannel != null) {
+                    indexChannel.close();
+                }
+                if (lock != null) {
+                    lock.release();
+                }
+                if (lockChannel != null) {
+                    lockChannel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 将已写入的分段文件和索引刷到磁盘
+     */
+    public synchronized void sync() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        if (segmentChannel != null && segmentChannel.isOpen()) {
+            segmentChannel.force(false);
+        }
+        if (indexChannel != null && indexChannel.isOpen()) {
+            indexChannel.force(false);
+        }
+        dirty = false;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Exception e) {
+            log.error("本地音频存储刷盘失败", e);
+        }
+    }
+
+    /**
+     * 对存储目录加排他锁，保证只有一个进程写入
+     */
+    private void acquireLock() throws IOException {
+        lockChannel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("本地音频存储目录已被其他进程使用: " + root.toAbsolutePath()
+                    + "，多实例部署请使用数据库存储（audio.storage.type=database）");
+        }
+    }
+
+    @Override
+    public String put(byte[] data) {
+        String key = sha256(data);
+        if (index.containsKey(key)) {
+            return key;
+        }
+        synchronized (this) {
+            if (index.containsKey(key)) {
+                return key;
+            }
+            try {
+                rollSegmentIfFull(data.length);
+                long offset = segmentSize;
+                writeFully(segmentChannel, ByteBuffer.wrap(data), offset);
+                segmentSize += data.length;
+                appendIndex(key, offset, data.length);
+            } catch (IOException e) {
+                throw new IllegalStateException("写入本地音频存储失败", e);
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public synchronized String put(InputStream in, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("音频过大: " + length);
+        }
+        // 边写入分段文件边计算key，内容已存在时截掉本次写入的部分
+        rollSegmentIfFull(length);
+        long offset = segmentSize;
+        long position = offset;
+        MessageDigest digest = sha256Digest();
+        byte[] buffer = new byte[STREAM_BUFFER_BYTES];
+        try {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                writeFully(segmentChannel, ByteBuffer.wrap(buffer, 0, read), position);
+                position += read;
+            }
+        } catch (IOException e) {
+            segmentChannel.truncate(offset);
+            throw e;
+        }
+        String key = HexFormat.of().formatHex(digest.digest());
+        if (index.containsKey(key)) {
+            segmentChannel.truncate(offset);
+            return key;
+        }
+        segmentSize = position;
+        appendIndex(key, offset, (int) (position - offset));
+        return key;
+    }
+
+    /**
+     * 当前分段写不下时切换到新分段，调用方持有锁
+     */
+    private void rollSegmentIfFull(long length) throws IOException {
+        if (segmentSize > 0 && segmentSize + length > MAX_SEGMENT_BYTES) {
+            // 切换分段前把旧分段刷盘，之后后台线程只需刷当前分段
+            segmentChannel.force(false);
+            segmentChannel.close();
+            openSegment(segmentId + 1);
+        }
+    }
+
+    /**
+     * 数据写入分段文件后追加索引行，调用方持有锁
+     */
+    private void appendIndex(String key, long offset, int length) throws IOException {
+        String line = key + " " + segmentId + " " + offset + " " + length + "\n";
+        writeFully(indexChannel, ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)), -1);
+        dirty = true;
+        index.put(key, new Location(segmentId, offset, length));
+    }
+
+    @Override
+    public ByteBuffer read(String key) {
+        Location location = key == null ? null : index.get(key);
+        if (location == null) {
+            return null;
+        }
+        try {
+            MappedByteBuffer segment = mapSegment(location.segmentId(), location.offset() + location.length());
+            return segment.slice((int) location.offset(), location.length()).asReadOnlyBuffer();
+        } catch (IOException e) {
+            throw new IllegalStateException("读取本地音频存储失败", e);
+        }
+    }
+
+    /**
+     * 映射分段文件，已映射的区域不足时重新映射（当前写入的分段会持续增长）
+     */
+    private MappedByteBuffer mapSegment(int id, long requiredBytes) throws IOException {
+        MappedByteBuffer mapped = mappedSegments.get(id);
+        if (mapped != null && mapped.capacity() >= requiredBytes) {
+            return mapped;
+        }
+        synchronized (mappedSegments) {
+            mapped = mappedSegments.get(id);
+            if (mapped != null && mapped.capacity() >= requiredBytes) {
+                return mapped;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(id), StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mappedSegments.put(id, mapped);
+            return mapped;
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path indexPath = root.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        truncateUnterminatedLine(indexPath);
+        Map<Integer, Long> segmentSizes = new ConcurrentHashMap<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 4) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    int id = Integer.parseInt(parts[1]);
+                    long offset = Long.parseLong(parts[2]);
+                    int length = Integer.parseInt(parts[3]);
+                    long size = segmentSizes.computeIfAbsent(id, this::segmentFileSize);
+                    if (offset + length > size) {
+                        skipped++;
+                        continue;
+                    }
+                    index.put(parts[0], new Location(id, offset, length));
+                    segmentId = Math.max(segmentId, id);
+                } catch (NumberFormatException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            log.warn("本地音频存储索引中有 {} 条无效记录已忽略", skipped);
+        }
+    }
+
+    /**
+     * 截掉索引文件末尾没有换行符的行（写索引时进程崩溃），截掉的索引对应的音频视为未写入
+     */
+    private static void truncateUnterminatedLine(Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = size;
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            while (position > 0) {
+                buffer.clear();
+                channel.read(buffer, position - 1);
+                if (buffer.get(0) == '\n') {
+                    break;
+                }
+                position--;
+            }
+            if (position < size) {
+                log.warn("本地音频存储索引末尾有未写完的记录，已截掉 {} 字节", size - position);
+                channel.truncate(position);
+                channel.force(false);
+            }
+        }
+    }
+
+    private int latestSegmentId() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-") && name.endsWith(".dat"))
+                    .mapToInt(name -> Integer.parseInt(name.substring(8, name.length() - 4)))
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    private void openSegment(int id) throws IOException {
+        segmentId = id;
+        segmentChannel = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segmentSize = segmentChannel.size();
+    }
+
+    private long segmentFileSize(int id) {
+        try {
+            Path path = segmentPath(id);
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return root.resolve(String.format("segment-%06d.dat", id));
+    }
+
+    /**
+     * 写入全部数据，position小于0时在当前位置写入
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (position < 0) {
+                channel.write(buffer);
+            } else {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(sha256Digest().digest(data));
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 音频在分段文件中的位置
+     */
+    private record Location(int segmentId, long offset, int length) {
+    }
+}
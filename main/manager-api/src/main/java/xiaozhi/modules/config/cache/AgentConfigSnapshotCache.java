@@ -0,0 +1,107 @@
+package xiaozhi.modules.config.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import lombok.AllArgsConstructor;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.utils.TransactionUtils;
+
+/**
+ * 智能体配置快照缓存
+ * <p>
+ * 将 /config/agent-models 所需的智能体配置（模型、音色、插件、声纹、相关系统参数）预先编译成快照，
+ * 以智能体ID为field存入Redis哈希。只有当这些数据发生变化时才会失效，请求时只需要按客户端已实例化的模型裁剪。
+ */
+@Component
+@AllArgsConstructor
+public class AgentConfigSnapshotCache {
+    private final RedisUtils redisUtils;
+
+    /**
+     * 获取智能体配置快照
+     *
+     * @param agentId 智能体ID
+     * @return 配置快照，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> get(String agentId) {
+        if (StringUtils.isBlank(agentId)) {
+            return null;
+        }
+        return (Map<String, Object>) redisUtils.hGet(RedisKeys.getAgentConfigSnapshotKey(), agentId);
+    }
+
+    /**
+     * 批量获取智能体配置快照
+     *
+     * @param agentIds 智能体ID
+     * @return 智能体ID与配置快照，不存在的不返回
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, Object>> getAll(Collection<String> agentIds) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        if (agentIds == null || agentIds.isEmpty()) {
+            return result;
+        }
+        List<String> fields = new ArrayList<>(agentIds);
+        List<Object> values = redisUtils.hMultiGet(RedisKeys.getAgentConfigSnapshotKey(), fields);
+        for (int i = 0; i < fields.size(); i++) {
+            if (values.get(i) != null) {
+                result.put(fields.get(i), (Map<String, Object>) values.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 保存智能体配置快照
+     *
+     * @param agentId  智能体ID
+     * @param snapshot 配置快照
+     */
+    public void put(String agentId, Map<String, Object> snapshot) {
+        if (StringUtils.isBlank(agentId) || snapshot == null) {
+            return;
+        }
+        redisUtils.hSet(RedisKeys.getAgentConfigSnapshotKey(), agentId, snapshot);
+    }
+
+    /**
+     * 批量保存智能体配置快照
+     *
+     * @param snapshots 智能体ID与配置快照
+     */
+    public void putAll(Map<String, Map<String, Object>> snapshots) {
+        if (snapshots == null || snapshots.isEmpty()) {
+            return;
+        }
+        redisUtils.hMSet(RedisKeys.getAgentConfigSnapshotKey(), new HashMap<>(snapshots));
+    }
+
+    /**
+     * 使指定智能体的配置快照失效（智能体、插件、声纹变化时调用）
+     *
+     * @param agentId 智能体ID
+     */
+    public void evict(String agentId) {
+        if (StringUtils.isBlank(agentId)) {
+            return;
+        }
+        TransactionUtils.runNowAndAfterCommit(() -> redisUtils.hDel(RedisKeys.getAgentConfigSnapshotKey(), agentId));
+    }
+
+    /**
+     * 使全部智能体的配置快照失效（模型、音色、插件供应器、系统参数变化时调用）
+     */
+    public void evictAll() {
+        TransactionUtils.runNowAndAfterCommit(() -> redisUtils.delete(RedisKeys.getAgentConfigSnapshotKey()));
+    }
+}
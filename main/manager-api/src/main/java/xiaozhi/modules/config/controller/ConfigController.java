@@ -1,21 +1,40 @@
 package xiaozhi.modules.config.controller;
 
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import xiaozhi.common.utils.Result;
 import xiaozhi.common.validator.ValidatorUtils;
+import xiaozhi.modules.config.dto.AgentModelsBatchDTO;
 import xiaozhi.modules.config.dto.AgentModelsDTO;
+import xiaozhi.modules.config.dto.ServerHeartbeatDTO;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
 import xiaozhi.modules.config.service.ConfigService;
+import xiaozhi.modules.sys.service.ServerNodeService;
 
 /**
  * xiaozhi-server 配置获取
+ * <p>
+ * 响应头携带配置内容的ETag，客户端通过If-None-Match（或AgentModelsDTO.version）带回，
+ * 配置未变化时返回304且不返回配置内容
  *
  * @since 1.0.0
  */
@@ -25,20 +44,90 @@ import xiaozhi.modules.config.service.ConfigService;
 @AllArgsConstructor
 public class ConfigController {
     private final ConfigService configService;
+    private final ConfigChangePublisher configChangePublisher;
+    private final ServerNodeService serverNodeService;
 
     @PostMapping("server-base")
     @Operation(summary = "服务端获取配置接口")
-    public Result<Object> getConfig() {
+    public ResponseEntity<Result<Object>> getConfig(
+            @Parameter(name = HttpHeaders.IF_NONE_MATCH, description = "客户端已缓存的配置版本号", in = ParameterIn.HEADER) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // 先取版本号，版本未变化时无需读取和序列化配置
+        String version = configService.getConfigVersion();
+        if (isNotModified(ifNoneMatch, version)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(version).build();
+        }
+        // 版本号与配置取自同一份配置，两次读取之间配置变化也不会返回不匹配的版本号
         Object config = configService.getConfig(true);
-        return new Result<Object>().ok(config);
+        String configVersion = config instanceof Map<?, ?> map ? (String) map.get("version") : null;
+        return withVersion(ResponseEntity.ok(), configVersion).body(new Result<Object>().ok(config));
     }
 
     @PostMapping("agent-models")
     @Operation(summary = "获取智能体模型")
-    public Result<Object> getAgentModels(@Valid @RequestBody AgentModelsDTO dto) {
+    public ResponseEntity<Result<Object>> getAgentModels(
+            @Parameter(name = HttpHeaders.IF_NONE_MATCH, description = "客户端已缓存的配置版本号", in = ParameterIn.HEADER) @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @Valid @RequestBody AgentModelsDTO dto) {
+        // 效验数据
+        ValidatorUtils.validateEntity(dto);
+        Map<String, Object> models = configService.getAgentModels(dto.getMacAddress(), dto.getSelectedModule());
+        String version = (String) models.get("version");
+        String clientVersion = StringUtils.isNotBlank(dto.getVersion()) ? dto.getVersion() : ifNoneMatch;
+        if (isNotModified(clientVersion, version)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(version).build();
+        }
+        return withVersion(ResponseEntity.ok(), version).body(new Result<Object>().ok(models));
+    }
+
+    @PostMapping("agent-models/batch")
+    @Operation(summary = "批量获取智能体模型")
+    public Result<Map<String, Object>> getAgentModelsBatch(@Valid @RequestBody AgentModelsBatchDTO dto) {
         // 效验数据
         ValidatorUtils.validateEntity(dto);
-        Object models = configService.getAgentModels(dto.getMacAddress(), dto.getSelectedModule());
-        return new Result<Object>().ok(models);
+        Map<String, Object> models = configService.getAgentModelsBatch(dto.getDevices());
+        return new Result<Map<String, Object>>().ok(models);
+    }
+
+    @GetMapping(value = "change-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "订阅配置变更事件", description = "SSE长连接，推送智能体、模型、音色、参数、设备绑定的变更标识；收到reset事件时应全量刷新配置")
+    public SseEmitter subscribeChangeEvents(
+            @Parameter(name = "Last-Event-ID", description = "断线重连时已收到的最后一个事件序号", in = ParameterIn.HEADER) @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return configChangePublisher.subscribe(lastEventId);
+    }
+
+    @PostMapping("server-heartbeat")
+    @Operation(summary = "服务端上报心跳和负载", description = "建议每10秒上报一次，超过30秒未上报的节点不再分配新设备")
+    public Result<Void> heartbeat(@Valid @RequestBody ServerHeartbeatDTO dto) {
+        // 效验数据
+        ValidatorUtils.validateEntity(dto);
+        serverNodeService.heartbeat(dto);
+        return new Result<>();
+    }
+
+    private static ResponseEntity.BodyBuilder withVersion(ResponseEntity.BodyBuilder builder, String version) {
+        return StringUtils.isBlank(version) ? builder : builder.eTag(version);
+    }
+
+    /**
+     * 判断客户端带回的版本号是否与当前版本一致，兼容If-None-Match的多值、弱校验及引号格式
+     *
+     * @param clientVersion 客户端版本号
+     * @param version       当前版本号
+     * @return 是否未修改
+     */
+    private static boolean isNotModified(String clientVersion, String version) {
+        if (StringUtils.isAnyBlank(clientVersion, version)) {
+            return false;
+        }
+        for (String tag : clientVersion.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            value = StringUtils.strip(value, "\"");
+            if ("*".equals(value) || version.equals(value)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,20 @@
+package xiaozhi.modules.config.dto;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+@Schema(description = "批量获取智能体模型配置DTO")
+public class AgentModelsBatchDTO {
+
+    @Valid
+    @NotEmpty(message = "设备列表不能为空")
+    @Size(max = 500, message = "一次最多获取500台设备")
+    @Schema(description = "设备列表，每台设备带各自客户端已实例化的模型和已缓存的版本号")
+    private List<AgentModelsDTO> devices;
+}
@@ -22,4 +22,7 @@ public class AgentModelsDTO {
     @NotNull(message = "客户端已实例化的模型不能为空")
     @Schema(description = "客户端已实例化的模型")
     private Map<String, String> selectedModule;
+
+    @Schema(description = "客户端已缓存的配置版本号，与当前版本一致时返回304")
+    private String version;
 }
\ No newline at end of file
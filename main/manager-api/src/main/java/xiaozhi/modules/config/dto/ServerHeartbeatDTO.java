@@ -0,0 +1,32 @@
+package xiaozhi.modules.config.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+@Schema(description = "服务端心跳DTO")
+public class ServerHeartbeatDTO {
+
+    @NotBlank(message = "websocket地址不能为空")
+    @Schema(description = "本节点的websocket地址，需与参数server.websocket中的某一项一致")
+    private String websocketUrl;
+
+    @NotNull(message = "当前会话数不能为空")
+    @Min(value = 0, message = "当前会话数不能小于0")
+    @Schema(description = "当前活跃会话数")
+    private Integer activeSessions;
+
+    @Min(value = 0, message = "最大会话数不能小于0")
+    @Schema(description = "最大会话数，为空或0表示不限制")
+    private Integer maxSessions;
+
+    @DecimalMin(value = "0", message = "CPU使用率不能小于0")
+    @DecimalMax(value = "100", message = "CPU使用率不能大于100")
+    @Schema(description = "CPU使用率（0-100）")
+    private Double cpuUsage;
+}
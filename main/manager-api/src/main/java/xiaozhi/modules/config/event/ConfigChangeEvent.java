@@ -0,0 +1,66 @@
+package xiaozhi.modules.config.event;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 配置变更事件
+ * <p>
+ * 只携带变更对象的标识，不携带配置内容，服务端收到后按标识重新拉取对应的配置
+ */
+@Data
+@NoArgsConstructor
+@Schema(description = "配置变更事件")
+public class ConfigChangeEvent {
+    /**
+     * 智能体配置变更，id为智能体ID
+     */
+    public static final String TYPE_AGENT = "agent";
+    /**
+     * 模型配置变更，id为模型ID
+     */
+    public static final String TYPE_MODEL = "model";
+    /**
+     * 音色变更，id为音色ID
+     */
+    public static final String TYPE_TIMBRE = "timbre";
+    /**
+     * 系统参数变更，id为参数编码
+     */
+    public static final String TYPE_PARAM = "param";
+    /**
+     * 设备绑定关系变更，id为MAC地址
+     */
+    public static final String TYPE_DEVICE = "device";
+
+    public static final String ACTION_UPDATE = "update";
+    public static final String ACTION_DELETE = "delete";
+    public static final String ACTION_BIND = "bind";
+    public static final String ACTION_UNBIND = "unbind";
+
+    @Schema(description = "事件序号，全局递增，断线重连时通过Last-Event-ID带回")
+    private Long seq;
+
+    @Schema(description = "变更类型：agent/model/timbre/param/device")
+    private String type;
+
+    @Schema(description = "变更动作：update/delete/bind/unbind")
+    private String action;
+
+    @Schema(description = "变更对象标识：智能体ID/模型ID/音色ID/参数编码/MAC地址")
+    private String id;
+
+    @Schema(description = "设备事件关联的智能体ID")
+    private String agentId;
+
+    @Schema(description = "事件时间戳（毫秒）")
+    private Long timestamp;
+
+    public ConfigChangeEvent(String type, String action, String id, String agentId) {
+        this.type = type;
+        this.action = action;
+        this.id = id;
+        this.agentId = agentId;
+    }
+}
@@ -0,0 +1,334 @@
+package xiaozhi.modules.config.event;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.utils.TransactionUtils;
+
+/**
+ * 配置变更事件发布
+ * <p>
+ * 智能体、模型、音色、系统参数、设备绑定关系变化时，在事务提交后分配全局递增的事件序号并通过Redis频道广播到所有节点，
+ * 各节点再推送给通过 /config/change-events 订阅的xiaozhi-server（SSE长连接）。服务端只需按事件中的标识刷新对应配置，不必轮询。
+ * <p>
+ * 每个节点保留最近的事件用于断线重连补发：服务端重连时带回Last-Event-ID，能补齐时逐条补发，
+ * 无法补齐（事件已被淘汰或序号不连续）时发送reset事件，服务端应全量刷新配置。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConfigChangePublisher implements MessageListener {
+    /**
+     * SSE变更事件名
+     */
+    public static final String EVENT_CHANGE = "config_change";
+    /**
+     * SSE全量刷新事件名
+     */
+    public static final String EVENT_RESET = "reset";
+    /**
+     * 保留用于补发的最近事件数
+     */
+    private static final int REPLAY_SIZE = 1000;
+    /**
+     * 订阅连接超时时间（毫秒），超时后服务端带Last-Event-ID重连
+     */
+    private static final long EMITTER_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    /**
+     * 心跳间隔（秒），用于保持连接并及时清理已断开的订阅
+     */
+    private static final long HEARTBEAT_SECONDS = 25;
+
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 最近的事件，按序号升序（不同节点发布的事件到达顺序可能与序号不一致，插入时按序号排序），
+     * 与订阅列表共用同一把锁，保证补发与实时推送不乱序
+     */
+    private final Deque<ConfigChangeEvent> recentEvents = new ArrayDeque<>();
+    private final Set<SseEmitter> emitters = ConcurrentHashMap.newKeySet();
+    /**
+     * 本进程内的变更监听，所有节点都会收到事件，用于失效各节点的本地缓存
+     */
+    private final List<Consumer<ConfigChangeEvent>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this,
+                new ChannelTopic(RedisKeys.getConfigChangeChannel()));
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "config-change-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        for (SseEmitter emitter : emitters) {
+            emitter.complete();
+        }
+        emitters.clear();
+    }
+
+    /**
+     * 智能体配置变更
+     *
+     * @param agentId 智能体ID
+     */
+    public void agentChanged(String agentId) {
+        publish(new ConfigChangeEvent(ConfigChangeEvent.TYPE_AGENT, ConfigChangeEvent.ACTION_UPDATE, agentId, null));
+    }
+
+    /**
+     * 模型配置变更
+     *
+     * @param modelId 模型ID
+     */
+    public void modelChanged(String modelId) {
+        publish(new ConfigChangeEvent(ConfigChangeEvent.TYPE_MODEL, ConfigChangeEvent.ACTION_UPDATE, modelId, null));
+    }
+
+    /**
+     * 音色变更
+     *
+     * @param timbreId 音色ID
+     */
+    public void timbreChanged(String timbreId) {
+        publish(new ConfigChangeEvent(ConfigChangeEvent.TYPE_TIMBRE, ConfigChangeEvent.ACTION_UPDATE, timbreId,
+                null));
+    }
+
+    /**
+     * 系统参数变更
+     *
+     * @param paramCode 参数编码
+     * @param action    变更动作
+     */
+    public void paramChanged(String paramCode, String action) {
+        publish(new ConfigChangeEvent(ConfigChangeEvent.TYPE_PARAM, action, paramCode, null));
+    }
+
+    /**
+     * 设备绑定关系变更
+     *
+     * @param macAddress MAC地址
+     * @param agentId    绑定或解绑的智能体ID
+     * @param action     bind/unbind
+     */
+    public void deviceChanged(String macAddress, String agentId, String action) {
+        publish(new ConfigChangeEvent(ConfigChangeEvent.TYPE_DEVICE, action, macAddress, agentId));
+    }
+
+    /**
+     * 注册本进程内的变更监听，在推送线程中回调，回调中不应执行耗时操作
+     *
+     * @param listener 监听
+     */
+    public void addListener(Consumer<ConfigChangeEvent> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 订阅配置变更事件
+     *
+     * @param lastEventId 服务端已收到的最后一个事件序号，首次订阅为空
+     * @return SSE连接
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+
+        Long lastSeq = parseSeq(lastEventId);
+        try {
+            synchronized (recentEvents) {
+                if (lastSeq != null) {
+                    replay(emitter, lastSeq);
+                }
+                emitters.add(emitter);
+            }
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * 补发lastSeq之后的事件，调用方需持有recentEvents的锁。
+     * 只有 lastSeq+1 到当前序号的事件全部连续保留在本节点时才逐条补发，
+     * 中间或末尾缺少任一序号（事件已被淘汰、发布失败或尚未到达）都发送reset
+     */
+    void replay(SseEmitter emitter, long lastSeq) throws IOException {
+        long currentSeq = currentSeq();
+        List<ConfigChangeEvent> missed = new ArrayList<>();
+        long expectedSeq = lastSeq + 1;
+        boolean gap = lastSeq > currentSeq;
+        for (ConfigChangeEvent event : recentEvents) {
+            if (gap || event.getSeq() > currentSeq) {
+                break;
+            }
+            if (event.getSeq() < expectedSeq) {
+                continue;
+            }
+            if (event.getSeq() != expectedSeq) {
+                gap = true;
+                break;
+            }
+            missed.add(event);
+            expectedSeq++;
+        }
+        if (gap || expectedSeq != currentSeq + 1) {
+            emitter.send(SseEmitter.event().id(String.valueOf(currentSeq)).name(EVENT_RESET)
+                    .data(Map.of("seq", currentSeq)));
+            return;
+        }
+        for (ConfigChangeEvent event : missed) {
+            emitter.send(toSse(event));
+        }
+    }
+
+    /**
+     * 按序号插入最近事件，重复的事件忽略，调用方需持有recentEvents的锁
+     *
+     * @return 是否为新事件
+     */
+    boolean addRecent(ConfigChangeEvent event) {
+        long seq = event.getSeq();
+        Iterator<ConfigChangeEvent> it = recentEvents.descendingIterator();
+        List<ConfigChangeEvent> later = new ArrayList<>();
+        while (it.hasNext()) {
+            ConfigChangeEvent recent = it.next();
+            if (recent.getSeq() == seq) {
+                return false;
+            }
+            if (recent.getSeq() < seq) {
+                break;
+            }
+            later.add(recent);
+        }
+        // 乱序到达的事件通常只落后几个序号，从尾部取出较新的事件，插入后再放回
+        for (int i = 0; i < later.size(); i++) {
+            recentEvents.pollLast();
+        }
+        recentEvents.addLast(event);
+        for (int i = later.size() - 1; i >= 0; i--) {
+            recentEvents.addLast(later.get(i));
+        }
+        while (recentEvents.size() > REPLAY_SIZE) {
+            recentEvents.pollFirst();
+        }
+        return true;
+    }
+
+    private void publish(ConfigChangeEvent event) {
+        if (StringUtils.isBlank(event.getId())) {
+            return;
+        }
+        // 事务回滚时不通知，避免服务端拉到旧配置
+        TransactionUtils.runAfterCommit(() -> {
+            try {
+                event.setSeq(redisUtils.increment(RedisKeys.getConfigChangeSeqKey()));
+                event.setTimestamp(System.currentTimeMillis());
+                redisUtils.publish(RedisKeys.getConfigChangeChannel(), event);
+            } catch (Exception e) {
+                // 通知失败时服务端依靠配置版本号校验兜底
+                log.error("发布配置变更事件失败: {}:{}", event.getType(), event.getId(), e);
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisUtils.deserializeMessage(message.getBody());
+        if (!(body instanceof ConfigChangeEvent event) || event.getSeq() == null) {
+            return;
+        }
+        // 推送在独立线程中进行，避免慢连接阻塞Redis监听线程
+        executor.execute(() -> {
+            for (Consumer<ConfigChangeEvent> listener : listeners) {
+                try {
+                    listener.accept(event);
+                } catch (Exception e) {
+                    log.error("配置变更监听处理失败: {}:{}", event.getType(), event.getId(), e);
+                }
+            }
+            List<SseEmitter> targets;
+            synchronized (recentEvents) {
+                if (!addRecent(event)) {
+                    return;
+                }
+                targets = new ArrayList<>(emitters);
+            }
+            for (SseEmitter emitter : targets) {
+                send(emitter, toSse(event));
+            }
+        });
+    }
+
+    private void heartbeat() {
+        for (SseEmitter emitter : emitters) {
+            send(emitter, SseEmitter.event().comment("ping"));
+        }
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            emitters.remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toSse(ConfigChangeEvent event) {
+        return SseEmitter.event().id(String.valueOf(event.getSeq())).name(EVENT_CHANGE).data(event);
+    }
+
+    private long currentSeq() {
+        Object value = redisUtils.get(RedisKeys.getConfigChangeSeqKey());
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static Long parseSeq(String lastEventId) {
+        if (StringUtils.isBlank(lastEventId)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,16 +1,26 @@
 package xiaozhi.modules.config.service;
 
+import java.util.List;
 import java.util.Map;
 
+import xiaozhi.modules.config.dto.AgentModelsDTO;
+
 public interface ConfigService {
     /**
      * 获取服务器配置
      * 
      * @param isCache 是否缓存
-     * @return 配置信息
+     * @return 配置信息，version为配置内容的版本号
      */
     Object getConfig(Boolean isCache);
 
+    /**
+     * 获取服务器配置的版本号
+     * 
+     * @return 版本号（配置内容的哈希值）
+     */
+    String getConfigVersion();
+
     /**
      * 获取智能体模型配置
      * 
@@ -19,4 +29,15 @@ public interface ConfigService {
      * @return 模型配置信息
      */
     Map<String, Object> getAgentModels(String macAddress, Map<String, String> selectedModule);
+
+    /**
+     * 批量获取智能体模型配置
+     * <p>
+     * 返回 modules（按内容去重的模型配置块）、configs（裁剪后的配置，模型配置块以哈希引用modules）、
+     * devices（每台设备对应的配置标识和版本号，版本未变化时为not_modified，出错时为code和msg）
+     * 
+     * @param requests 设备列表
+     * @return 模型配置信息
+     */
+    Map<String, Object> getAgentModelsBatch(List<AgentModelsDTO> requests);
 }
\ No newline at end of file
@@ -1,10 +1,16 @@
 package xiaozhi.modules.config.service.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
@@ -18,47 +24,69 @@ import xiaozhi.common.exception.RenException;
 import xiaozhi.common.redis.RedisKeys;
 import xiaozhi.common.redis.RedisUtils;
 import xiaozhi.common.utils.ConvertUtils;
+import xiaozhi.common.utils.HashEncryptionUtil;
 import xiaozhi.common.utils.JsonUtils;
+import xiaozhi.modules.agent.dao.AgentDao;
+import xiaozhi.modules.agent.dao.AgentPluginMappingMapper;
 import xiaozhi.modules.agent.dao.AgentVoicePrintDao;
 import xiaozhi.modules.agent.entity.AgentEntity;
 import xiaozhi.modules.agent.entity.AgentPluginMapping;
 import xiaozhi.modules.agent.entity.AgentTemplateEntity;
 import xiaozhi.modules.agent.entity.AgentVoicePrintEntity;
 import xiaozhi.modules.agent.service.AgentMcpAccessPointService;
-import xiaozhi.modules.agent.service.AgentPluginMappingService;
-import xiaozhi.modules.agent.service.AgentService;
 import xiaozhi.modules.agent.service.AgentTemplateService;
 import xiaozhi.modules.agent.vo.AgentVoicePrintVO;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
+import xiaozhi.modules.config.dto.AgentModelsDTO;
 import xiaozhi.modules.config.service.ConfigService;
 import xiaozhi.modules.device.entity.DeviceEntity;
 import xiaozhi.modules.device.service.DeviceService;
 import xiaozhi.modules.model.entity.ModelConfigEntity;
 import xiaozhi.modules.model.service.ModelConfigService;
-import xiaozhi.modules.sys.dto.SysParamsDTO;
+import xiaozhi.modules.sys.cache.SysParam;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
 import xiaozhi.modules.sys.service.SysParamsService;
-import xiaozhi.modules.timbre.service.TimbreService;
-import xiaozhi.modules.timbre.vo.TimbreDetailsVO;
+import xiaozhi.modules.timbre.dao.TimbreDao;
+import xiaozhi.modules.timbre.entity.TimbreEntity;
 
 @Service
 @AllArgsConstructor
 public class ConfigServiceImpl implements ConfigService {
     private final SysParamsService sysParamsService;
+    private final SysParamsSnapshot sysParamsSnapshot;
     private final DeviceService deviceService;
     private final ModelConfigService modelConfigService;
-    private final AgentService agentService;
+    private final AgentDao agentDao;
+    private final AgentPluginMappingMapper agentPluginMappingMapper;
+    private final TimbreDao timbreDao;
     private final AgentTemplateService agentTemplateService;
     private final RedisUtils redisUtils;
-    private final TimbreService timbreService;
-    private final AgentPluginMappingService agentPluginMappingService;
     private final AgentMcpAccessPointService agentMcpAccessPointService;
     private final AgentVoicePrintDao agentVoicePrintDao;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
+
+    /**
+     * 非系统内部参数的param_type，只有这类参数下发给服务端
+     */
+    private static final Integer PARAM_TYPE_PUBLIC = 1;
+
+    /**
+     * 客户端已实例化后可复用、无需重复下发的模型类型
+     */
+    private static final String[] CLIENT_REUSABLE_MODEL_TYPES = { "VAD", "ASR" };
+
+    /**
+     * 配置中的模型类型
+     */
+    private static final String[] MODULE_TYPES = { "VAD", "ASR", "TTS", "Memory", "Intent", "LLM", "VLLM" };
 
     @Override
     public Object getConfig(Boolean isCache) {
         if (isCache) {
             // 先从Redis获取配置
             Object cachedConfig = redisUtils.get(RedisKeys.getServerConfigKey());
-            if (cachedConfig != null) {
+            // 不含版本号的是旧格式缓存，重新构建
+            if (cachedConfig instanceof Map<?, ?> map && map.containsKey("version")) {
                 return cachedConfig;
             }
         }
@@ -89,14 +117,28 @@ public class ConfigServiceImpl implements ConfigService {
                 null,
                 null,
                 result,
-                isCache);
+                id -> modelConfigService.getModelById(id, isCache));
 
-        // 将配置存入Redis
+        // 版本号随配置一起存入，取配置时版本号与内容始终一致；单独存一份供条件获取时只读版本号
+        String version = buildVersion(result);
+        result.put("version", version);
         redisUtils.set(RedisKeys.getServerConfigKey(), result);
+        redisUtils.set(RedisKeys.getServerConfigVersionKey(), version);
 
         return result;
     }
 
+    @Override
+    public String getConfigVersion() {
+        String version = (String) redisUtils.get(RedisKeys.getServerConfigVersionKey());
+        if (StringUtils.isBlank(version)) {
+            // 版本号缺失时重新构建配置，构建时会同时写入版本号
+            getConfig(false);
+            version = (String) redisUtils.get(RedisKeys.getServerConfigVersionKey());
+        }
+        return version;
+    }
+
     @Override
     public Map<String, Object> getAgentModels(String macAddress, Map<String, String> selectedModule) {
         // 根据MAC地址查找设备
@@ -110,16 +152,215 @@ public class ConfigServiceImpl implements ConfigService {
             throw new RenException(ErrorCode.OTA_DEVICE_NOT_FOUND, "not found device");
         }
 
-        // 获取智能体信息
-        AgentEntity agent = agentService.getAgentById(device.getAgentId());
-        if (agent == null) {
-            throw new RenException("智能体未找到");
+        // 优先使用预编译的智能体配置快照，不存在时再构建
+        Map<String, Object> snapshot = agentConfigSnapshotCache.get(device.getAgentId());
+        if (snapshot == null) {
+            snapshot = buildAgentConfigSnapshots(List.of(device.getAgentId())).get(device.getAgentId());
+            if (snapshot == null) {
+                throw new RenException("智能体未找到");
+            }
+            agentConfigSnapshotCache.put(device.getAgentId(), snapshot);
+        }
+
+        return pruneSelectedModule(snapshot, selectedModule);
+    }
+
+    @Override
+    public Map<String, Object> getAgentModelsBatch(List<AgentModelsDTO> requests) {
+        // 一次查出全部设备
+        List<String> macAddresses = requests.stream().map(AgentModelsDTO::getMacAddress).distinct().toList();
+        Map<String, DeviceEntity> devices = deviceService.getDevicesByMacAddresses(macAddresses);
+
+        // 一次取出全部智能体配置快照，缺失的一起构建
+        Set<String> agentIds = devices.values().stream()
+                .map(DeviceEntity::getAgentId)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet());
+        Map<String, Map<String, Object>> snapshots = agentConfigSnapshotCache.getAll(agentIds);
+        List<String> missingAgentIds = agentIds.stream().filter(id -> !snapshots.containsKey(id)).toList();
+        if (!missingAgentIds.isEmpty()) {
+            Map<String, Map<String, Object>> built = buildAgentConfigSnapshots(missingAgentIds);
+            agentConfigSnapshotCache.putAll(built);
+            snapshots.putAll(built);
+        }
+
+        // 按设备裁剪，相同的配置、相同的模型配置块只返回一份
+        Map<String, Object> modules = new HashMap<>();
+        Map<String, Object> configs = new HashMap<>();
+        Map<String, Object> deviceResults = new LinkedHashMap<>();
+        for (AgentModelsDTO request : requests) {
+            String macAddress = request.getMacAddress();
+            DeviceEntity device = devices.get(macAddress);
+            Map<String, Object> snapshot = device == null ? null : snapshots.get(device.getAgentId());
+            if (snapshot == null) {
+                deviceResults.put(macAddress, buildDeviceError(macAddress, device));
+                continue;
+            }
+
+            // 与单台获取一致，按裁剪后配置的版本号判断是否变化
+            Map<String, String> selectedModule = request.getSelectedModule() == null ? new HashMap<>()
+                    : request.getSelectedModule();
+            Map<String, Object> deviceResult = new HashMap<>();
+            String version = buildPrunedVersion(snapshot, selectedModule);
+            deviceResult.put("version", version);
+            if (StringUtils.isNotBlank(version) && version.equals(request.getVersion())) {
+                deviceResult.put("not_modified", true);
+            } else {
+                Map<String, Object> config = pruneSelectedModule(snapshot, selectedModule);
+                String configKey = buildConfigKey(device.getAgentId(), snapshot, config);
+                if (!configs.containsKey(configKey)) {
+                    configs.put(configKey, referenceModules(config, modules));
+                }
+                deviceResult.put("config", configKey);
+            }
+            deviceResults.put(macAddress, deviceResult);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("modules", modules);
+        result.put("configs", configs);
+        result.put("devices", deviceResults);
+        return result;
+    }
+
+    /**
+     * 构建批量获取时单台设备的错误信息，错误码与单台获取时一致
+     */
+    private Map<String, Object> buildDeviceError(String macAddress, DeviceEntity device) {
+        RenException error;
+        if (device != null) {
+            error = new RenException("智能体未找到");
+        } else {
+            // 如果设备，去redis里看看有没有需要连接的设备
+            String cachedCode = deviceService.geCodeByDeviceId(macAddress);
+            error = StringUtils.isNotBlank(cachedCode) ? new RenException(ErrorCode.OTA_DEVICE_NEED_BIND, cachedCode)
+                    : new RenException(ErrorCode.OTA_DEVICE_NOT_FOUND, "not found device");
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("code", error.getCode());
+        result.put("msg", error.getMsg());
+        return result;
+    }
+
+    /**
+     * 裁剪后的配置标识：智能体ID，加上被裁剪掉的模型类型
+     */
+    private String buildConfigKey(String agentId, Map<String, Object> snapshot, Map<String, Object> config) {
+        StringBuilder key = new StringBuilder(agentId);
+        for (String modelType : CLIENT_REUSABLE_MODEL_TYPES) {
+            if (snapshot.containsKey(modelType) && !config.containsKey(modelType)) {
+                key.append('-').append(modelType);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 把配置中的模型配置块放入公共的modules，配置中只保留其内容哈希
+     *
+     * @param config  裁剪后的配置，会被修改
+     * @param modules 按内容哈希去重的模型配置块
+     * @return 配置
+     */
+    private Map<String, Object> referenceModules(Map<String, Object> config, Map<String, Object> modules) {
+        for (String modelType : MODULE_TYPES) {
+            Object block = config.get(modelType);
+            if (block == null) {
+                continue;
+            }
+            String hash = HashEncryptionUtil.Md5hexDigest(JsonUtils.toJsonString(block));
+            modules.putIfAbsent(hash, block);
+            config.put(modelType, hash);
+        }
+        return config;
+    }
+
+    /**
+     * 批量构建智能体配置快照，包含智能体全部模型配置，不区分客户端已实例化的模型
+     * <p>
+     * 智能体、音色、插件、声纹各用一次IN查询加载；模型通过模型配置缓存批量获取，多个智能体共用的模型只查询一次。
+     *
+     * @param agentIds 智能体ID
+     * @return 智能体ID与配置快照，不存在的智能体不返回
+     */
+    private Map<String, Map<String, Object>> buildAgentConfigSnapshots(Collection<String> agentIds) {
+        Map<String, Map<String, Object>> snapshots = new HashMap<>();
+        List<AgentEntity> agents = agentDao.selectBatchIds(agentIds);
+        if (agents.isEmpty()) {
+            return snapshots;
+        }
+
+        // 音色
+        Set<String> timbreIds = agents.stream().map(AgentEntity::getTtsVoiceId)
+                .filter(StringUtils::isNotBlank).collect(Collectors.toSet());
+        Map<String, TimbreEntity> timbres = timbreIds.isEmpty() ? new HashMap<>()
+                : timbreDao.selectBatchIds(timbreIds).stream()
+                        .collect(Collectors.toMap(TimbreEntity::getId, timbre -> timbre));
+
+        // 先批量加载全部智能体的模型，再加载意图识别、记忆引用的LLM，写入模型配置缓存
+        Map<String, ModelConfigEntity> models = modelConfigService.getModelsByIds(agents.stream()
+                .flatMap(agent -> getAgentModelIds(agent, Map.of()).stream())
+                .collect(Collectors.toSet()));
+        models.putAll(modelConfigService.getModelsByIds(agents.stream()
+                .flatMap(agent -> getAgentModelIds(agent, models).stream())
+                .filter(id -> !models.containsKey(id))
+                .collect(Collectors.toSet())));
+
+        // 插件和声纹
+        List<String> ids = agents.stream().map(AgentEntity::getId).toList();
+        Map<String, List<AgentPluginMapping>> pluginMappings = agentPluginMappingMapper.selectPluginsByAgentIds(ids)
+                .stream().collect(Collectors.groupingBy(AgentPluginMapping::getAgentId));
+        Map<String, List<AgentVoicePrintVO>> voiceprints = getVoiceprintsByAgentIds(ids);
+
+        for (AgentEntity agent : agents) {
+            // 配置快照会改写TTS、意图模型的配置，每个智能体使用各自的副本；模型均已在本地缓存，不再查询
+            Map<String, ModelConfigEntity> agentModels = modelConfigService
+                    .getModelsByIds(getAgentModelIds(agent, models));
+            Function<String, ModelConfigEntity> modelLoader = agentModels::get;
+            Map<String, Object> snapshot = buildAgentConfigSnapshot(agent,
+                    timbres.get(agent.getTtsVoiceId()),
+                    pluginMappings.getOrDefault(agent.getId(), List.of()),
+                    voiceprints.getOrDefault(agent.getId(), List.of()),
+                    modelLoader);
+            snapshots.put(agent.getId(), snapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * 智能体用到的模型ID，包括意图识别、记忆模型引用的LLM
+     *
+     * @param agent  智能体
+     * @param models 已加载的模型配置，用于查找引用的LLM
+     * @return 模型ID
+     */
+    private Set<String> getAgentModelIds(AgentEntity agent, Map<String, ModelConfigEntity> models) {
+        Set<String> ids = Stream.of(agent.getVadModelId(), agent.getAsrModelId(), agent.getLlmModelId(),
+                agent.getVllmModelId(), agent.getTtsModelId(), agent.getMemModelId(), agent.getIntentModelId())
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet());
+        for (String id : List.of(StringUtils.defaultString(agent.getIntentModelId()),
+                StringUtils.defaultString(agent.getMemModelId()))) {
+            ModelConfigEntity model = models.get(id);
+            if (model != null && model.getConfigJson() != null
+                    && model.getConfigJson().get("llm") instanceof String llm && StringUtils.isNotBlank(llm)) {
+                ids.add(llm);
+            }
         }
+        return ids;
+    }
+
+    /**
+     * 构建单个智能体的配置快照，所需数据已预先加载
+     */
+    private Map<String, Object> buildAgentConfigSnapshot(AgentEntity agent, TimbreEntity timbre,
+            List<AgentPluginMapping> pluginMappings, List<AgentVoicePrintVO> voiceprints,
+            Function<String, ModelConfigEntity> modelLoader) {
+        String agentId = agent.getId();
         // 获取音色信息
         String voice = null;
         String referenceAudio = null;
         String referenceText = null;
-        TimbreDetailsVO timbre = timbreService.get(agent.getTtsVoiceId());
         if (timbre != null) {
             voice = timbre.getTtsVoice();
             referenceAudio = timbre.getReferenceAudio();
@@ -141,20 +382,9 @@ public class ConfigServiceImpl implements ConfigService {
             chatHistoryConf = Constant.ChatHistoryConfEnum.RECORD_TEXT_AUDIO.getCode();
         }
         result.put("chat_history_conf", chatHistoryConf);
-        // 如果客户端已实例化模型，则不返回
-        String alreadySelectedVadModelId = (String) selectedModule.get("VAD");
-        if (alreadySelectedVadModelId != null && alreadySelectedVadModelId.equals(agent.getVadModelId())) {
-            agent.setVadModelId(null);
-        }
-        String alreadySelectedAsrModelId = (String) selectedModule.get("ASR");
-        if (alreadySelectedAsrModelId != null && alreadySelectedAsrModelId.equals(agent.getAsrModelId())) {
-            agent.setAsrModelId(null);
-        }
 
         // 添加函数调用参数信息
         if (!Objects.equals(agent.getIntentModelId(), "Intent_nointent")) {
-            String agentId = agent.getId();
-            List<AgentPluginMapping> pluginMappings = agentPluginMappingService.agentPluginParamsByAgentId(agentId);
             if (pluginMappings != null && !pluginMappings.isEmpty()) {
                 Map<String, Object> pluginParams = new HashMap<>();
                 for (AgentPluginMapping pluginMapping : pluginMappings) {
@@ -164,13 +394,13 @@ public class ConfigServiceImpl implements ConfigService {
             }
         }
         // 获取mcp接入点地址
-        String mcpEndpoint = agentMcpAccessPointService.getAgentMcpAccessAddress(agent.getId());
+        String mcpEndpoint = agentMcpAccessPointService.getAgentMcpAccessAddress(agentId);
         if (StringUtils.isNotBlank(mcpEndpoint) && mcpEndpoint.startsWith("ws")) {
             mcpEndpoint = mcpEndpoint.replace("/mcp/", "/call/");
             result.put("mcp_endpoint", mcpEndpoint);
         }
         // 获取声纹信息
-        buildVoiceprintConfig(agent.getId(), result);
+        buildVoiceprintConfig(voiceprints, result);
 
         // 构建模块配置
         buildModuleConfig(
@@ -188,11 +418,85 @@ public class ConfigServiceImpl implements ConfigService {
                 agent.getMemModelId(),
                 agent.getIntentModelId(),
                 result,
-                true);
+                modelLoader);
 
+        // 记录快照内容版本号，客户端可据此做条件获取
+        result.put("version", buildVersion(result));
         return result;
     }
 
+    /**
+     * 计算配置内容的版本号
+     *
+     * @param config 配置信息
+     * @return 配置内容的MD5值
+     */
+    private String buildVersion(Map<String, Object> config) {
+        return HashEncryptionUtil.Md5hexDigest(JsonUtils.toJsonString(config));
+    }
+
+    /**
+     * 按客户端已实例化的模型裁剪配置快照，快照本身不做修改
+     *
+     * @param snapshot       智能体配置快照
+     * @param selectedModule 客户端已实例化的模型
+     * @return 返回给客户端的配置，版本号为裁剪后配置的版本号
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> pruneSelectedModule(Map<String, Object> snapshot, Map<String, String> selectedModule) {
+        Map<String, Object> result = new HashMap<>(snapshot);
+        Map<String, String> snapshotSelected = (Map<String, String>) snapshot.get("selected_module");
+        Map<String, String> resultSelected = snapshotSelected == null ? new HashMap<>()
+                : new HashMap<>(snapshotSelected);
+
+        // 如果客户端已实例化模型，则不返回
+        for (String modelType : CLIENT_REUSABLE_MODEL_TYPES) {
+            if (isClientSelected(snapshot, selectedModule, modelType)) {
+                result.remove(modelType);
+                resultSelected.remove(modelType);
+            }
+        }
+        result.put("selected_module", resultSelected);
+        result.put("version", buildPrunedVersion(snapshot, selectedModule));
+        return result;
+    }
+
+    /**
+     * 裁剪后配置的版本号：快照版本号，加上被裁剪掉的模型类型
+     * <p>
+     * 裁剪结果只由快照和被裁剪的模型类型决定，无需序列化裁剪后的配置即可得到其版本号；
+     * 同一快照裁剪方式不同时版本号不同，客户端带回的版本号不会与另一种裁剪结果相混
+     *
+     * @param snapshot       智能体配置快照
+     * @param selectedModule 客户端已实例化的模型
+     * @return 版本号，快照没有版本号时为null
+     */
+    private String buildPrunedVersion(Map<String, Object> snapshot, Map<String, String> selectedModule) {
+        String version = (String) snapshot.get("version");
+        if (StringUtils.isBlank(version)) {
+            return null;
+        }
+        StringBuilder prunedVersion = new StringBuilder(version);
+        for (String modelType : CLIENT_REUSABLE_MODEL_TYPES) {
+            if (isClientSelected(snapshot, selectedModule, modelType)) {
+                prunedVersion.append('-').append(modelType);
+            }
+        }
+        return prunedVersion.toString();
+    }
+
+    /**
+     * 客户端已实例化的模型是否就是快照中该类型的模型
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isClientSelected(Map<String, Object> snapshot, Map<String, String> selectedModule,
+            String modelType) {
+        Map<String, String> snapshotSelected = (Map<String, String>) snapshot.get("selected_module");
+        String alreadySelectedModelId = selectedModule.get(modelType);
+        return alreadySelectedModelId != null && snapshotSelected != null
+                && alreadySelectedModelId.equals(snapshotSelected.get(modelType));
+    }
+
     /**
      * 构建配置信息
      * 
@@ -201,16 +505,27 @@ public class ConfigServiceImpl implements ConfigService {
      */
     private Object buildConfig(Map<String, Object> config) {
 
-        // 查询所有系统参数
-        List<SysParamsDTO> paramsList = sysParamsService.list(new HashMap<>());
+        // 查询所有系统参数，参数值已在变化时按valueType解析
+        Collection<SysParam> params = sysParamsSnapshot.getAll();
+        if (params == null) {
+            // 快照不可用时查库，list只返回非系统内部参数
+            params = sysParamsService.list(new HashMap<>()).stream()
+                    .map(dto -> new SysParam(dto.getParamCode(), dto.getParamValue(), dto.getValueType(),
+                            PARAM_TYPE_PUBLIC))
+                    .toList();
+        }
 
-        for (SysParamsDTO param : paramsList) {
-            String[] keys = param.getParamCode().split("\\.");
+        for (SysParam param : params) {
+            // 仅下发非系统内部参数
+            if (!PARAM_TYPE_PUBLIC.equals(param.getParamType())) {
+                continue;
+            }
+            List<String> keys = param.getPath();
             Map<String, Object> current = config;
 
             // 遍历除最后一个key之外的所有key
-            for (int i = 0; i < keys.length - 1; i++) {
-                String key = keys[i];
+            for (int i = 0; i < keys.size() - 1; i++) {
+                String key = keys.get(i);
                 if (!current.containsKey(key)) {
                     current.put(key, new HashMap<String, Object>());
                 }
@@ -218,47 +533,7 @@ public class ConfigServiceImpl implements ConfigService {
             }
 
             // 处理最后一个key
-            String lastKey = keys[keys.length - 1];
-            String value = param.getParamValue();
-
-            // 根据valueType转换值
-            switch (param.getValueType().toLowerCase()) {
-                case "number":
-                    try {
-                        double doubleValue = Double.parseDouble(value);
-                        // 如果数值是整数形式，则转换为Integer
-                        if (doubleValue == (int) doubleValue) {
-                            current.put(lastKey, (int) doubleValue);
-                        } else {
-                            current.put(lastKey, doubleValue);
-                        }
-                    } catch (NumberFormatException e) {
-                        current.put(lastKey, value);
-                    }
-                    break;
-                case "boolean":
-                    current.put(lastKey, Boolean.parseBoolean(value));
-                    break;
-                case "array":
-                    // 将分号分隔的字符串转换为数字数组
-                    List<String> list = new ArrayList<>();
-                    for (String num : value.split(";")) {
-                        if (StringUtils.isNotBlank(num)) {
-                            list.add(num.trim());
-                        }
-                    }
-                    current.put(lastKey, list);
-                    break;
-                case "json":
-                    try {
-                        current.put(lastKey, JsonUtils.parseObject(value, Object.class));
-                    } catch (Exception e) {
-                        current.put(lastKey, value);
-                    }
-                    break;
-                default:
-                    current.put(lastKey, value);
-            }
+            current.put(keys.get(keys.size() - 1), param.getConfigValue());
         }
 
         return config;
@@ -267,10 +542,10 @@ public class ConfigServiceImpl implements ConfigService {
     /**
      * 构建声纹配置信息
      * 
-     * @param agentId 智能体ID
-     * @param result  结果Map
+     * @param voiceprints 智能体关联的声纹信息
+     * @param result      结果Map
      */
-    private void buildVoiceprintConfig(String agentId, Map<String, Object> result) {
+    private void buildVoiceprintConfig(List<AgentVoicePrintVO> voiceprints, Map<String, Object> result) {
         try {
             // 获取声纹接口地址
             String voiceprintUrl = sysParamsService.getValue("server.voice_print", true);
@@ -278,8 +553,6 @@ public class ConfigServiceImpl implements ConfigService {
                 return;
             }
 
-            // 获取智能体关联的声纹信息（不需要用户权限验证）
-            List<AgentVoicePrintVO> voiceprints = getVoiceprintsByAgentId(agentId);
             if (voiceprints == null || voiceprints.isEmpty()) {
                 return;
             }
@@ -299,19 +572,9 @@ public class ConfigServiceImpl implements ConfigService {
             voiceprintConfig.put("url", voiceprintUrl);
             voiceprintConfig.put("speakers", speakers);
             
-            // 获取声纹识别相似度阈值，默认0.4
-            String thresholdStr = sysParamsService.getValue("server.voiceprint_similarity_threshold", true);
-            if (StringUtils.isNotBlank(thresholdStr) && !"null".equals(thresholdStr)) {
-                try {
-                    double threshold = Double.parseDouble(thresholdStr);
-                    voiceprintConfig.put("similarity_threshold", threshold);
-                } catch (NumberFormatException e) {
-                    // 如果解析失败，使用默认值0.4
-                    voiceprintConfig.put("similarity_threshold", 0.4);
-                }
-            } else {
-                voiceprintConfig.put("similarity_threshold", 0.4);
-            }
+            // 获取声纹识别相似度阈值，未配置或解析失败时默认0.4
+            voiceprintConfig.put("similarity_threshold",
+                    sysParamsSnapshot.getDouble("server.voiceprint_similarity_threshold", 0.4));
 
             result.put("voiceprint", voiceprintConfig);
         } catch (Exception e) {
@@ -321,17 +584,19 @@ public class ConfigServiceImpl implements ConfigService {
     }
 
     /**
-     * 获取智能体关联的声纹信息
+     * 批量获取智能体关联的声纹信息（不需要用户权限验证）
      * 
-     * @param agentId 智能体ID
-     * @return 声纹信息列表
+     * @param agentIds 智能体ID
+     * @return 智能体ID与声纹信息列表
      */
-    private List<AgentVoicePrintVO> getVoiceprintsByAgentId(String agentId) {
+    private Map<String, List<AgentVoicePrintVO>> getVoiceprintsByAgentIds(Collection<String> agentIds) {
         LambdaQueryWrapper<AgentVoicePrintEntity> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(AgentVoicePrintEntity::getAgentId, agentId);
+        queryWrapper.in(AgentVoicePrintEntity::getAgentId, agentIds);
         queryWrapper.orderByAsc(AgentVoicePrintEntity::getCreateDate);
         List<AgentVoicePrintEntity> entities = agentVoicePrintDao.selectList(queryWrapper);
-        return ConvertUtils.sourceToTarget(entities, AgentVoicePrintVO.class);
+        return entities.stream().collect(Collectors.groupingBy(AgentVoicePrintEntity::getAgentId,
+                Collectors.mapping(entity -> ConvertUtils.sourceToTarget(entity, AgentVoicePrintVO.class),
+                        Collectors.toList())));
     }
 
     /**
@@ -348,6 +613,7 @@ public class ConfigServiceImpl implements ConfigService {
      * @param memModelId     记忆模型ID
      * @param intentModelId  意图模型ID
      * @param result         结果Map
+     * @param modelLoader    按ID获取模型配置
      */
     private void buildModuleConfig(
             String assistantName,
@@ -364,10 +630,10 @@ public class ConfigServiceImpl implements ConfigService {
             String memModelId,
             String intentModelId,
             Map<String, Object> result,
-            boolean isCache) {
+            Function<String, ModelConfigEntity> modelLoader) {
         Map<String, String> selectedModule = new HashMap<>();
 
-        String[] modelTypes = { "VAD", "ASR", "TTS", "Memory", "Intent", "LLM", "VLLM" };
+        String[] modelTypes = MODULE_TYPES;
         String[] modelIds = { vadModelId, asrModelId, ttsModelId, memModelId, intentModelId, llmModelId, vllmModelId };
         String intentLLMModelId = null;
         String memLocalShortLLMModelId = null;
@@ -376,7 +642,7 @@ public class ConfigServiceImpl implements ConfigService {
             if (modelIds[i] == null) {
                 continue;
             }
-            ModelConfigEntity model = modelConfigService.getModelById(modelIds[i], isCache);
+            ModelConfigEntity model = modelLoader.apply(modelIds[i]);
             if (model == null) {
                 continue;
             }
@@ -424,14 +690,13 @@ public class ConfigServiceImpl implements ConfigService {
                 if ("LLM".equals(modelTypes[i])) {
                     if (StringUtils.isNotBlank(intentLLMModelId)) {
                         if (!typeConfig.containsKey(intentLLMModelId)) {
-                            ModelConfigEntity intentLLM = modelConfigService.getModelById(intentLLMModelId, isCache);
+                            ModelConfigEntity intentLLM = modelLoader.apply(intentLLMModelId);
                             typeConfig.put(intentLLM.getId(), intentLLM.getConfigJson());
                         }
                     }
                     if (StringUtils.isNotBlank(memLocalShortLLMModelId)) {
                         if (!typeConfig.containsKey(memLocalShortLLMModelId)) {
-                            ModelConfigEntity memLocalShortLLM = modelConfigService
-                                    .getModelById(memLocalShortLLMModelId, isCache);
+                            ModelConfigEntity memLocalShortLLM = modelLoader.apply(memLocalShortLLMModelId);
                             typeConfig.put(memLocalShortLLM.getId(), memLocalShortLLM.getConfigJson());
                         }
                     }
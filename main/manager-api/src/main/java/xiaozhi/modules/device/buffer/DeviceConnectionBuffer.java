@@ -0,0 +1,207 @@
+package xiaozhi.modules.device.buffer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.modules.device.dao.DeviceDao;
+
+/**
+ * 设备连接信息写缓冲
+ * <p>
+ * OTA检查和聊天上报都会刷新设备的最后连接时间，逐条更新会给数据库和异步线程池带来压力。
+ * 这里按设备ID合并连接事件，由单独的线程定时批量写入数据库，写入成功后再同步智能体最后连接时间的Redis缓存，
+ * 保证Redis与数据库一致。缓冲区有容量上限，应用关闭时会把剩余数据写入数据库。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceConnectionBuffer {
+    /**
+     * 定时写入间隔（毫秒）
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 2000;
+    /**
+     * 缓冲设备数达到该值时提前触发写入
+     */
+    private static final int FLUSH_THRESHOLD = 5000;
+    /**
+     * 缓冲设备数上限，超过后丢弃新设备的连接事件（设备下次连接时会再次记录）
+     */
+    private static final int MAX_PENDING = FLUSH_THRESHOLD * 2;
+    /**
+     * 单条UPDATE语句包含的最大设备数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private final DeviceDao deviceDao;
+    private final RedisUtils redisUtils;
+
+    private final Map<String, Connection> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "device-connection-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写入关闭前剩余的连接信息
+        flushQuietly();
+    }
+
+    /**
+     * 记录一次设备连接，同一设备在一个写入周期内的多次连接只保留最新的一次
+     *
+     * @param agentId    智能体ID
+     * @param deviceId   设备ID
+     * @param appVersion 固件版本号，为空时不更新
+     */
+    public void record(String agentId, String deviceId, String appVersion) {
+        if (StringUtils.isBlank(deviceId)) {
+            return;
+        }
+        int size = pending.size();
+        if (size >= MAX_PENDING && !pending.containsKey(deviceId)) {
+            log.warn("设备连接信息缓冲已满，丢弃设备 {} 的连接事件", deviceId);
+            requestFlush();
+            return;
+        }
+        // 空白的固件版本号视为未上报，不覆盖已记录的版本号
+        Connection connection = new Connection(deviceId, agentId, StringUtils.trimToNull(appVersion), new Date());
+        pending.merge(deviceId, connection, Connection::merge);
+        if (size + 1 >= FLUSH_THRESHOLD) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * 提前触发一次写入，避免缓冲区持续增长
+     */
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushQuietly);
+            } catch (Exception e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("批量更新设备连接信息失败", e);
+        }
+    }
+
+    /**
+     * 取出当前缓冲的连接信息，分批写入数据库并刷新智能体最后连接时间
+     */
+    private synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Connection> batch = new ArrayList<>(Math.min(pending.size(), BATCH_SIZE));
+        for (String deviceId : pending.keySet()) {
+            Connection connection = pending.remove(deviceId);
+            if (connection == null) {
+                continue;
+            }
+            batch.add(connection);
+            if (batch.size() >= BATCH_SIZE) {
+                write(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void write(List<Connection> batch) {
+        try {
+            deviceDao.batchUpdateConnectionInfo(batch);
+        } catch (Exception e) {
+            // 写入失败时放回缓冲区，等待下个周期重试，期间若有更新的连接事件则以更新的为准
+            for (Connection connection : batch) {
+                if (pending.size() < MAX_PENDING) {
+                    pending.merge(connection.getDeviceId(), connection, Connection::merge);
+                }
+            }
+            throw e;
+        }
+
+        // 数据库写入成功后，再更新各智能体的最后连接时间缓存
+        Map<String, Date> agentLastConnected = new HashMap<>();
+        for (Connection connection : batch) {
+            if (StringUtils.isNotBlank(connection.getAgentId())) {
+                agentLastConnected.merge(connection.getAgentId(), connection.getLastConnectedAt(),
+                        (a, b) -> a.after(b) ? a : b);
+            }
+        }
+        agentLastConnected.forEach((agentId, lastConnectedAt) -> redisUtils
+                .set(RedisKeys.getAgentDeviceLastConnectedAtById(agentId), lastConnectedAt));
+    }
+
+    /**
+     * 待写入的设备连接信息
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Connection {
+        private String deviceId;
+        private String agentId;
+        private String appVersion;
+        private Date lastConnectedAt;
+
+        /**
+         * 合并同一设备的两次连接，时间与智能体以较新的为准，固件版本以最后一次上报的非空值为准
+         */
+        private static Connection merge(Connection older, Connection newer) {
+            if (newer.getLastConnectedAt().before(older.getLastConnectedAt())) {
+                Connection tmp = older;
+                older = newer;
+                newer = tmp;
+            }
+            String appVersion = StringUtils.isNotBlank(newer.getAppVersion()) ? newer.getAppVersion()
+                    : older.getAppVersion();
+            String agentId = StringUtils.isNotBlank(newer.getAgentId()) ? newer.getAgentId() : older.getAgentId();
+            return new Connection(newer.getDeviceId(), agentId, appVersion, newer.getLastConnectedAt());
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package xiaozhi.modules.device.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.utils.TransactionUtils;
+import xiaozhi.modules.device.dao.DeviceDao;
+import xiaozhi.modules.device.entity.DeviceEntity;
+
+/**
+ * 设备本地缓存（MAC地址 → 设备）
+ * <p>
+ * OTA检查、激活轮询、获取智能体模型、聊天上报等接口都要按MAC地址查设备，这里在进程内做一层有容量上限和过期时间的缓存。
+ * 设备绑定、解绑、手动添加、删除、修改时通过Redis频道通知所有节点失效；
+ * 即使通知丢失，缓存也会在过期时间后失效，因此各节点读到旧绑定关系的时间不会超过过期时间。
+ * <p>
+ * 未注册的设备会持续调用OTA和激活接口，为避免这些请求每次都查库，另外维护：
+ * <ul>
+ * <li>已知MAC地址的布隆过滤器：启动时从数据库构建并定时重建，设备新增时（包括其他节点的通知）加入</li>
+ * <li>最近新增设备的Redis标记：设备新增、变更时写入，保留时间超过重建间隔。
+ * 其他节点可能丢失通知，布隆过滤器判定不存在时还要确认没有该标记才返回null；
+ * 重建长时间失败、过滤器比标记保留时间还旧时不再使用过滤器</li>
+ * <li>短时间的不存在记录：确认不存在或查库为空的结果缓存几秒</li>
+ * </ul>
+ * 设备新增时会清除本节点的不存在记录并加入布隆过滤器，因此绑定、激活后能立即查到设备；
+ * 其他节点即使丢失通知，也最多在不存在记录过期后查到设备。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceCache implements MessageListener {
+    /**
+     * 失效全部缓存的消息内容
+     */
+    private static final String EVICT_ALL = "*";
+    /**
+     * 布隆过滤器误判率
+     */
+    private static final double BLOOM_FPP = 0.01;
+    /**
+     * 布隆过滤器最小容量
+     */
+    private static final int BLOOM_MIN_CAPACITY = 10000;
+    /**
+     * 布隆过滤器重建间隔（分钟），用于清理已删除的设备并兜底丢失的新增通知
+     */
+    private static final long BLOOM_REBUILD_MINUTES = 10;
+    /**
+     * 最近新增设备标记的保留时间（秒），需要覆盖布隆过滤器的重建间隔
+     */
+    private static final long RECENT_MAC_EXPIRE_SECONDS = TimeUnit.MINUTES.toSeconds(30);
+    /**
+     * 布隆过滤器的最长使用时间（毫秒），重建失败超过该时间后不再使用，留出余量保证新增设备的标记仍未过期
+     */
+    private static final long BLOOM_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(25);
+
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final DeviceDao deviceDao;
+
+    /**
+     * 本地缓存 最多10000台设备，60秒过期
+     */
+    private final Cache<String, DeviceEntity> localCache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * 不存在的MAC地址 最多50000个，10秒过期
+     */
+    private final Cache<String, Boolean> absentCache = CacheBuilder.newBuilder()
+            .maximumSize(50000)
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .build();
+
+    private final Object bloomLock = new Object();
+    /**
+     * 已知MAC地址的布隆过滤器，构建完成前为null，此时不做过滤
+     */
+    private volatile BloomFilter<CharSequence> knownMacFilter;
+    /**
+     * 布隆过滤器开始从数据库读取的时间，此后新增的设备不一定在过滤器中
+     */
+    private volatile long knownMacFilterBuiltAt;
+    /**
+     * 重建期间新增的MAC地址，重建完成后补充到新的布隆过滤器中
+     */
+    private Set<String> addedDuringRebuild;
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this,
+                new ChannelTopic(RedisKeys.getDeviceCacheEvictChannel()));
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "device-bloom-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::rebuildKnownMacFilter, 0, BLOOM_REBUILD_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 按MAC地址获取设备，缓存未命中时通过loader查询
+     *
+     * @param macAddress MAC地址
+     * @param loader     查询设备的方法
+     * @return 设备信息，不存在时返回null
+     */
+    public DeviceEntity get(String macAddress, Function<String, DeviceEntity> loader) {
+        String key = normalize(macAddress);
+        DeviceEntity device = localCache.getIfPresent(key);
+        if (device != null) {
+            return device;
+        }
+        if (isKnownAbsent(key)) {
+            return null;
+        }
+        device = loader.apply(macAddress);
+        if (device != null) {
+            localCache.put(key, device);
+        } else {
+            absentCache.put(key, Boolean.TRUE);
+        }
+        return device;
+    }
+
+    /**
+     * 按MAC地址批量获取设备，缓存未命中的通过loader一次查询
+     *
+     * @param macAddresses MAC地址
+     * @param loader       按MAC地址批量查询设备的方法
+     * @return 传入的MAC地址与设备信息，不存在的不返回
+     */
+    public Map<String, DeviceEntity> getAll(Collection<String> macAddresses,
+            Function<Collection<String>, List<DeviceEntity>> loader) {
+        Map<String, DeviceEntity> result = new HashMap<>();
+        Map<String, String> missing = new HashMap<>();
+        for (String macAddress : macAddresses) {
+            if (StringUtils.isBlank(macAddress)) {
+                continue;
+            }
+            String key = normalize(macAddress);
+            DeviceEntity device = localCache.getIfPresent(key);
+            if (device != null) {
+                result.put(macAddress, device);
+            } else if (!isKnownAbsent(key)) {
+                missing.putIfAbsent(key, macAddress);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<String, DeviceEntity> loaded = new HashMap<>();
+        for (DeviceEntity device : loader.apply(missing.values())) {
+            loaded.put(normalize(device.getMacAddress()), device);
+        }
+        for (String macAddress : macAddresses) {
+            if (StringUtils.isBlank(macAddress) || result.containsKey(macAddress)) {
+                continue;
+            }
+            String key = normalize(macAddress);
+            if (!missing.containsKey(key)) {
+                continue;
+            }
+            DeviceEntity device = loaded.get(key);
+            if (device != null) {
+                localCache.put(key, device);
+                result.put(macAddress, device);
+            } else {
+                absentCache.put(key, Boolean.TRUE);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 使指定MAC地址的设备缓存在所有节点失效，设备新增时也要调用
+     *
+     * @param macAddress MAC地址
+     */
+    public void evict(String macAddress) {
+        if (StringUtils.isBlank(macAddress)) {
+            return;
+        }
+        String key = normalize(macAddress);
+        TransactionUtils.runNowAndAfterCommit(() -> {
+            markRecent(key);
+            evictLocal(key);
+            publish(key);
+        });
+    }
+
+    /**
+     * 使全部设备缓存在所有节点失效（按智能体、用户批量删除设备时调用）
+     */
+    public void evictAll() {
+        TransactionUtils.runNowAndAfterCommit(() -> {
+            localCache.invalidateAll();
+            absentCache.invalidateAll();
+            publish(EVICT_ALL);
+        });
+    }
+
+    private boolean isKnownAbsent(String key) {
+        if (absentCache.getIfPresent(key) != null) {
+            return true;
+        }
+        BloomFilter<CharSequence> filter = knownMacFilter;
+        if (filter == null || filter.mightContain(key)
+                || System.currentTimeMillis() - knownMacFilterBuiltAt > BLOOM_MAX_AGE_MILLIS) {
+            return false;
+        }
+        // 过滤器构建后新增的设备可能因通知丢失不在过滤器中，用Redis标记确认
+        try {
+            if (redisUtils.get(RedisKeys.getDeviceRecentMacKey(key)) != null) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("查询最近新增设备标记失败，改为查库: {}", e.getMessage());
+            return false;
+        }
+        absentCache.put(key, Boolean.TRUE);
+        return true;
+    }
+
+    private void markRecent(String key) {
+        try {
+            redisUtils.set(RedisKeys.getDeviceRecentMacKey(key), System.currentTimeMillis(),
+                    RECENT_MAC_EXPIRE_SECONDS);
+        } catch (Exception e) {
+            // 本节点已加入布隆过滤器，其他节点在通知送达或过滤器重建后才能查到
+            log.error("写入最近新增设备标记失败: {}", key, e);
+        }
+    }
+
+    /**
+     * 失效本地缓存，同时把MAC地址加入布隆过滤器。
+     * 失效可能意味着设备新增，加入过滤器只会增加误判，不会漏掉设备
+     */
+    private void evictLocal(String key) {
+        synchronized (bloomLock) {
+            if (knownMacFilter != null) {
+                knownMacFilter.put(key);
+            }
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(key);
+            }
+        }
+        absentCache.invalidate(key);
+        localCache.invalidate(key);
+    }
+
+    /**
+     * 从数据库重建已知MAC地址的布隆过滤器
+     */
+    private void rebuildKnownMacFilter() {
+        synchronized (bloomLock) {
+            addedDuringRebuild = ConcurrentHashMap.newKeySet();
+        }
+        try {
+            long builtAt = System.currentTimeMillis();
+            List<String> macAddresses = deviceDao.selectAllMacAddress();
+            BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                    Math.max(macAddresses.size() * 2, BLOOM_MIN_CAPACITY), BLOOM_FPP);
+            for (String macAddress : macAddresses) {
+                filter.put(normalize(macAddress));
+            }
+            synchronized (bloomLock) {
+                addedDuringRebuild.forEach(filter::put);
+                knownMacFilter = filter;
+                knownMacFilterBuiltAt = builtAt;
+            }
+            log.info("设备MAC地址布隆过滤器重建完成，设备数: {}", macAddresses.size());
+        } catch (Exception e) {
+            log.error("设备MAC地址布隆过滤器重建失败", e);
+        } finally {
+            synchronized (bloomLock) {
+                addedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * 数据库按MAC地址查询不区分大小写，缓存统一使用小写作为key
+     */
+    private String normalize(String macAddress) {
+        return macAddress.toLowerCase(Locale.ROOT);
+    }
+
+    private void publish(String message) {
+        try {
+            redisUtils.publish(RedisKeys.getDeviceCacheEvictChannel(), message);
+        } catch (Exception e) {
+            // 通知失败时其他节点依靠过期时间失效
+            log.error("发布设备缓存失效通知失败: {}", message, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object macAddress = redisUtils.deserializeMessage(message.getBody());
+        if (EVICT_ALL.equals(macAddress)) {
+            localCache.invalidateAll();
+            absentCache.invalidateAll();
+        } else if (macAddress instanceof String) {
+            evictLocal((String) macAddress);
+        }
+    }
+}
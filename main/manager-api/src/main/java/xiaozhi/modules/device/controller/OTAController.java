@@ -1,6 +1,7 @@
 package xiaozhi.modules.device.controller;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.MediaType;
@@ -28,6 +29,7 @@ import xiaozhi.modules.device.dto.DeviceReportReqDTO;
 import xiaozhi.modules.device.dto.DeviceReportRespDTO;
 import xiaozhi.modules.device.entity.DeviceEntity;
 import xiaozhi.modules.device.service.DeviceService;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
 import xiaozhi.modules.sys.service.SysParamsService;
 
 @Tag(name = "设备管理", description = "OTA 相关接口")
@@ -38,6 +40,7 @@ import xiaozhi.modules.sys.service.SysParamsService;
 public class OTAController {
     private final DeviceService deviceService;
     private final SysParamsService sysParamsService;
+    private final SysParamsSnapshot sysParamsSnapshot;
 
     @Operation(summary = "OTA版本和设备激活状态检查")
     @PostMapping
@@ -81,15 +84,15 @@ public class OTAController {
         if (StringUtils.isBlank(mqttUdpConfig)) {
             return ResponseEntity.ok("OTA接口不正常，缺少mqtt_gateway地址，请登录智控台，在参数管理找到【server.mqtt_gateway】配置");
         }
-        String wsUrl = sysParamsService.getValue(Constant.SERVER_WEBSOCKET, true);
-        if (StringUtils.isBlank(wsUrl) || wsUrl.equals("null")) {
+        List<String> wsUrls = sysParamsSnapshot.getList(Constant.SERVER_WEBSOCKET);
+        if (wsUrls.isEmpty()) {
             return ResponseEntity.ok("OTA接口不正常，缺少websocket地址，请登录智控台，在参数管理找到【server.websocket】配置");
         }
         String otaUrl = sysParamsService.getValue(Constant.SERVER_OTA, true);
         if (StringUtils.isBlank(otaUrl) || otaUrl.equals("null")) {
             return ResponseEntity.ok("OTA接口不正常，缺少ota地址，请登录智控台，在参数管理找到【server.ota】配置");
         }
-        return ResponseEntity.ok("OTA接口运行正常，websocket集群数量：" + wsUrl.split(";").length);
+        return ResponseEntity.ok("OTA接口运行正常，websocket集群数量：" + wsUrls.size());
     }
 
     @SneakyThrows
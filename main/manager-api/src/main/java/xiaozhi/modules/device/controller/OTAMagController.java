@@ -1,12 +1,14 @@
 package xiaozhi.modules.device.controller;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -14,7 +16,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -27,6 +32,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -42,6 +48,7 @@ import xiaozhi.common.redis.RedisUtils;
 import xiaozhi.common.utils.Result;
 import xiaozhi.common.validator.ValidatorUtils;
 import xiaozhi.modules.device.entity.OtaEntity;
+import xiaozhi.modules.device.service.OtaRolloutService;
 import xiaozhi.modules.device.service.OtaService;
 
 @Tag(name = "设备管理", description = "OTA 相关接口")
@@ -51,14 +58,29 @@ import xiaozhi.modules.device.service.OtaService;
 @RequestMapping("/otaMag")
 public class OTAMagController {
     private static final Logger logger = LoggerFactory.getLogger(OTAController.class);
+    /**
+     * 每个下载链接允许的最大下载次数
+     */
+    private static final int MAX_DOWNLOAD_COUNT = 3;
+    /**
+     * 续传起点允许早于已发送位置的字节数，已写入发送缓冲但未送达设备的数据需要重传
+     */
+    private static final long RESUME_SLACK_BYTES = 256 * 1024L;
+    /**
+     * 每次计数下载后允许的不计数续传次数
+     */
+    private static final int MAX_RESUMES_PER_DOWNLOAD = 10;
     private final OtaService otaService;
+    private final OtaRolloutService otaRolloutService;
     private final RedisUtils redisUtils;
 
     @GetMapping
     @Operation(summary = "分页查询 OTA 固件信息")
     @Parameters({
-            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始", required = true),
-            @Parameter(name = Constant.LIMIT, description = "每页显示记录数", required = true)
+            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始，游标分页时不需要"),
+            @Parameter(name = Constant.LIMIT, description = "每页显示记录数", required = true),
+            @Parameter(name = Constant.CURSOR, description = "游标分页的游标，第一页传空值，之后传上一页返回的nextCursor"),
+            @Parameter(name = Constant.WITH_TOTAL, description = "游标分页时是否统计总数")
     })
     @RequiresPermissions("sys:role:superAdmin")
     public Result<PageData<OtaEntity>> page(@Parameter(hidden = true) @RequestParam Map<String, Object> params) {
@@ -137,29 +159,15 @@ public class OTAMagController {
 
     @GetMapping("/download/{uuid}")
     @Operation(summary = "下载固件文件")
-    public ResponseEntity<byte[]> downloadFirmware(@PathVariable("uuid") String uuid) {
+    public ResponseEntity<Resource> downloadFirmware(@PathVariable("uuid") String uuid, WebRequest webRequest) {
+        String range = webRequest.getHeader(HttpHeaders.RANGE);
         String id = (String) redisUtils.get(RedisKeys.getOtaIdKey(uuid));
         if (StringUtils.isBlank(id)) {
             return ResponseEntity.notFound().build();
         }
 
-        // 检查下载次数
-        String downloadCountKey = RedisKeys.getOtaDownloadCountKey(uuid);
-        Integer downloadCount = (Integer) redisUtils.get(downloadCountKey);
-        if (downloadCount == null) {
-            downloadCount = 0;
-        }
-
-        // 如果下载次数超过3次，返回404
-        if (downloadCount >= 3) {
-            redisUtils.delete(downloadCountKey);
-            redisUtils.delete(RedisKeys.getOtaIdKey(uuid));
-            logger.warn("Download limit exceeded for UUID: {}", uuid);
-            return ResponseEntity.notFound().build();
-        }
-
-        redisUtils.set(downloadCountKey, downloadCount + 1);
-
+        // 开始发送文件后由文件流关闭时归还下载名额，其余情况（304、错误等）在返回前归还
+        boolean streaming = false;
         try {
             // 获取固件信息
             OtaEntity otaEntity = otaService.selectById(id);
@@ -168,40 +176,12 @@ public class OTAMagController {
                 return ResponseEntity.notFound().build();
             }
 
-            // 获取文件路径 - 确保路径是绝对路径或正确的相对路径
             String firmwarePath = otaEntity.getFirmwarePath();
-            Path path;
-
-            // 检查是否是绝对路径
-            if (Paths.get(firmwarePath).isAbsolute()) {
-                path = Paths.get(firmwarePath);
-            } else {
-                // 如果是相对路径，则从当前工作目录解析
-                path = Paths.get(System.getProperty("user.dir"), firmwarePath);
-            }
-
-            logger.info("Attempting to download firmware for ID: {}, DB path: {}, resolved path: {}",
-                    id, firmwarePath, path.toAbsolutePath());
-
-            if (!Files.exists(path) || !Files.isRegularFile(path)) {
-                // 尝试直接从firmware目录下查找文件名
-                String fileName = new File(firmwarePath).getName();
-                Path altPath = Paths.get(System.getProperty("user.dir"), "firmware", fileName);
-
-                logger.info("File not found at primary path, trying alternative path: {}", altPath.toAbsolutePath());
-
-                if (Files.exists(altPath) && Files.isRegularFile(altPath)) {
-                    path = altPath;
-                } else {
-                    logger.error("Firmware file not found at either path: {} or {}",
-                            path.toAbsolutePath(), altPath.toAbsolutePath());
-                    return ResponseEntity.notFound().build();
-                }
+            Path path = resolveFirmwarePath(id, firmwarePath);
+            if (path == null) {
+                return ResponseEntity.notFound().build();
             }
 
-            // 读取文件内容
-            byte[] fileContent = Files.readAllBytes(path);
-
             // 设置响应头
             String originalFilename = otaEntity.getType() + "_" + otaEntity.getVersion();
             if (firmwarePath.contains(".")) {
@@ -212,20 +192,178 @@ public class OTAMagController {
             // 清理文件名，移除不安全字符
             String safeFilename = originalFilename.replaceAll("[^a-zA-Z0-9._-]", "_");
 
-            logger.info("Providing download for firmware ID: {}, filename: {}, size: {} bytes",
-                    id, safeFilename, fileContent.length);
+            // 优先使用上传时由文件哈希生成的ETag；旧固件没有哈希时以文件大小和修改时间生成强ETag，
+            // 文件替换后ETag随之变化，断点续传时可据此判断文件是否一致
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            long size = otaEntity.getSize() != null && StringUtils.isNotBlank(otaEntity.getEtag())
+                    ? otaEntity.getSize()
+                    : Files.size(path);
+            String eTag = StringUtils.isNotBlank(otaEntity.getEtag())
+                    ? otaEntity.getEtag()
+                    : "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+
+            // 条件请求命中时由Spring返回304（或412），不发送文件，不计入下载次数
+            if (webRequest.checkNotModified(eTag, lastModified)) {
+                return null;
+            }
+            List<HttpRange> ranges = null;
+            if (StringUtils.isNotBlank(range)) {
+                ranges = parseRanges(range, size);
+                if (ranges == null) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                            .build();
+                }
+            }
 
+            // 检查下载次数，只有紧接着本链接上次实际发送位置的续传请求不计入次数
+            if (!isResumeOfCountedDownload(uuid, ranges, webRequest.getHeader(HttpHeaders.IF_RANGE), eTag,
+                    size)) {
+                String downloadCountKey = RedisKeys.getOtaDownloadCountKey(uuid);
+                // 原子自增后再判断，避免并发请求同时通过检查
+                Long downloadCount = redisUtils.increment(downloadCountKey, RedisUtils.DEFAULT_EXPIRE);
+                // 如果下载次数超过3次，返回404
+                if (downloadCount != null && downloadCount > MAX_DOWNLOAD_COUNT) {
+                    redisUtils.delete(downloadCountKey);
+                    redisUtils.delete(RedisKeys.getOtaDownloadProgressKey(uuid));
+                    redisUtils.delete(RedisKeys.getOtaIdKey(uuid));
+                    logger.warn("Download limit exceeded for UUID: {}", uuid);
+                    return ResponseEntity.notFound().build();
+                }
+                Map<String, Object> progress = new HashMap<>();
+                progress.put("etag", eTag);
+                progress.put("served", 0L);
+                progress.put("resumes", 0L);
+                redisUtils.hMSet(RedisKeys.getOtaDownloadProgressKey(uuid), progress, RedisUtils.DEFAULT_EXPIRE);
+            }
+
+            logger.info("Providing download for firmware ID: {}, filename: {}, size: {} bytes, range: {}",
+                    id, safeFilename, size, range);
+
+            // 以文件资源作为响应体，由Spring直接从磁盘流式输出，并处理Range（206）及条件请求（304）
+            streaming = true;
             return ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + safeFilename + "\"")
-                    .body(fileContent);
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .body(new ProgressTrackingResource(path, id, uuid, eTag));
         } catch (IOException e) {
             logger.error("Error reading firmware file for ID: {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         } catch (Exception e) {
             logger.error("Unexpected error during firmware download for ID: {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        } finally {
+            if (!streaming) {
+                otaRolloutService.release(id, uuid);
+            }
+        }
+    }
+
+    /**
+     * 解析Range请求头
+     *
+     * @return 请求的范围，格式错误或超出文件长度时返回null
+     */
+    private static List<HttpRange> parseRanges(String range, long size) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            for (HttpRange httpRange : ranges) {
+                if (httpRange.getRangeStart(size) >= size) {
+                    return null;
+                }
+            }
+            return ranges;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 判断是否为本链接最近一次计数下载的断点续传：单个Range且不从文件开头开始，If-Range与当前ETag一致，
+     * 起点不超过上次实际发送到的位置、且最多只回退{@link #RESUME_SLACK_BYTES}，续传次数未超过上限。
+     * 缺少任一条件都按新的下载计数，避免用Range绕过下载次数限制
+     */
+    private boolean isResumeOfCountedDownload(String uuid, List<HttpRange> ranges, String ifRange, String eTag,
+            long size) {
+        if (ranges == null || ranges.size() != 1 || !eTag.equals(ifRange)) {
+            return false;
+        }
+        long start = ranges.get(0).getRangeStart(size);
+        if (start == 0) {
+            return false;
+        }
+        String progressKey = RedisKeys.getOtaDownloadProgressKey(uuid);
+        Map<String, Object> progress = redisUtils.hGetAll(progressKey);
+        if (progress == null || !eTag.equals(progress.get("etag"))) {
+            return false;
         }
+        long served = toLong(progress.get("served"));
+        long resumes = toLong(progress.get("resumes"));
+        if (start > served || start < served - RESUME_SLACK_BYTES || resumes >= MAX_RESUMES_PER_DOWNLOAD) {
+            return false;
+        }
+        redisUtils.hSet(progressKey, "resumes", resumes + 1);
+        return true;
+    }
+
+    /**
+     * 记录本链接实际发送到的文件位置，只前进不后退
+     */
+    private void recordServed(String uuid, String eTag, long position) {
+        try {
+            String progressKey = RedisKeys.getOtaDownloadProgressKey(uuid);
+            Map<String, Object> progress = redisUtils.hGetAll(progressKey);
+            if (progress != null && eTag.equals(progress.get("etag"))
+                    && position > toLong(progress.get("served"))) {
+                redisUtils.hSet(progressKey, "served", position);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to record download progress for UUID: {}", uuid, e);
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    /**
+     * 解析固件文件路径 - 确保路径是绝对路径或正确的相对路径
+     *
+     * @return 固件文件路径，文件不存在时返回null
+     */
+    private Path resolveFirmwarePath(String id, String firmwarePath) {
+        Path path;
+
+        // 检查是否是绝对路径
+        if (Paths.get(firmwarePath).isAbsolute()) {
+            path = Paths.get(firmwarePath);
+        } else {
+            // 如果是相对路径，则从当前工作目录解析
+            path = Paths.get(System.getProperty("user.dir"), firmwarePath);
+        }
+
+        logger.info("Attempting to download firmware for ID: {}, DB path: {}, resolved path: {}",
+                id, firmwarePath, path.toAbsolutePath());
+
+        if (Files.exists(path) && Files.isRegularFile(path)) {
+            return path;
+        }
+
+        // 尝试直接从firmware目录下查找文件名
+        String fileName = new File(firmwarePath).getName();
+        Path altPath = Paths.get(System.getProperty("user.dir"), "firmware", fileName);
+
+        logger.info("File not found at primary path, trying alternative path: {}", altPath.toAbsolutePath());
+
+        if (Files.exists(altPath) && Files.isRegularFile(altPath)) {
+            return altPath;
+        }
+        logger.error("Firmware file not found at either path: {} or {}",
+                path.toAbsolutePath(), altPath.toAbsolutePath());
+        return null;
     }
 
     @PostMapping("/upload")
@@ -248,44 +386,70 @@ public class OTAMagController {
         }
 
         try {
-            // 计算文件的MD5值
-            String md5 = calculateMD5(file);
-
-            // 设置存储路径
-            String uploadDir = "uploadfile";
-            Path uploadPath = Paths.get(uploadDir);
-
-            // 如果目录不存在，创建目录
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
+            // 流式写入并计算哈希，返回文件路径
+            String firmwarePath = otaService.storeFirmware(file.getInputStream(), extension);
+            return new Result<String>().ok(firmwarePath);
+        } catch (IOException e) {
+            return new Result<String>().error("文件上传失败：" + e.getMessage());
+        }
+    }
 
-            // 使用MD5作为文件名，固定使用.bin扩展名
-            String uniqueFileName = md5 + extension;
-            Path filePath = uploadPath.resolve(uniqueFileName);
+    /**
+     * 固件文件资源，关闭输入流时（发送完成或连接中断）记录实际读取到的文件位置（Range请求跳过的部分也计入），
+     * 作为续传的依据，并归还下载名额
+     */
+    private class ProgressTrackingResource extends FileSystemResource {
+        private final String otaId;
+        private final String uuid;
+        private final String eTag;
+
+        ProgressTrackingResource(Path path, String otaId, String uuid, String eTag) {
+            super(path);
+            this.otaId = otaId;
+            this.uuid = uuid;
+            this.eTag = eTag;
+        }
 
-            // 检查文件是否已存在
-            if (Files.exists(filePath)) {
-                return new Result<String>().ok(filePath.toString());
-            }
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                private long position;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        position++;
+                    }
+                    return b;
+                }
 
-            // 保存文件
-            Files.copy(file.getInputStream(), filePath);
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        position += n;
+                    }
+                    return n;
+                }
 
-            // 返回文件路径
-            return new Result<String>().ok(filePath.toString());
-        } catch (IOException | NoSuchAlgorithmException e) {
-            return new Result<String>().error("文件上传失败：" + e.getMessage());
-        }
-    }
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(n);
+                    position += skipped;
+                    return skipped;
+                }
 
-    private String calculateMD5(MultipartFile file) throws IOException, NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        byte[] digest = md.digest(file.getBytes());
-        StringBuilder sb = new StringBuilder();
-        for (byte b : digest) {
-            sb.append(String.format("%02x", b));
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        recordServed(uuid, eTag, position);
+                        otaRolloutService.release(otaId, uuid);
+                    }
+                }
+            };
         }
-        return sb.toString();
     }
 }
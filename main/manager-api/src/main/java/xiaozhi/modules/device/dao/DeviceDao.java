@@ -1,11 +1,14 @@
 package xiaozhi.modules.device.dao;
 
 import java.util.Date;
+import java.util.List;
 
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
+import xiaozhi.modules.device.buffer.DeviceConnectionBuffer;
 import xiaozhi.modules.device.entity.DeviceEntity;
 
 @Mapper
@@ -18,4 +21,19 @@ public interface DeviceDao extends BaseMapper<DeviceEntity> {
      */
     Date getAllLastConnectedAtByAgentId(String agentId);
 
+    /**
+     * 批量更新设备的最后连接时间和固件版本号
+     * 
+     * @param list 设备连接信息
+     * @return 更新行数
+     */
+    int batchUpdateConnectionInfo(@Param("list") List<DeviceConnectionBuffer.Connection> list);
+
+    /**
+     * 获取全部设备的MAC地址
+     * 
+     * @return MAC地址列表
+     */
+    List<String> selectAllMacAddress();
+
 }
\ No newline at end of file
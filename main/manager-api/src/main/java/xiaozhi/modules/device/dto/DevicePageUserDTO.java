@@ -24,4 +24,10 @@ public class DevicePageUserDTO {
     @Schema(description = "显示列数")
     @Min(value = 0, message = "{limit.number}")
     private String limit;
+
+    @Schema(description = "游标分页的游标，第一页传空值，为null时按页码分页")
+    private String cursor;
+
+    @Schema(description = "游标分页时是否统计总数")
+    private Boolean withTotal;
 }
@@ -34,6 +34,15 @@ public class OtaEntity {
     @Schema(description = "文件大小(字节)")
     private Long size;
 
+    @Schema(description = "文件MD5")
+    private String md5;
+
+    @Schema(description = "文件SHA-256")
+    private String sha256;
+
+    @Schema(description = "下载使用的ETag，由文件哈希生成")
+    private String etag;
+
     @Schema(description = "备注/说明")
     private String remark;
 
@@ -1,7 +1,9 @@
 package xiaozhi.modules.device.service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import xiaozhi.common.page.PageData;
 import xiaozhi.common.service.BaseService;
@@ -73,6 +75,14 @@ public interface DeviceService extends BaseService<DeviceEntity> {
      */
     DeviceEntity getDeviceByMacAddress(String macAddress);
 
+    /**
+     * 根据MAC地址批量获取设备信息
+     *
+     * @param macAddresses MAC地址
+     * @return 传入的MAC地址与设备信息，不存在的设备不返回
+     */
+    Map<String, DeviceEntity> getDevicesByMacAddresses(Collection<String> macAddresses);
+
     /**
      * 根据设备ID获取激活码
      * 
@@ -94,7 +104,7 @@ public interface DeviceService extends BaseService<DeviceEntity> {
     void manualAddDevice(Long userId, DeviceManualAddDTO dto);
 
     /**
-     * 更新设备连接信息
+     * 更新设备连接信息，写入会被合并后批量执行
      */
     void updateDeviceConnectionInfo(String agentId, String deviceId, String appVersion);
 
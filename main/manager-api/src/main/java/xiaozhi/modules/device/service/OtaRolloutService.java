@@ -0,0 +1,27 @@
+package xiaozhi.modules.device.service;
+
+import xiaozhi.modules.device.entity.OtaEntity;
+
+/**
+ * 固件分批发布与下载准入
+ */
+public interface OtaRolloutService {
+    /**
+     * 判断本次检查是否向设备下发固件下载地址，不允许时设备应视为暂无更新，下次检查时重试。
+     * 允许时以下载ID占用一个下载名额，下载结束后需调用{@link #release(String, String)}归还
+     *
+     * @param ota        待升级的固件
+     * @param macAddress 设备MAC地址
+     * @param downloadId 下发的下载地址中的下载ID
+     * @return 是否允许
+     */
+    boolean tryAdmit(OtaEntity ota, String macAddress, String downloadId);
+
+    /**
+     * 下载结束（完成或失败）后归还下载名额，下载ID未占用名额时不做处理
+     *
+     * @param otaId      固件ID
+     * @param downloadId 下载ID
+     */
+    void release(String otaId, String downloadId);
+}
@@ -1,5 +1,7 @@
 package xiaozhi.modules.device.service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 import xiaozhi.common.page.PageData;
@@ -19,4 +21,13 @@ public interface OtaService extends BaseService<OtaEntity> {
     void delete(String[] ids);
 
     OtaEntity getLatestOta(String type);
+
+    /**
+     * 保存上传的固件文件，以MD5命名，相同内容的文件只保存一份
+     *
+     * @param in        文件内容
+     * @param extension 扩展名，如.bin
+     * @return 固件文件路径
+     */
+    String storeFirmware(InputStream in, String extension) throws IOException;
 }
\ No newline at end of file
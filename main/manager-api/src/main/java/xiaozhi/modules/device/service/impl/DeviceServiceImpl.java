@@ -3,6 +3,7 @@ package xiaozhi.modules.device.service.impl;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -14,8 +15,6 @@ import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
@@ -30,6 +29,7 @@ import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import xiaozhi.common.constant.Constant;
 import xiaozhi.common.exception.RenException;
+import xiaozhi.common.page.PageCursor;
 import xiaozhi.common.page.PageData;
 import xiaozhi.common.redis.RedisKeys;
 import xiaozhi.common.redis.RedisUtils;
@@ -37,6 +37,10 @@ import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.user.UserDetail;
 import xiaozhi.common.utils.ConvertUtils;
 import xiaozhi.common.utils.DateUtils;
+import xiaozhi.modules.config.event.ConfigChangeEvent;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
+import xiaozhi.modules.device.buffer.DeviceConnectionBuffer;
+import xiaozhi.modules.device.cache.DeviceCache;
 import xiaozhi.modules.device.dao.DeviceDao;
 import xiaozhi.modules.device.dto.DeviceManualAddDTO;
 import xiaozhi.modules.device.dto.DevicePageUserDTO;
@@ -45,9 +49,11 @@ import xiaozhi.modules.device.dto.DeviceReportRespDTO;
 import xiaozhi.modules.device.entity.DeviceEntity;
 import xiaozhi.modules.device.entity.OtaEntity;
 import xiaozhi.modules.device.service.DeviceService;
+import xiaozhi.modules.device.service.OtaRolloutService;
 import xiaozhi.modules.device.service.OtaService;
 import xiaozhi.modules.device.vo.UserShowDeviceListVO;
 import xiaozhi.modules.security.user.SecurityUser;
+import xiaozhi.modules.sys.service.ServerNodeService;
 import xiaozhi.modules.sys.service.SysParamsService;
 import xiaozhi.modules.sys.service.SysUserUtilService;
 
@@ -59,25 +65,18 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
     private final DeviceDao deviceDao;
     private final SysUserUtilService sysUserUtilService;
     private final SysParamsService sysParamsService;
+    private final ServerNodeService serverNodeService;
     private final RedisUtils redisUtils;
     private final OtaService otaService;
+    private final OtaRolloutService otaRolloutService;
+    private final DeviceConnectionBuffer deviceConnectionBuffer;
+    private final DeviceCache deviceCache;
+    private final ConfigChangePublisher configChangePublisher;
 
-    @Async
+    @Override
     public void updateDeviceConnectionInfo(String agentId, String deviceId, String appVersion) {
-        try {
-            DeviceEntity device = new DeviceEntity();
-            device.setId(deviceId);
-            device.setLastConnectedAt(new Date());
-            if (StringUtils.isNotBlank(appVersion)) {
-                device.setAppVersion(appVersion);
-            }
-            deviceDao.updateById(device);
-            if (StringUtils.isNotBlank(agentId)) {
-                redisUtils.set(RedisKeys.getAgentDeviceLastConnectedAtById(agentId), new Date());
-            }
-        } catch (Exception e) {
-            log.error("异步更新设备连接信息失败", e);
-        }
+        // 写入缓冲区，由缓冲区合并后定时批量更新数据库和缓存
+        deviceConnectionBuffer.record(agentId, deviceId, appVersion);
     }
 
     @Override
@@ -129,6 +128,8 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         deviceEntity.setUpdateDate(currentTime);
         deviceEntity.setLastConnectedAt(currentTime);
         deviceDao.insert(deviceEntity);
+        deviceCache.evict(macAddress);
+        configChangePublisher.deviceChanged(macAddress, agentId, ConfigChangeEvent.ACTION_BIND);
 
         // 清理redis缓存
         redisUtils.delete(cacheDeviceKey);
@@ -155,7 +156,8 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
             if (deviceById.getAutoUpdate() != 0) {
                 String type = deviceReport.getBoard() == null ? null : deviceReport.getBoard().getType();
                 DeviceReportRespDTO.Firmware firmware = buildFirmwareInfo(type,
-                        deviceReport.getApplication() == null ? null : deviceReport.getApplication().getVersion());
+                        deviceReport.getApplication() == null ? null : deviceReport.getApplication().getVersion(),
+                        macAddress);
                 response.setFirmware(firmware);
             }
         }
@@ -163,21 +165,13 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         // 添加WebSocket配置
         DeviceReportRespDTO.Websocket websocket = new DeviceReportRespDTO.Websocket();
         // 从系统参数获取WebSocket URL，如果未配置则使用默认值
-        String wsUrl = sysParamsService.getValue(Constant.SERVER_WEBSOCKET, true);
-        if (StringUtils.isBlank(wsUrl) || wsUrl.equals("null")) {
+        // 按节点心跳和负载选择WebSocket URL
+        String wsUrl = serverNodeService.selectWebsocketUrl(macAddress);
+        if (wsUrl == null) {
             log.error("WebSocket地址未配置，请登录智控台，在参数管理找到【server.websocket】配置");
             wsUrl = "ws://xiaozhi.server.com:8000/xiaozhi/v1/";
-            websocket.setUrl(wsUrl);
-        } else {
-            String[] wsUrls = wsUrl.split("\\;");
-            if (wsUrls.length > 0) {
-                // 随机选择一个WebSocket URL
-                websocket.setUrl(wsUrls[RandomUtil.randomInt(0, wsUrls.length)]);
-            } else {
-                log.error("WebSocket地址未配置，请登录智控台，在参数管理找到【server.websocket】配置");
-                websocket.setUrl("ws://xiaozhi.server.com:8000/xiaozhi/v1/");
-            }
         }
+        websocket.setUrl(wsUrl);
 
         response.setWebsocket(websocket);
 
@@ -199,12 +193,10 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         }
 
         if (deviceById != null) {
-            // 如果设备存在，则异步更新上次连接时间和版本信息
+            // 如果设备存在，则更新上次连接时间和版本信息
             String appVersion = deviceReport.getApplication() != null ? deviceReport.getApplication().getVersion()
                     : null;
-            // 通过Spring代理调用异步方法
-            ((DeviceServiceImpl) AopContext.currentProxy()).updateDeviceConnectionInfo(deviceById.getAgentId(),
-                    deviceById.getId(), appVersion);
+            updateDeviceConnectionInfo(deviceById.getAgentId(), deviceById.getId(), appVersion);
         } else {
             // 如果设备不存在，则生成激活码
             DeviceReportRespDTO.Activation code = buildActivation(macAddress, deviceReport);
@@ -227,7 +219,14 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         UpdateWrapper<DeviceEntity> wrapper = new UpdateWrapper<>();
         wrapper.eq("user_id", userId);
         wrapper.eq("id", deviceId);
+        DeviceEntity device = baseDao.selectOne(wrapper);
+        if (device == null) {
+            return;
+        }
         baseDao.delete(wrapper);
+        deviceCache.evict(device.getMacAddress());
+        configChangePublisher.deviceChanged(device.getMacAddress(), device.getAgentId(),
+                ConfigChangeEvent.ACTION_UNBIND);
     }
 
     @Override
@@ -235,6 +234,7 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         UpdateWrapper<DeviceEntity> wrapper = new UpdateWrapper<>();
         wrapper.eq("user_id", userId);
         baseDao.delete(wrapper);
+        deviceCache.evictAll();
     }
 
     @Override
@@ -249,10 +249,14 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         UpdateWrapper<DeviceEntity> wrapper = new UpdateWrapper<>();
         wrapper.eq("agent_id", agentId);
         baseDao.delete(wrapper);
+        deviceCache.evictAll();
     }
 
     @Override
     public PageData<UserShowDeviceListVO> page(DevicePageUserDTO dto) {
+        if (PageCursor.isCursorMode(dto.getCursor())) {
+            return pageByCursor(dto);
+        }
         Map<String, Object> params = new HashMap<String, Object>();
         params.put(Constant.PAGE, dto.getPage());
         params.put(Constant.LIMIT, dto.getLimit());
@@ -262,8 +266,30 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
                 new QueryWrapper<DeviceEntity>()
                         // 必须设备关键词查找
                         .like(StringUtils.isNotBlank(dto.getKeywords()), "alias", dto.getKeywords()));
+        List<UserShowDeviceListVO> list = toDeviceListVO(page.getRecords());
+        // 计算页数
+        return new PageData<>(list, page.getTotal());
+    }
+
+    /**
+     * 按 (mac_address, id) 游标分页
+     */
+    private PageData<UserShowDeviceListVO> pageByCursor(DevicePageUserDTO dto) {
+        int limit = PageCursor.parseLimit(dto.getLimit());
+        QueryWrapper<DeviceEntity> wrapper = new QueryWrapper<DeviceEntity>()
+                .like(StringUtils.isNotBlank(dto.getKeywords()), "alias", dto.getKeywords());
+        long total = Boolean.TRUE.equals(dto.getWithTotal()) ? baseDao.selectCount(wrapper) : -1;
+
+        PageCursor.apply(wrapper, PageCursor.decode(dto.getCursor()), "mac_address", "id", true, limit,
+                value -> value, value -> value);
+        List<DeviceEntity> devices = baseDao.selectList(wrapper);
+        String nextCursor = PageCursor.next(devices, limit, DeviceEntity::getMacAddress, DeviceEntity::getId);
+        return new PageData<>(toDeviceListVO(devices), total, nextCursor);
+    }
+
+    private List<UserShowDeviceListVO> toDeviceListVO(List<DeviceEntity> devices) {
         // 循环处理page获取回来的数据，返回需要的字段
-        List<UserShowDeviceListVO> list = page.getRecords().stream().map(device -> {
+        return devices.stream().map(device -> {
             UserShowDeviceListVO vo = ConvertUtils.sourceToTarget(device, UserShowDeviceListVO.class);
             // 把最后修改的时间，改为简短描述的时间
             vo.setRecentChatTime(DateUtils.getShortTime(device.getUpdateDate()));
@@ -272,8 +298,6 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
             vo.setDeviceType(device.getBoard());
             return vo;
         }).toList();
-        // 计算页数
-        return new PageData<>(list, page.getTotal());
     }
 
     @Override
@@ -281,9 +305,27 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         if (StringUtils.isBlank(macAddress)) {
             return null;
         }
-        QueryWrapper<DeviceEntity> wrapper = new QueryWrapper<>();
-        wrapper.eq("mac_address", macAddress);
-        return baseDao.selectOne(wrapper);
+        return deviceCache.get(macAddress, mac -> {
+            QueryWrapper<DeviceEntity> wrapper = new QueryWrapper<>();
+            wrapper.eq("mac_address", mac);
+            return baseDao.selectOne(wrapper);
+        });
+    }
+
+    @Override
+    public Map<String, DeviceEntity> getDevicesByMacAddresses(Collection<String> macAddresses) {
+        if (macAddresses == null || macAddresses.isEmpty()) {
+            return new HashMap<>();
+        }
+        return deviceCache.getAll(macAddresses, macs -> baseDao.selectList(
+                new QueryWrapper<DeviceEntity>().in("mac_address", macs)));
+    }
+
+    @Override
+    public boolean updateById(DeviceEntity entity) {
+        boolean updated = super.updateById(entity);
+        deviceCache.evict(entity.getMacAddress());
+        return updated;
     }
 
     private DeviceReportRespDTO.ServerTime buildServerTime() {
@@ -369,7 +411,7 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         return code;
     }
 
-    private DeviceReportRespDTO.Firmware buildFirmwareInfo(String type, String currentVersion) {
+    private DeviceReportRespDTO.Firmware buildFirmwareInfo(String type, String currentVersion, String macAddress) {
         if (StringUtils.isBlank(type)) {
             return null;
         }
@@ -384,6 +426,13 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         if (ota != null) {
             // 如果设备没有版本信息，或者OTA版本比设备版本新，则返回下载地址
             if (compareVersions(ota.getVersion(), currentVersion) > 0) {
+                // 分批发布或下载限流时暂不升级，设备下次检查时重试
+                String uuid = UUID.randomUUID().toString();
+                if (!otaRolloutService.tryAdmit(ota, macAddress, uuid)) {
+                    firmware.setVersion(currentVersion);
+                    firmware.setUrl(Constant.INVALID_FIRMWARE_URL);
+                    return firmware;
+                }
                 String otaUrl = sysParamsService.getValue(Constant.SERVER_OTA, true);
                 if (StringUtils.isBlank(otaUrl) || otaUrl.equals("null")) {
                     log.error("OTA地址未配置，请登录智控台，在参数管理找到【server.ota】配置");
@@ -394,7 +443,6 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
                     otaUrl = request.getRequestURL().toString();
                 }
                 // 将URL中的/ota/替换为/otaMag/download/
-                String uuid = UUID.randomUUID().toString();
                 redisUtils.set(RedisKeys.getOtaIdKey(uuid), ota.getId());
                 downloadUrl = otaUrl.replace("/ota/", "/otaMag/download/") + uuid;
             }
@@ -458,6 +506,8 @@ public class DeviceServiceImpl extends BaseServiceImpl<DeviceDao, DeviceEntity>
         entity.setUpdater(userId);
         entity.setAutoUpdate(1);
         baseDao.insert(entity);
+        deviceCache.evict(dto.getMacAddress());
+        configChangePublisher.deviceChanged(dto.getMacAddress(), dto.getAgentId(), ConfigChangeEvent.ACTION_BIND);
     }
 
     /**
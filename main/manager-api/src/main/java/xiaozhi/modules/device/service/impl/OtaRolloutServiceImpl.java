@@ -0,0 +1,127 @@
+package xiaozhi.modules.device.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.modules.device.entity.OtaEntity;
+import xiaozhi.modules.device.service.OtaRolloutService;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
+
+/**
+ * 固件分批发布与下载准入
+ * <p>
+ * 发布新固件后，所有设备在下一次OTA检查时都会拿到下载地址并同时开始下载。这里按以下规则逐步放开：
+ * <ul>
+ * <li>分批：按MAC地址和固件ID的哈希把设备分到0-99的桶中，桶号小于当前放量比例的设备才可升级。
+ * 放量比例从首批比例开始，每隔固定分钟数自动增加，直到100%。固件修改后重新开始计算</li>
+ * <li>并发上限：下发下载地址时以下载ID占用名额，下载结束（完成或失败）时归还，每个固件同时下载的设备数不超过上限。
+ * 名额带有租约，设备拿到地址后未下载或节点崩溃时，租约到期后自动释放</li>
+ * <li>令牌桶：限制每个固件每秒下发的新下载地址数</li>
+ * </ul>
+ * 后两项通过Redis脚本在所有节点间原子判断；Redis异常时不做限制，避免影响正常升级。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OtaRolloutServiceImpl implements OtaRolloutService {
+    /**
+     * 下载名额的租约时长（毫秒），只作为未下载或下载中途节点崩溃时的兜底，正常下载结束时立即归还
+     */
+    private static final long DOWNLOAD_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final String ADMIT_SCRIPT = "lua/otaAdmit.lua";
+    private static final String RELEASE_SCRIPT = "lua/otaRelease.lua";
+
+    private final RedisUtils redisUtils;
+    private final SysParamsSnapshot sysParamsSnapshot;
+
+    @Override
+    public boolean tryAdmit(OtaEntity ota, String macAddress, String downloadId) {
+        if (StringUtils.isBlank(macAddress)) {
+            return true;
+        }
+        if (cohortOf(ota.getId(), macAddress) >= currentPercent(ota)) {
+            return false;
+        }
+
+        int maxActive = Math.max(0, sysParamsSnapshot.getInt(Constant.SERVER_OTA_MAX_ACTIVE_DOWNLOADS, 0));
+        int rate = Math.max(0, sysParamsSnapshot.getInt(Constant.SERVER_OTA_DOWNLOAD_RATE, 0));
+        if (maxActive == 0 && rate == 0) {
+            return true;
+        }
+        try {
+            Long admitted = redisUtils.executeScript(ADMIT_SCRIPT, Long.class,
+                    List.of(RedisKeys.getOtaActiveDownloadsKey(ota.getId()),
+                            RedisKeys.getOtaDownloadBucketKey(ota.getId()),
+                            RedisKeys.getOtaDeviceDownloadKey(ota.getId())),
+                    normalize(macAddress), downloadId, System.currentTimeMillis(), DOWNLOAD_LEASE_MILLIS, maxActive,
+                    rate);
+            return admitted != null && admitted == 1L;
+        } catch (Exception e) {
+            log.error("OTA下载准入判断失败，本次不做限制: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    @Override
+    public void release(String otaId, String downloadId) {
+        if (StringUtils.isBlank(otaId) || StringUtils.isBlank(downloadId)) {
+            return;
+        }
+        try {
+            redisUtils.executeScript(RELEASE_SCRIPT, Long.class,
+                    List.of(RedisKeys.getOtaActiveDownloadsKey(otaId)), downloadId);
+        } catch (Exception e) {
+            // 归还失败时由租约到期兜底
+            log.error("归还OTA下载名额失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 当前放量比例（0-100）
+     */
+    private int currentPercent(OtaEntity ota) {
+        int initial = clampPercent(sysParamsSnapshot.getInt(Constant.SERVER_OTA_ROLLOUT_INITIAL_PERCENT, 100));
+        if (initial >= 100) {
+            return 100;
+        }
+        Date start = ota.getUpdateDate() != null ? ota.getUpdateDate() : ota.getCreateDate();
+        if (start == null) {
+            return 100;
+        }
+        int step = clampPercent(sysParamsSnapshot.getInt(Constant.SERVER_OTA_ROLLOUT_STEP_PERCENT, 10));
+        int stepMinutes = Math.max(1, sysParamsSnapshot.getInt(Constant.SERVER_OTA_ROLLOUT_STEP_MINUTES, 10));
+        long elapsedMinutes = Math.max(0,
+                TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - start.getTime()));
+        long percent = initial + (long) step * (elapsedMinutes / stepMinutes);
+        return (int) Math.min(100, percent);
+    }
+
+    /**
+     * 设备所在的桶（0-99）。哈希中带上固件ID，每次发布的首批设备不同
+     */
+    private static int cohortOf(String otaId, String macAddress) {
+        CRC32 crc = new CRC32();
+        crc.update((normalize(macAddress) + ":" + otaId).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % 100);
+    }
+
+    private static int clampPercent(int percent) {
+        return Math.min(100, Math.max(0, percent));
+    }
+
+    private static String normalize(String macAddress) {
+        return macAddress.toLowerCase(Locale.ROOT);
+    }
+}
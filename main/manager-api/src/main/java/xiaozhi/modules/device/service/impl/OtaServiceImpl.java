@@ -1,7 +1,19 @@
 package xiaozhi.modules.device.service.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 
@@ -11,17 +23,32 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 
 import io.micrometer.common.util.StringUtils;
+import lombok.AllArgsConstructor;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.page.PageCursor;
 import xiaozhi.common.page.PageData;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.modules.device.dao.OtaDao;
 import xiaozhi.modules.device.entity.OtaEntity;
 import xiaozhi.modules.device.service.OtaService;
 
 @Service
+@AllArgsConstructor
 public class OtaServiceImpl extends BaseServiceImpl<OtaDao, OtaEntity> implements OtaService {
+    /**
+     * 固件上传目录
+     */
+    private static final String UPLOAD_DIR = "uploadfile";
+
+    private final RedisUtils redisUtils;
 
     @Override
     public PageData<OtaEntity> page(Map<String, Object> params) {
+        if (PageCursor.isCursorMode(params)) {
+            return pageByCursor(params);
+        }
         IPage<OtaEntity> page = baseDao.selectPage(
                 getPage(params, "update_date", true),
                 getWrapper(params));
@@ -29,6 +56,21 @@ public class OtaServiceImpl extends BaseServiceImpl<OtaDao, OtaEntity> implement
         return new PageData<>(page.getRecords(), page.getTotal());
     }
 
+    /**
+     * 按 (create_date, id) 游标分页，新上传的固件在前
+     */
+    private PageData<OtaEntity> pageByCursor(Map<String, Object> params) {
+        int limit = PageCursor.parseLimit(params.get(Constant.LIMIT));
+        QueryWrapper<OtaEntity> wrapper = getWrapper(params);
+        long total = PageCursor.isWithTotal(params) ? baseDao.selectCount(wrapper) : -1;
+
+        PageCursor.apply(wrapper, PageCursor.decode(params.get(Constant.CURSOR)), "create_date", "id", false, limit,
+                PageCursor::parseDate, value -> value);
+        List<OtaEntity> list = baseDao.selectList(wrapper);
+        String nextCursor = PageCursor.next(list, limit, OtaEntity::getCreateDate, OtaEntity::getId);
+        return new PageData<>(list, total, nextCursor);
+    }
+
     private QueryWrapper<OtaEntity> getWrapper(Map<String, Object> params) {
         String firmwareName = (String) params.get("firmwareName");
 
@@ -50,6 +92,7 @@ public class OtaServiceImpl extends BaseServiceImpl<OtaDao, OtaEntity> implement
             throw new RuntimeException("已存在相同类型和版本的固件，请修改后重试");
         }
 
+        fillFileInfo(entity, baseDao.selectById(entity.getId()));
         entity.setUpdateDate(new Date());
         baseDao.updateById(entity);
     }
@@ -65,8 +108,9 @@ public class OtaServiceImpl extends BaseServiceImpl<OtaDao, OtaEntity> implement
                 .eq("type", entity.getType());
         // 同类固件只保留最新的一条
         List<OtaEntity> otaList = baseDao.selectList(queryWrapper);
-        if (otaList != null && otaList.size() > 0) {
-            OtaEntity otaBefore = otaList.getFirst();
+        OtaEntity otaBefore = otaList != null && otaList.size() > 0 ? otaList.getFirst() : null;
+        fillFileInfo(entity, otaBefore);
+        if (otaBefore != null) {
             entity.setId(otaBefore.getId());
             baseDao.updateById(entity);
             return true;
@@ -82,4 +126,122 @@ public class OtaServiceImpl extends BaseServiceImpl<OtaDao, OtaEntity> implement
                 .last("LIMIT 1");
         return baseDao.selectOne(wrapper);
     }
+
+    @Override
+    public String storeFirmware(InputStream in, String extension) throws IOException {
+        Path uploadPath = Paths.get(UPLOAD_DIR);
+        Files.createDirectories(uploadPath);
+
+        // 写入临时文件的同时计算MD5和SHA-256，只读取一遍且不把整个文件放入内存
+        Path tempPath = Files.createTempFile(uploadPath, "upload-", ".tmp");
+        try {
+            Map<String, Object> fileInfo;
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                fileInfo = digest(in, out);
+            }
+
+            // 以MD5命名，文件已存在说明内容相同，直接使用已有文件
+            Path filePath = uploadPath.resolve(fileInfo.get("md5") + extension);
+            if (Files.exists(filePath)) {
+                Files.deleteIfExists(tempPath);
+            } else {
+                // 同目录下原子重命名，下载方不会读到写了一半的文件
+                Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            String firmwarePath = filePath.toString();
+            redisUtils.hMSet(RedisKeys.getOtaUploadKey(firmwarePath), fileInfo, RedisUtils.DEFAULT_EXPIRE);
+            return firmwarePath;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+    }
+
+    /**
+     * 填充固件文件信息（MD5、SHA-256、大小、ETag），只使用服务端计算的值，忽略客户端提交的哈希。
+     * 优先使用上传时缓存的信息；缓存已过期时，固件路径未变则沿用已保存的信息，否则重新读取文件计算
+     *
+     * @param entity   待保存的固件信息
+     * @param existing 数据库中已有的记录，可为null
+     */
+    private void fillFileInfo(OtaEntity entity, OtaEntity existing) {
+        entity.setMd5(null);
+        entity.setSha256(null);
+        entity.setEtag(null);
+        String firmwarePath = entity.getFirmwarePath();
+        if (StringUtils.isBlank(firmwarePath)) {
+            // 未修改固件文件，updateById不更新null字段，保留已保存的信息
+            return;
+        }
+        Map<String, Object> fileInfo = redisUtils.hGetAll(RedisKeys.getOtaUploadKey(firmwarePath));
+        if (fileInfo == null || fileInfo.isEmpty()) {
+            if (existing != null && firmwarePath.equals(existing.getFirmwarePath())
+                    && StringUtils.isNotBlank(existing.getSha256())) {
+                entity.setMd5(existing.getMd5());
+                entity.setSha256(existing.getSha256());
+                entity.setEtag(existing.getEtag());
+                entity.setSize(existing.getSize());
+                return;
+            }
+            fileInfo = digestFile(firmwarePath);
+        }
+        if (fileInfo == null) {
+            // 文件不存在，清空旧的文件信息，下载时按文件属性生成ETag；updateById不更新null字段，用空字符串覆盖旧值
+            entity.setMd5("");
+            entity.setSha256("");
+            entity.setEtag("");
+            return;
+        }
+        entity.setMd5((String) fileInfo.get("md5"));
+        entity.setSha256((String) fileInfo.get("sha256"));
+        entity.setEtag((String) fileInfo.get("etag"));
+        if (fileInfo.get("size") instanceof Number size) {
+            entity.setSize(size.longValue());
+        }
+    }
+
+    /**
+     * 读取固件文件计算文件信息
+     *
+     * @return 文件信息，文件不存在时返回null
+     */
+    private static Map<String, Object> digestFile(String firmwarePath) {
+        Path path = Paths.get(firmwarePath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return digest(in, OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new RuntimeException("读取固件文件失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 读取一遍输入流，内容写入out，同时计算MD5、SHA-256和大小
+     */
+    private static Map<String, Object> digest(InputStream in, OutputStream out) throws IOException {
+        MessageDigest md5 = newDigest("MD5");
+        MessageDigest sha256 = newDigest("SHA-256");
+        long size;
+        try (InputStream digestIn = new DigestInputStream(new DigestInputStream(in, md5), sha256)) {
+            size = digestIn.transferTo(out);
+        }
+        String sha256Hex = HexFormat.of().formatHex(sha256.digest());
+        Map<String, Object> fileInfo = new HashMap<>();
+        fileInfo.put("md5", HexFormat.of().formatHex(md5.digest()));
+        fileInfo.put("sha256", sha256Hex);
+        fileInfo.put("size", size);
+        fileInfo.put("etag", "\"" + sha256Hex + "\"");
+        return fileInfo;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package xiaozhi.modules.model.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import xiaozhi.common.page.PageData;
 import xiaozhi.common.service.BaseService;
@@ -41,6 +43,14 @@ public interface ModelConfigService extends BaseService<ModelConfigEntity> {
      */
     ModelConfigEntity getModelById(String id, boolean isCache);
 
+    /**
+     * 根据ID批量获取模型配置，经过模型配置缓存，未命中的一次查询
+     * 
+     * @param ids 模型ID
+     * @return 模型ID与模型配置实体（副本），不存在的模型不返回
+     */
+    Map<String, ModelConfigEntity> getModelsByIds(Collection<String> ids);
+
     /**
      * 设置默认模型
      * 
@@ -1,5 +1,6 @@
 package xiaozhi.modules.model.service.impl;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,16 +14,19 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.json.JSONObject;
 import lombok.AllArgsConstructor;
+import xiaozhi.common.cache.TwoLevelCacheManager;
+import xiaozhi.common.cache.TwoLevelCacheType;
 import xiaozhi.common.constant.Constant;
 import xiaozhi.common.exception.RenException;
 import xiaozhi.common.page.PageData;
-import xiaozhi.common.redis.RedisKeys;
-import xiaozhi.common.redis.RedisUtils;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.utils.ConvertUtils;
 import xiaozhi.modules.agent.dao.AgentDao;
 import xiaozhi.modules.agent.entity.AgentEntity;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
 import xiaozhi.modules.model.dao.ModelConfigDao;
 import xiaozhi.modules.model.dto.LlmModelBasicInfoDTO;
 import xiaozhi.modules.model.dto.ModelBasicInfoDTO;
@@ -40,8 +44,10 @@ public class ModelConfigServiceImpl extends BaseServiceImpl<ModelConfigDao, Mode
 
     private final ModelConfigDao modelConfigDao;
     private final ModelProviderService modelProviderService;
-    private final RedisUtils redisUtils;
+    private final TwoLevelCacheManager twoLevelCacheManager;
     private final AgentDao agentDao;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
+    private final ConfigChangePublisher configChangePublisher;
 
     @Override
     public List<ModelBasicInfoDTO> getModelCodeList(String modelType, String modelName) {
@@ -137,7 +143,11 @@ public class ModelConfigServiceImpl extends BaseServiceImpl<ModelConfigDao, Mode
         modelConfigEntity.setModelType(modelType);
         modelConfigDao.updateById(modelConfigEntity);
         // 清除缓存
-        redisUtils.delete(RedisKeys.getModelConfigById(modelConfigEntity.getId()));
+        twoLevelCacheManager.evict(TwoLevelCacheType.MODEL_CONFIG, id);
+        twoLevelCacheManager.evict(TwoLevelCacheType.MODEL_NAME, id);
+        // 模型可能被多个智能体（及意图识别、记忆的附加LLM）引用，全部快照失效
+        agentConfigSnapshotCache.evictAll();
+        configChangePublisher.modelChanged(id);
         return ConvertUtils.sourceToTarget(modelConfigEntity, ModelConfigDTO.class);
     }
 
@@ -153,6 +163,8 @@ public class ModelConfigServiceImpl extends BaseServiceImpl<ModelConfigDao, Mode
         checkIntentConfigReference(id);
 
         modelConfigDao.deleteById(id);
+        twoLevelCacheManager.evict(TwoLevelCacheType.MODEL_CONFIG, id);
+        twoLevelCacheManager.evict(TwoLevelCacheType.MODEL_NAME, id);
     }
 
     /**
@@ -205,44 +217,49 @@ public class ModelConfigServiceImpl extends BaseServiceImpl<ModelConfigDao, Mode
 
     @Override
     public String getModelNameById(String id) {
+        return twoLevelCacheManager.get(TwoLevelCacheType.MODEL_NAME, id, modelId -> {
+            ModelConfigEntity entity = modelConfigDao.selectById(modelId);
+            return entity == null ? null : StringUtils.defaultIfBlank(entity.getModelName(), null);
+        });
+    }
+
+    @Override
+    public ModelConfigEntity getModelById(String id, boolean isCache) {
         if (StringUtils.isBlank(id)) {
             return null;
         }
+        ModelConfigEntity entity = isCache
+                ? twoLevelCacheManager.get(TwoLevelCacheType.MODEL_CONFIG, id, modelConfigDao::selectById)
+                : twoLevelCacheManager.load(TwoLevelCacheType.MODEL_CONFIG, id, modelConfigDao::selectById);
+        // 缓存中的对象由所有调用方共享，调用方会修改配置，返回副本
+        return copyModel(entity);
+    }
 
-        String cachedName = (String) redisUtils.get(RedisKeys.getModelNameById(id));
-
-        if (StringUtils.isNotBlank(cachedName)) {
-            return cachedName;
-        }
-
-        ModelConfigEntity entity = modelConfigDao.selectById(id);
-        if (entity != null) {
-            String modelName = entity.getModelName();
-            if (StringUtils.isNotBlank(modelName)) {
-                redisUtils.set(RedisKeys.getModelNameById(id), modelName);
-            }
-            return modelName;
+    @Override
+    public Map<String, ModelConfigEntity> getModelsByIds(Collection<String> ids) {
+        Map<String, ModelConfigEntity> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
         }
-
-        return null;
+        Map<String, ModelConfigEntity> models = twoLevelCacheManager.getAll(TwoLevelCacheType.MODEL_CONFIG, ids,
+                missingIds -> modelConfigDao.selectBatchIds(missingIds).stream()
+                        .collect(Collectors.toMap(ModelConfigEntity::getId, model -> model)));
+        // 缓存中的对象由所有调用方共享，调用方会修改配置，返回副本
+        models.forEach((id, model) -> result.put(id, copyModel(model)));
+        return result;
     }
 
-    @Override
-    public ModelConfigEntity getModelById(String id, boolean isCache) {
-        if (StringUtils.isBlank(id)) {
+    private static ModelConfigEntity copyModel(ModelConfigEntity model) {
+        if (model == null) {
             return null;
         }
-        if (isCache) {
-            ModelConfigEntity cachedConfig = (ModelConfigEntity) redisUtils.get(RedisKeys.getModelConfigById(id));
-            if (cachedConfig != null) {
-                return ConvertUtils.sourceToTarget(cachedConfig, ModelConfigEntity.class);
-            }
-        }
-        ModelConfigEntity entity = modelConfigDao.selectById(id);
-        if (entity != null) {
-            redisUtils.set(RedisKeys.getModelConfigById(id), entity);
+        ModelConfigEntity copy = ConvertUtils.sourceToTarget(model, ModelConfigEntity.class);
+        if (model.getConfigJson() != null) {
+            JSONObject configJson = new JSONObject();
+            configJson.putAll(model.getConfigJson());
+            copy.setConfigJson(configJson);
         }
-        return entity;
+        return copy;
     }
 
     @Override
@@ -21,6 +21,7 @@ import xiaozhi.common.page.PageData;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.user.UserDetail;
 import xiaozhi.common.utils.ConvertUtils;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
 import xiaozhi.modules.model.dao.ModelProviderDao;
 import xiaozhi.modules.model.dto.ModelProviderDTO;
 import xiaozhi.modules.model.entity.ModelProviderEntity;
@@ -33,6 +34,7 @@ public class ModelProviderServiceImpl extends BaseServiceImpl<ModelProviderDao,
         implements ModelProviderService {
 
     private final ModelProviderDao modelProviderDao;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
 
     @Override
     public List<ModelProviderDTO> getPluginList() {
@@ -124,6 +126,8 @@ public class ModelProviderServiceImpl extends BaseServiceImpl<ModelProviderDao,
                 .updateById(ConvertUtils.sourceToTarget(modelProviderDTO, ModelProviderEntity.class)) == 0) {
             throw new RenException("修改数据失败");
         }
+        // 插件的供应器编码会写入智能体配置快照
+        agentConfigSnapshotCache.evictAll();
         return ConvertUtils.sourceToTarget(modelProviderDTO, ModelProviderDTO.class);
     }
 
@@ -0,0 +1,165 @@
+package xiaozhi.modules.sys.cache;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.Getter;
+import xiaozhi.common.utils.JsonUtils;
+
+/**
+ * 解析后的系统参数
+ * <p>
+ * 参数值变化时解析一次，保存各种类型的形式，读取时不再拆分、转换。所有字段只读，调用方不应修改返回的集合和JSON。
+ */
+@Getter
+public class SysParam {
+    private final String paramCode;
+    private final String paramValue;
+    private final String valueType;
+    private final Integer paramType;
+    /**
+     * 参数编码按.拆分后的路径，用于构建服务端配置
+     */
+    private final List<String> path;
+    /**
+     * 按valueType转换后的值，用于构建服务端配置
+     */
+    private final Object configValue;
+    /**
+     * 是否未配置（空值或"null"）
+     */
+    private final boolean blank;
+    /**
+     * 数值形式，无法转换时为null
+     */
+    private final Double number;
+    /**
+     * 布尔形式，值不是true/false时为null
+     */
+    private final Boolean bool;
+    /**
+     * 按;拆分后的非空项
+     */
+    private final List<String> list;
+    /**
+     * JSON形式，仅json类型参数且解析成功时不为null
+     */
+    private final JsonNode json;
+    /**
+     * 按;拆分后的URI（如多个WebSocket地址），无效项忽略
+     */
+    private final List<URI> uris;
+
+    public SysParam(String paramCode, String paramValue, String valueType, Integer paramType) {
+        this.paramCode = paramCode;
+        this.paramValue = paramValue;
+        this.valueType = valueType == null ? "string" : valueType.toLowerCase(Locale.ROOT);
+        this.paramType = paramType;
+        this.path = List.of(paramCode.split("\\."));
+        this.blank = StringUtils.isBlank(paramValue) || "null".equals(paramValue);
+        this.number = blank ? null : parseNumber(paramValue);
+        this.bool = blank ? null : parseBoolean(paramValue);
+        this.list = blank ? List.of() : splitList(paramValue);
+        this.json = blank || !"json".equals(this.valueType) ? null : parseJson(paramValue);
+        this.uris = parseUris(list);
+        this.configValue = buildConfigValue();
+    }
+
+    /**
+     * 参数值、类型是否与数据库中的记录相同，相同时可复用解析结果
+     */
+    public boolean sameAs(String otherValue, String otherValueType, Integer otherParamType) {
+        String otherType = otherValueType == null ? "string" : otherValueType.toLowerCase(Locale.ROOT);
+        return StringUtils.equals(paramValue, otherValue) && valueType.equals(otherType)
+                && Objects.equals(paramType, otherParamType);
+    }
+
+    private Object buildConfigValue() {
+        switch (valueType) {
+            case "number":
+                if (number == null) {
+                    return paramValue;
+                }
+                // 如果数值是整数形式，则转换为Integer
+                double doubleValue = number;
+                return doubleValue == (int) doubleValue ? Integer.valueOf((int) doubleValue) : number;
+            case "boolean":
+                return Boolean.parseBoolean(paramValue);
+            case "array":
+                return StringUtils.isBlank(paramValue) ? List.of() : splitList(paramValue);
+            case "json":
+                try {
+                    return JsonUtils.parseObject(paramValue, Object.class);
+                } catch (Exception e) {
+                    return paramValue;
+                }
+            default:
+                return paramValue;
+        }
+    }
+
+    private static Double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        String trimmed = value.trim();
+        if ("true".equalsIgnoreCase(trimmed)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(trimmed)) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(";")) {
+            if (StringUtils.isNotBlank(item)) {
+                items.add(item.trim());
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    private static JsonNode parseJson(String value) {
+        try {
+            return JsonUtils.parseObject(value, JsonNode.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static List<URI> parseUris(List<String> items) {
+        List<URI> result = new ArrayList<>();
+        for (String item : items) {
+            if (!item.contains("://")) {
+                continue;
+            }
+            try {
+                result.add(URI.create(item));
+            } catch (IllegalArgumentException ignored) {
+                // 无效地址忽略
+            }
+        }
+        return result.isEmpty() ? List.of() : Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public String toString() {
+        return paramCode + "=" + paramValue;
+    }
+}
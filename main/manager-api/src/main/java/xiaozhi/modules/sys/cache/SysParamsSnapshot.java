@@ -0,0 +1,304 @@
+package xiaozhi.modules.sys.cache;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.utils.TransactionUtils;
+import xiaozhi.modules.config.event.ConfigChangeEvent;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
+import xiaozhi.modules.sys.dao.SysParamsDao;
+import xiaozhi.modules.sys.entity.SysParamsEntity;
+
+/**
+ * 系统参数本地快照
+ * <p>
+ * 一次OTA检查会读取多个系统参数，原来每次都要访问Redis，部分调用甚至直接查库。
+ * 这里在进程内保存全部参数的不可变快照，读取只是一次map查找：
+ * <ul>
+ * <li>参数新增、修改、删除提交后递增Redis中的版本号，并在本节点立即重新加载</li>
+ * <li>其他节点收到参数变更事件后重新加载</li>
+ * <li>各节点定时比对版本号，兜底丢失的变更事件</li>
+ * </ul>
+ * 重新加载时先读版本号再查库，快照中的数据不会比其版本号旧。
+ * 首次使用时才加载（启动时数据库迁移可能尚未完成），加载失败时返回null，由调用方回退到原有查询。
+ * <p>
+ * 参数值在变化时解析为{@link SysParam}（数值、布尔、列表、JSON、URI），值未变的参数沿用上一次的解析结果，
+ * 并提供按类型读取的方法；组件可以监听指定参数的变化，快照替换后在重新加载的线程中回调。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SysParamsSnapshot {
+    /**
+     * 版本号比对间隔（秒）
+     */
+    private static final long POLL_SECONDS = 10;
+
+    private final SysParamsDao sysParamsDao;
+    private final RedisUtils redisUtils;
+    private final ConfigChangePublisher configChangePublisher;
+
+    private final Object reloadLock = new Object();
+    private final Map<String, List<Consumer<SysParam>>> listeners = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sys-params-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::refreshIfStale, POLL_SECONDS, POLL_SECONDS, TimeUnit.SECONDS);
+        configChangePublisher.addListener(event -> {
+            if (ConfigChangeEvent.TYPE_PARAM.equals(event.getType())) {
+                executor.execute(this::refreshIfStale);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 获取全部参数
+     *
+     * @return 参数编码与参数值（只读），快照不可用时返回null
+     */
+    public Map<String, String> getValues() {
+        Snapshot current = current();
+        return current == null ? null : current.values;
+    }
+
+    /**
+     * 获取解析后的参数
+     *
+     * @param paramCode 参数编码
+     * @return 参数，不存在或快照不可用时返回null
+     */
+    public SysParam get(String paramCode) {
+        Snapshot current = current();
+        return current == null ? null : current.params.get(paramCode);
+    }
+
+    /**
+     * 获取全部解析后的参数
+     *
+     * @return 参数列表，快照不可用时返回null
+     */
+    public Collection<SysParam> getAll() {
+        Snapshot current = current();
+        return current == null ? null : current.params.values();
+    }
+
+    /**
+     * 获取字符串参数
+     *
+     * @return 参数值，未配置（空值或"null"）时返回null
+     */
+    public String getString(String paramCode) {
+        SysParam param = get(paramCode);
+        return param == null || param.isBlank() ? null : param.getParamValue();
+    }
+
+    public int getInt(String paramCode, int defaultValue) {
+        SysParam param = get(paramCode);
+        return param == null || param.getNumber() == null ? defaultValue : param.getNumber().intValue();
+    }
+
+    public double getDouble(String paramCode, double defaultValue) {
+        SysParam param = get(paramCode);
+        return param == null || param.getNumber() == null ? defaultValue : param.getNumber();
+    }
+
+    public boolean getBoolean(String paramCode, boolean defaultValue) {
+        SysParam param = get(paramCode);
+        return param == null || param.getBool() == null ? defaultValue : param.getBool();
+    }
+
+    /**
+     * 获取按;分隔的列表参数
+     *
+     * @return 非空项（只读），未配置时返回空列表
+     */
+    public List<String> getList(String paramCode) {
+        SysParam param = get(paramCode);
+        return param == null ? List.of() : param.getList();
+    }
+
+    /**
+     * 获取json类型参数
+     *
+     * @return JSON（只读），未配置或解析失败时返回null
+     */
+    public JsonNode getJson(String paramCode) {
+        SysParam param = get(paramCode);
+        return param == null ? null : param.getJson();
+    }
+
+    /**
+     * 获取按;分隔的地址参数
+     *
+     * @return 有效的URI（只读），未配置时返回空列表
+     */
+    public List<URI> getUris(String paramCode) {
+        SysParam param = get(paramCode);
+        return param == null ? List.of() : param.getUris();
+    }
+
+    /**
+     * 监听指定参数的变化，参数删除时回调null。回调中不应执行耗时操作
+     *
+     * @param paramCode 参数编码
+     * @param listener  监听
+     */
+    public void addListener(String paramCode, Consumer<SysParam> listener) {
+        listeners.computeIfAbsent(paramCode, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * 参数变更后调用，事务提交后递增版本号并重新加载本节点快照
+     */
+    public void bumpVersion() {
+        TransactionUtils.runAfterCommit(() -> {
+            try {
+                redisUtils.increment(RedisKeys.getSysParamsVersionKey());
+            } catch (Exception e) {
+                // 其他节点仍会通过参数变更事件重新加载
+                log.error("递增系统参数版本号失败", e);
+            }
+            reload();
+        });
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        return current != null ? current : reload();
+    }
+
+    private void refreshIfStale() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (currentVersion() != current.version) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.error("检查系统参数版本号失败", e);
+        }
+    }
+
+    private Snapshot reload() {
+        Snapshot previous;
+        Snapshot loaded;
+        Set<String> changed = new HashSet<>();
+        synchronized (reloadLock) {
+            previous = snapshot;
+            try {
+                long version = currentVersion();
+                Map<String, SysParam> params = new HashMap<>();
+                Map<String, String> values = new HashMap<>();
+                for (SysParamsEntity entity : sysParamsDao.selectList(null)) {
+                    String code = entity.getParamCode();
+                    if (StringUtils.isBlank(code)) {
+                        continue;
+                    }
+                    SysParam old = previous == null ? null : previous.params.get(code);
+                    SysParam param;
+                    if (old != null
+                            && old.sameAs(entity.getParamValue(), entity.getValueType(), entity.getParamType())) {
+                        param = old;
+                    } else {
+                        param = new SysParam(code, entity.getParamValue(), entity.getValueType(),
+                                entity.getParamType());
+                        changed.add(code);
+                    }
+                    params.put(code, param);
+                    values.put(code, entity.getParamValue());
+                }
+                if (previous != null) {
+                    for (String code : previous.params.keySet()) {
+                        if (!params.containsKey(code)) {
+                            changed.add(code);
+                        }
+                    }
+                }
+                loaded = new Snapshot(version, Collections.unmodifiableMap(params),
+                        Collections.unmodifiableMap(values));
+                snapshot = loaded;
+                log.debug("系统参数快照已加载，版本: {}, 参数数: {}, 变化数: {}", version, params.size(), changed.size());
+            } catch (Exception e) {
+                log.error("加载系统参数快照失败", e);
+                return previous;
+            }
+        }
+        // 首次加载不通知
+        if (previous != null) {
+            notifyListeners(loaded, changed);
+        }
+        return loaded;
+    }
+
+    private void notifyListeners(Snapshot loaded, Set<String> changed) {
+        for (String code : changed) {
+            List<Consumer<SysParam>> codeListeners = listeners.get(code);
+            if (codeListeners == null) {
+                continue;
+            }
+            SysParam param = loaded.params.get(code);
+            for (Consumer<SysParam> listener : new ArrayList<>(codeListeners)) {
+                try {
+                    listener.accept(param);
+                } catch (Exception e) {
+                    log.error("系统参数变更监听处理失败: {}", code, e);
+                }
+            }
+        }
+    }
+
+    private long currentVersion() {
+        Object value = redisUtils.get(RedisKeys.getSysParamsVersionKey());
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final Map<String, SysParam> params;
+        private final Map<String, String> values;
+
+        Snapshot(long version, Map<String, SysParam> params, Map<String, String> values) {
+            this.version = version;
+            this.params = params;
+            this.values = values;
+        }
+    }
+}
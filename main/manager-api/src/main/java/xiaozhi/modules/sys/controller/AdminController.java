@@ -18,6 +18,7 @@ import io.swagger.v3.oas.annotations.Parameters;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.AllArgsConstructor;
 import xiaozhi.common.constant.Constant;
+import xiaozhi.common.page.PageCursor;
 import xiaozhi.common.page.PageData;
 import xiaozhi.common.utils.Result;
 import xiaozhi.common.validator.ValidatorUtils;
@@ -48,8 +49,10 @@ public class AdminController {
     @RequiresPermissions("sys:role:superAdmin")
     @Parameters({
             @Parameter(name = "mobile", description = "用户手机号码", required = false),
-            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始", required = true),
+            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始，游标分页时不需要"),
             @Parameter(name = Constant.LIMIT, description = "每页显示记录数", required = true),
+            @Parameter(name = Constant.CURSOR, description = "游标分页的游标，第一页传空值，之后传上一页返回的nextCursor"),
+            @Parameter(name = Constant.WITH_TOTAL, description = "游标分页时是否统计总数"),
     })
     public Result<PageData<AdminPageUserVO>> pageUser(
             @Parameter(hidden = true) @RequestParam Map<String, Object> params) {
@@ -57,6 +60,8 @@ public class AdminController {
         dto.setMobile((String) params.get("mobile"));
         dto.setLimit((String) params.get(Constant.LIMIT));
         dto.setPage((String) params.get(Constant.PAGE));
+        dto.setCursor((String) params.get(Constant.CURSOR));
+        dto.setWithTotal(PageCursor.isWithTotal(params));
         ValidatorUtils.validateEntity(dto);
         PageData<AdminPageUserVO> page = sysUserService.page(dto);
         return new Result<PageData<AdminPageUserVO>>().ok(page);
@@ -93,8 +98,10 @@ public class AdminController {
     @RequiresPermissions("sys:role:superAdmin")
     @Parameters({
             @Parameter(name = "keywords", description = "设备关键词", required = false),
-            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始", required = true),
+            @Parameter(name = Constant.PAGE, description = "当前页码，从1开始，游标分页时不需要"),
             @Parameter(name = Constant.LIMIT, description = "每页显示记录数", required = true),
+            @Parameter(name = Constant.CURSOR, description = "游标分页的游标，第一页传空值，之后传上一页返回的nextCursor"),
+            @Parameter(name = Constant.WITH_TOTAL, description = "游标分页时是否统计总数"),
     })
     public Result<PageData<UserShowDeviceListVO>> pageDevice(
             @Parameter(hidden = true) @RequestParam Map<String, Object> params) {
@@ -102,6 +109,8 @@ public class AdminController {
         dto.setKeywords((String) params.get("keywords"));
         dto.setLimit((String) params.get(Constant.LIMIT));
         dto.setPage((String) params.get(Constant.PAGE));
+        dto.setCursor((String) params.get(Constant.CURSOR));
+        dto.setWithTotal(PageCursor.isWithTotal(params));
         ValidatorUtils.validateEntity(dto);
         PageData<UserShowDeviceListVO> page = deviceService.page(dto);
         return new Result<PageData<UserShowDeviceListVO>>().ok(page);
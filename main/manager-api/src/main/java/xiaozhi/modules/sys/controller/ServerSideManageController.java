@@ -1,35 +1,36 @@
 package xiaozhi.modules.sys.controller;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.socket.WebSocketHttpHeaders;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import xiaozhi.common.annotation.LogOperation;
-import xiaozhi.common.constant.Constant;
 import xiaozhi.common.exception.RenException;
 import xiaozhi.common.utils.Result;
+import xiaozhi.modules.sys.dto.EmitServerBroadcastDTO;
 import xiaozhi.modules.sys.dto.EmitSeverActionDTO;
-import xiaozhi.modules.sys.dto.ServerActionPayloadDTO;
-import xiaozhi.modules.sys.dto.ServerActionResponseDTO;
-import xiaozhi.modules.sys.enums.ServerActionEnum;
-import xiaozhi.modules.sys.service.SysParamsService;
-import xiaozhi.modules.sys.utils.WebSocketClientManager;
+import xiaozhi.modules.sys.service.ServerActionService;
+import xiaozhi.modules.sys.service.ServerNodeService;
+import xiaozhi.modules.sys.service.impl.ServerActionServiceImpl;
+import xiaozhi.modules.sys.utils.WebSocketChannelPool;
+import xiaozhi.modules.sys.vo.ServerActionResultVO;
+import xiaozhi.modules.sys.vo.ServerNodeVO;
 
 /**
  * 服务端管理控制器
@@ -39,23 +40,21 @@ import xiaozhi.modules.sys.utils.WebSocketClientManager;
 @Tag(name = "服务端管理")
 @AllArgsConstructor
 public class ServerSideManageController {
-    private final SysParamsService sysParamsService;
-    private static final ObjectMapper objectMapper;
-    static {
-        objectMapper = new ObjectMapper();
-        // 忽略json字符串中存在，但pojo中不存在对应字段的情况
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    }
+    /**
+     * 广播等待的最长时间（毫秒），需大于单个节点的连接和响应超时之和，超时后返回已完成的部分结果
+     */
+    private static final long BROADCAST_TIMEOUT_MILLIS = TimeUnit.SECONDS
+            .toMillis(ServerActionServiceImpl.ACTION_TIMEOUT_SECONDS + 20);
+
+    private final ServerActionService serverActionService;
+    private final WebSocketChannelPool webSocketChannelPool;
+    private final ServerNodeService serverNodeService;
 
     @Operation(summary = "获取Ws服务端列表")
     @GetMapping("/server-list")
     @RequiresPermissions("sys:role:superAdmin")
     public Result<List<String>> getWsServerList() {
-        String wsText = sysParamsService.getValue(Constant.SERVER_WEBSOCKET, true);
-        if (StringUtils.isBlank(wsText)) {
-            return new Result<List<String>>().ok(Collections.emptyList());
-        }
-        return new Result<List<String>>().ok(Arrays.asList(wsText.split(";")));
+        return new Result<List<String>>().ok(serverActionService.getServerList());
     }
 
     @Operation(summary = "通知python服务端更新配置")
@@ -66,56 +65,101 @@ public class ServerSideManageController {
         if (emitSeverActionDTO.getAction() == null) {
             throw new RenException("无效服务端操作");
         }
-        String wsText = sysParamsService.getValue(Constant.SERVER_WEBSOCKET, true);
-        if (StringUtils.isBlank(wsText)) {
+        List<String> wsList = serverActionService.getServerList();
+        if (wsList.isEmpty()) {
             throw new RenException("未配置服务端WebSocket地址");
         }
         String targetWs = emitSeverActionDTO.getTargetWs();
-        String[] wsList = wsText.split(";");
         // 找到需要发起的
-        if (StringUtils.isBlank(targetWs) || !Arrays.asList(wsList).contains(targetWs)) {
+        if (StringUtils.isBlank(targetWs) || !wsList.contains(targetWs)) {
             throw new RenException("目标WebSocket地址不存在");
         }
-        return new Result<Boolean>().ok(emitServerActionByWs(targetWs, emitSeverActionDTO.getAction()));
+        return new Result<Boolean>().ok(serverActionService.emit(targetWs, emitSeverActionDTO.getAction()));
     }
 
-    private Boolean emitServerActionByWs(String targetWsUri, ServerActionEnum actionEnum) {
-        if (StringUtils.isBlank(targetWsUri) || actionEnum == null) {
-            return false;
-        }
-        String serverSK = sysParamsService.getValue(Constant.SERVER_SECRET, true);
-        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
-        headers.add("device-id", UUID.randomUUID().toString());
-        headers.add("client-id", UUID.randomUUID().toString());
+    @Operation(summary = "通知全部python服务端", description = "并发下发到所有节点，返回每个节点的结果和耗时；超时时返回已完成的部分结果")
+    @PostMapping("/emit-action/broadcast")
+    @LogOperation("通知全部python服务端")
+    @RequiresPermissions("sys:role:superAdmin")
+    public DeferredResult<Result<List<ServerActionResultVO>>> broadcastServerAction(
+            @RequestBody @Valid EmitServerBroadcastDTO dto) {
+        List<String> wsList = getBroadcastTargets();
+        List<CompletableFuture<ServerActionResultVO>> futures = serverActionService.broadcast(wsList,
+                dto.getAction());
+        DeferredResult<Result<List<ServerActionResultVO>>> result = new DeferredResult<>(BROADCAST_TIMEOUT_MILLIS);
+        result.onTimeout(() -> result.setResult(new Result<List<ServerActionResultVO>>()
+                .ok(collectResults(wsList, futures))));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenRun(() -> result.setResult(new Result<List<ServerActionResultVO>>()
+                        .ok(collectResults(wsList, futures))));
+        return result;
+    }
 
-        try (WebSocketClientManager client = new WebSocketClientManager.Builder()
-                .connectTimeout(3, TimeUnit.SECONDS)
-                .maxSessionDuration(120, TimeUnit.SECONDS)
-                .uri(targetWsUri)
-                .headers(headers)
-                .build()) {
-            // 如果连接成功则发送一个json数据包并等待服务端响应
-            client.sendJson(
-                    ServerActionPayloadDTO.build(
-                            actionEnum,
-                            Map.of("secret", serverSK)));
-            // 等待服务端响应并持续监听信息
-            client.listener((jsonText) -> {
-                if (StringUtils.isBlank(jsonText)) {
-                    return false;
-                }
+    @Operation(summary = "通知全部python服务端（流式返回）", description = "SSE，每个节点完成时推送一条result事件，全部完成后推送done事件")
+    @PostMapping(value = "/emit-action/broadcast/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @LogOperation("通知全部python服务端")
+    @RequiresPermissions("sys:role:superAdmin")
+    public SseEmitter broadcastServerActionStream(@RequestBody @Valid EmitServerBroadcastDTO dto) {
+        List<String> wsList = getBroadcastTargets();
+        List<CompletableFuture<ServerActionResultVO>> futures = serverActionService.broadcast(wsList,
+                dto.getAction());
+        SseEmitter emitter = new SseEmitter(BROADCAST_TIMEOUT_MILLIS);
+        for (CompletableFuture<ServerActionResultVO> future : futures) {
+            future.thenAccept(vo -> {
                 try {
-                    ServerActionResponseDTO response = objectMapper.readValue(jsonText, ServerActionResponseDTO.class);
-                    Boolean isSuccess = ServerActionResponseDTO.isSuccess(response);
-                    return isSuccess;
-                } catch (JsonProcessingException e) {
-                    return false;
+                    emitter.send(SseEmitter.event().name("result").data(vo));
+                } catch (IOException | IllegalStateException ignored) {
+                    // 客户端已断开
                 }
             });
-        } catch (Exception e) {
-            // 捕获全部错误，由全局异常处理器返回
-            throw new RenException("WebSocket连接失败或连接超时");
         }
-        return true;
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
+            try {
+                emitter.send(SseEmitter.event().name("done").data(collectResults(wsList, futures)));
+                emitter.complete();
+            } catch (IOException | IllegalStateException ignored) {
+                // 客户端已断开
+            }
+        });
+        return emitter;
+    }
+
+    @Operation(summary = "获取Ws服务端连接状态")
+    @GetMapping("/channel-stats")
+    @RequiresPermissions("sys:role:superAdmin")
+    public Result<List<Map<String, Object>>> getChannelStats() {
+        return new Result<List<Map<String, Object>>>().ok(webSocketChannelPool.getStats());
+    }
+
+    @Operation(summary = "获取Ws服务端节点负载", description = "各节点最后一次心跳上报的会话数和CPU使用率")
+    @GetMapping("/nodes")
+    @RequiresPermissions("sys:role:superAdmin")
+    public Result<List<ServerNodeVO>> getServerNodes() {
+        return new Result<List<ServerNodeVO>>().ok(serverNodeService.getNodes());
+    }
+
+    private List<String> getBroadcastTargets() {
+        List<String> wsList = serverActionService.getServerList();
+        if (wsList.isEmpty()) {
+            throw new RenException("未配置服务端WebSocket地址");
+        }
+        return wsList;
+    }
+
+    /**
+     * 汇总各节点结果，未完成的节点success为空
+     */
+    private static List<ServerActionResultVO> collectResults(List<String> wsList,
+            List<CompletableFuture<ServerActionResultVO>> futures) {
+        List<ServerActionResultVO> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<ServerActionResultVO> future = futures.get(i);
+            if (future.isDone()) {
+                results.add(future.join());
+            } else {
+                results.add(new ServerActionResultVO(wsList.get(i), null, "等待响应中", null));
+            }
+        }
+        return results;
     }
 }
@@ -0,0 +1,17 @@
+package xiaozhi.modules.sys.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import xiaozhi.modules.sys.enums.ServerActionEnum;
+
+/**
+ * 向全部python服务端广播操作DTO
+ */
+@Data
+public class EmitServerBroadcastDTO {
+
+    @Schema(description = "指定操作")
+    @NotNull(message = "操作不能为空")
+    private ServerActionEnum action;
+}
@@ -0,0 +1,37 @@
+package xiaozhi.modules.sys.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import xiaozhi.modules.sys.enums.ServerActionEnum;
+import xiaozhi.modules.sys.vo.ServerActionResultVO;
+
+/**
+ * 向python服务端下发动作
+ */
+public interface ServerActionService {
+    /**
+     * 获取配置的Ws服务端列表
+     *
+     * @return ws地址列表
+     */
+    List<String> getServerList();
+
+    /**
+     * 向指定服务端下发动作并等待响应
+     *
+     * @param targetWs 目标ws地址
+     * @param action   动作
+     * @return 是否成功
+     */
+    Boolean emit(String targetWs, ServerActionEnum action);
+
+    /**
+     * 向多个服务端并发下发动作，不等待响应
+     *
+     * @param targets 目标ws地址列表
+     * @param action  动作
+     * @return 与targets顺序一致的执行结果，future不会异常完成，失败和超时体现在结果中
+     */
+    List<CompletableFuture<ServerActionResultVO>> broadcast(List<String> targets, ServerActionEnum action);
+}
@@ -0,0 +1,33 @@
+package xiaozhi.modules.sys.service;
+
+import java.util.List;
+
+import xiaozhi.modules.config.dto.ServerHeartbeatDTO;
+import xiaozhi.modules.sys.vo.ServerNodeVO;
+
+/**
+ * xiaozhi-server节点注册与websocket地址分配
+ */
+public interface ServerNodeService {
+    /**
+     * 记录节点心跳和负载
+     *
+     * @param dto 心跳信息
+     */
+    void heartbeat(ServerHeartbeatDTO dto);
+
+    /**
+     * 为设备选择websocket地址
+     *
+     * @param macAddress 设备MAC地址，用于设备亲和，可为空
+     * @return websocket地址，未配置时返回null
+     */
+    String selectWebsocketUrl(String macAddress);
+
+    /**
+     * 获取参数server.websocket中各节点的状态
+     *
+     * @return 节点状态列表
+     */
+    List<ServerNodeVO> getNodes();
+}
@@ -28,8 +28,10 @@ public interface SysParamsService extends BaseService<SysParamsEntity> {
     /**
      * 根据参数编码，获取参数的value值
      *
+     * 优先读取本地参数快照，快照随参数版本号更新，因此fromCache为false时也不再查库
+     *
      * @param paramCode 参数编码
-     * @param fromCache 是否从缓存中获取
+     * @param fromCache 是否从缓存中获取，仅在快照不可用时生效
      */
     String getValue(String paramCode, Boolean fromCache);
 
@@ -0,0 +1,152 @@
+package xiaozhi.modules.sys.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.exception.RenException;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
+import xiaozhi.modules.sys.dto.ServerActionPayloadDTO;
+import xiaozhi.modules.sys.dto.ServerActionResponseDTO;
+import xiaozhi.modules.sys.enums.ServerActionEnum;
+import xiaozhi.modules.sys.enums.ServerActionResponseEnum;
+import xiaozhi.modules.sys.service.ServerActionService;
+import xiaozhi.modules.sys.service.SysParamsService;
+import xiaozhi.modules.sys.utils.WebSocketChannelPool;
+import xiaozhi.modules.sys.utils.WebSocketClientManager;
+import xiaozhi.modules.sys.vo.ServerActionResultVO;
+
+/**
+ * 向python服务端下发动作
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class ServerActionServiceImpl implements ServerActionService {
+    /**
+     * 等待服务端响应的最长时间（秒）
+     */
+    public static final long ACTION_TIMEOUT_SECONDS = 120;
+    /**
+     * 管理端连接服务端使用的固定device-id和client-id，便于在服务端日志中识别管理端连接。
+     * 服务端不做特殊处理，管理端连接与普通设备一样计入连接数
+     */
+    public static final String ADMIN_DEVICE_ID = "manager-api";
+    public static final String ADMIN_CLIENT_ID = "manager-api";
+
+    private static final ObjectMapper objectMapper;
+    static {
+        objectMapper = new ObjectMapper();
+        // 忽略json字符串中存在，但pojo中不存在对应字段的情况
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private final SysParamsService sysParamsService;
+    private final SysParamsSnapshot sysParamsSnapshot;
+    private final WebSocketChannelPool webSocketChannelPool;
+
+    @Override
+    public List<String> getServerList() {
+        return sysParamsSnapshot.getList(Constant.SERVER_WEBSOCKET);
+    }
+
+    @Override
+    public Boolean emit(String targetWsUri, ServerActionEnum actionEnum) {
+        if (StringUtils.isBlank(targetWsUri) || actionEnum == null) {
+            return false;
+        }
+        String serverSK = sysParamsService.getValue(Constant.SERVER_SECRET, true);
+        try {
+            // 借用到目标服务端的长连接，发送一个json数据包并等待服务端响应
+            webSocketChannelPool.execute(buildClient(targetWsUri), null, client -> {
+                client.sendJson(
+                        ServerActionPayloadDTO.build(
+                                actionEnum,
+                                Map.of("secret", serverSK)));
+                // 等待服务端响应并持续监听信息
+                return client.listenerWithoutClose((jsonText) -> {
+                    if (StringUtils.isBlank(jsonText)) {
+                        return false;
+                    }
+                    try {
+                        ServerActionResponseDTO response = objectMapper.readValue(jsonText,
+                                ServerActionResponseDTO.class);
+                        Boolean isSuccess = ServerActionResponseDTO.isSuccess(response);
+                        return isSuccess;
+                    } catch (JsonProcessingException e) {
+                        return false;
+                    }
+                }, ACTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            });
+        } catch (Exception e) {
+            // 捕获全部错误，由全局异常处理器返回
+            throw new RenException("WebSocket连接失败或连接超时");
+        }
+        return true;
+    }
+
+    @Override
+    public List<CompletableFuture<ServerActionResultVO>> broadcast(List<String> targets, ServerActionEnum action) {
+        String serverSK = sysParamsService.getValue(Constant.SERVER_SECRET, true);
+        List<CompletableFuture<ServerActionResultVO>> results = new ArrayList<>();
+        for (String targetWs : targets) {
+            results.add(emitAsync(targetWs, action, serverSK));
+        }
+        return results;
+    }
+
+    /**
+     * 异步下发动作：获取连接在虚拟线程中进行，等待响应不占用线程
+     */
+    private CompletableFuture<ServerActionResultVO> emitAsync(String targetWs, ServerActionEnum action,
+            String serverSK) {
+        long start = System.currentTimeMillis();
+        return webSocketChannelPool.executeAsync(buildClient(targetWs), null, client -> {
+            // 先注册监听再发送，避免错过响应；服务端的成功和失败响应都是type=server
+            CompletableFuture<JsonNode> response = client.expectMessage(
+                    node -> ServerActionResponseDTO.DEFAULT_TYPE_FORM_SERVER.equals(node.path("type").asText())
+                            && node.hasNonNull("status"),
+                    ACTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            client.sendJson(ServerActionPayloadDTO.build(action, Map.of("secret", serverSK)));
+            return response;
+        }).handle((node, e) -> {
+            long latency = System.currentTimeMillis() - start;
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                String message = cause instanceof TimeoutException ? "等待服务端响应超时"
+                        : StringUtils.defaultIfBlank(cause.getMessage(), "WebSocket连接失败");
+                log.warn("下发服务端动作失败, 目标: {}, 动作: {}, 原因: {}", targetWs, action.getValue(), message);
+                return new ServerActionResultVO(targetWs, false, message, latency);
+            }
+            boolean success = ServerActionResponseEnum.SUCCESS.getValue().equals(node.path("status").asText());
+            return new ServerActionResultVO(targetWs, success, node.path("message").asText(null), latency);
+        });
+    }
+
+    private static WebSocketClientManager.Builder buildClient(String targetWsUri) {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.add("device-id", ADMIN_DEVICE_ID);
+        headers.add("client-id", ADMIN_CLIENT_ID);
+        return new WebSocketClientManager.Builder()
+                .connectTimeout(3, TimeUnit.SECONDS)
+                .maxSessionDuration(ACTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .uri(targetWsUri)
+                .headers(headers);
+    }
+}
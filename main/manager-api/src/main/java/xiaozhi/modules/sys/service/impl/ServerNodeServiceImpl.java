@@ -0,0 +1,252 @@
+package xiaozhi.modules.sys.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.utils.ConvertUtils;
+import xiaozhi.modules.config.dto.ServerHeartbeatDTO;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
+import xiaozhi.modules.sys.service.ServerNodeService;
+import xiaozhi.modules.sys.vo.ServerNodeVO;
+
+/**
+ * xiaozhi-server节点注册与websocket地址分配
+ * <p>
+ * 各节点定时上报心跳（会话数、最大会话数、CPU使用率），保存在Redis中供所有管理端节点共享。
+ * 心跳由xiaozhi-server的WebSocketServer上报，需要在服务端本地配置server.websocket为本节点的地址。
+ * OTA分配websocket地址时：
+ * <ul>
+ * <li>心跳超时的节点不参与分配，未满载的节点优先</li>
+ * <li>从未上报过心跳的节点（未配置或未升级的服务端）负载未知，仍参与分配，按节点数占比随机分到一份</li>
+ * <li>随机取两个节点，选负载较低的一个（power of two choices）。
+ * 各管理端节点看到的负载都有延迟，总选最空闲的节点会让所有设备同时涌向同一节点，随机取两个可以避免</li>
+ * <li>本节点自上次心跳后分配出去的设备计入负载，避免在两次心跳之间集中分配到同一节点</li>
+ * <li>开启设备亲和时，上次分配的节点仍健康且未满载则继续使用</li>
+ * </ul>
+ * 全部节点都心跳超时时，退回随机分配。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ServerNodeServiceImpl implements ServerNodeService {
+    /**
+     * 心跳超时时间（毫秒），超过后视为不健康
+     */
+    private static final long HEARTBEAT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * 本地节点状态刷新间隔（毫秒）
+     */
+    private static final long REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    /**
+     * 设备亲和保留时间（秒）
+     */
+    private static final long AFFINITY_EXPIRE_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    private final RedisUtils redisUtils;
+    private final SysParamsSnapshot sysParamsSnapshot;
+
+    /**
+     * websocket地址 → 节点状态，每隔{@link #REFRESH_MILLIS}从Redis刷新
+     */
+    private final Map<String, NodeState> states = new ConcurrentHashMap<>();
+    private final Object refreshLock = new Object();
+    private volatile long refreshedAt;
+
+    @Override
+    public void heartbeat(ServerHeartbeatDTO dto) {
+        ServerNodeVO node = ConvertUtils.sourceToTarget(dto, ServerNodeVO.class);
+        node.setWebsocketUrl(dto.getWebsocketUrl().trim());
+        node.setReportedAt(System.currentTimeMillis());
+        redisUtils.hSet(RedisKeys.getServerNodesKey(), node.getWebsocketUrl(), node, RedisUtils.DEFAULT_EXPIRE);
+    }
+
+    @Override
+    public String selectWebsocketUrl(String macAddress) {
+        List<String> urls = sysParamsSnapshot.getList(Constant.SERVER_WEBSOCKET);
+        if (urls.isEmpty()) {
+            return null;
+        }
+        if (urls.size() == 1) {
+            return urls.get(0);
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, NodeState> current = currentStates();
+        List<NodeState> healthy = new ArrayList<>();
+        List<NodeState> available = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String url : urls) {
+            NodeState state = current.get(url);
+            if (state == null) {
+                unknown.add(url);
+                continue;
+            }
+            if (!isHealthy(state.node, now)) {
+                continue;
+            }
+            healthy.add(state);
+            if (!isFull(state)) {
+                available.add(state);
+            }
+        }
+        if (healthy.isEmpty() && unknown.isEmpty()) {
+            // 全部节点心跳超时，退回随机分配
+            return urls.get(ThreadLocalRandom.current().nextInt(urls.size()));
+        }
+
+        boolean affinity = StringUtils.isNotBlank(macAddress)
+                && sysParamsSnapshot.getBoolean(Constant.SERVER_WEBSOCKET_AFFINITY, false);
+        String selectedUrl = null;
+        if (affinity) {
+            Object lastUrl = redisUtils.get(RedisKeys.getDeviceWebsocketAffinityKey(macAddress));
+            if (unknown.contains(lastUrl)) {
+                selectedUrl = (String) lastUrl;
+            }
+            for (NodeState state : available) {
+                if (state.node.getWebsocketUrl().equals(lastUrl)) {
+                    selectedUrl = state.node.getWebsocketUrl();
+                    state.assigned.incrementAndGet();
+                    break;
+                }
+            }
+        }
+        if (selectedUrl == null) {
+            selectedUrl = selectByLoad(healthy, available, unknown);
+        }
+        if (affinity) {
+            redisUtils.set(RedisKeys.getDeviceWebsocketAffinityKey(macAddress), selectedUrl,
+                    AFFINITY_EXPIRE_SECONDS);
+        }
+        return selectedUrl;
+    }
+
+    /**
+     * 负载未知的节点按节点数占比随机分到一份，其余在已上报心跳的节点中按负载选择；
+     * 已上报的节点都满载时只分配到负载未知的节点
+     */
+    private static String selectByLoad(List<NodeState> healthy, List<NodeState> available, List<String> unknown) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (!unknown.isEmpty() && (available.isEmpty()
+                || random.nextInt(unknown.size() + available.size()) < unknown.size())) {
+            return unknown.get(random.nextInt(unknown.size()));
+        }
+        NodeState selected = powerOfTwoChoices(available.isEmpty() ? healthy : available);
+        selected.assigned.incrementAndGet();
+        return selected.node.getWebsocketUrl();
+    }
+
+    @Override
+    public List<ServerNodeVO> getNodes() {
+        long now = System.currentTimeMillis();
+        Map<String, NodeState> current = currentStates();
+        List<ServerNodeVO> nodes = new ArrayList<>();
+        for (String url : sysParamsSnapshot.getList(Constant.SERVER_WEBSOCKET)) {
+            NodeState state = current.get(url);
+            ServerNodeVO node;
+            if (state == null) {
+                node = new ServerNodeVO();
+                node.setWebsocketUrl(url);
+            } else {
+                node = ConvertUtils.sourceToTarget(state.node, ServerNodeVO.class);
+            }
+            node.setHealthy(state != null && isHealthy(state.node, now));
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static NodeState powerOfTwoChoices(List<NodeState> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        NodeState a = candidates.get(first);
+        NodeState b = candidates.get(second);
+        return load(a) <= load(b) ? a : b;
+    }
+
+    /**
+     * 负载：会话数（上报值加本节点此后分配的数量）占最大会话数的比例，按CPU使用率加权。
+     * 未上报最大会话数时直接按会话数比较
+     */
+    private static double load(NodeState state) {
+        ServerNodeVO node = state.node;
+        double sessions = Objects.requireNonNullElse(node.getActiveSessions(), 0) + state.assigned.get() + 1;
+        Integer maxSessions = node.getMaxSessions();
+        double sessionLoad = maxSessions != null && maxSessions > 0 ? sessions / maxSessions : sessions;
+        double cpu = Objects.requireNonNullElse(node.getCpuUsage(), 0.0) / 100;
+        return sessionLoad * (1 + cpu);
+    }
+
+    private static boolean isFull(NodeState state) {
+        Integer maxSessions = state.node.getMaxSessions();
+        return maxSessions != null && maxSessions > 0
+                && Objects.requireNonNullElse(state.node.getActiveSessions(), 0) + state.assigned.get() >= maxSessions;
+    }
+
+    private static boolean isHealthy(ServerNodeVO node, long now) {
+        return node.getReportedAt() != null && now - node.getReportedAt() <= HEARTBEAT_TIMEOUT_MILLIS;
+    }
+
+    private Map<String, NodeState> currentStates() {
+        if (System.currentTimeMillis() - refreshedAt <= REFRESH_MILLIS) {
+            return states;
+        }
+        synchronized (refreshLock) {
+            long now = System.currentTimeMillis();
+            if (now - refreshedAt <= REFRESH_MILLIS) {
+                return states;
+            }
+            try {
+                Map<String, Object> reported = redisUtils.hGetAll(RedisKeys.getServerNodesKey());
+                for (Map.Entry<String, Object> entry : reported.entrySet()) {
+                    if (!(entry.getValue() instanceof ServerNodeVO node)) {
+                        continue;
+                    }
+                    NodeState state = states.get(entry.getKey());
+                    // 收到新的心跳后，本节点此前分配的设备已计入上报的会话数
+                    if (state == null || !Objects.equals(state.node.getReportedAt(), node.getReportedAt())) {
+                        states.put(entry.getKey(), new NodeState(node));
+                    }
+                }
+                states.keySet().retainAll(reported.keySet());
+            } catch (Exception e) {
+                // 读取失败时沿用旧状态，心跳超时后自然退回随机分配
+                log.warn("刷新服务端节点状态失败: {}", e.getMessage());
+            }
+            refreshedAt = now;
+            return states;
+        }
+    }
+
+    private static class NodeState {
+        private final ServerNodeVO node;
+        /**
+         * 本节点自该心跳后分配到此节点的设备数
+         */
+        private final AtomicInteger assigned = new AtomicInteger();
+
+        NodeState(ServerNodeVO node) {
+            this.node = node;
+        }
+    }
+}
@@ -16,10 +16,10 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 
 import lombok.AllArgsConstructor;
+import xiaozhi.common.cache.TwoLevelCacheManager;
+import xiaozhi.common.cache.TwoLevelCacheType;
 import xiaozhi.common.exception.RenException;
 import xiaozhi.common.page.PageData;
-import xiaozhi.common.redis.RedisKeys;
-import xiaozhi.common.redis.RedisUtils;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.utils.ConvertUtils;
 import xiaozhi.modules.sys.dao.SysDictDataDao;
@@ -39,7 +39,7 @@ import xiaozhi.modules.sys.vo.SysDictDataVO;
 public class SysDictDataServiceImpl extends BaseServiceImpl<SysDictDataDao, SysDictDataEntity>
         implements SysDictDataService {
     private final SysUserDao sysUserDao;
-    private final RedisUtils redisUtils;
+    private final TwoLevelCacheManager twoLevelCacheManager;
 
     @Override
     public PageData<SysDictDataVO> page(Map<String, Object> params) {
@@ -83,7 +83,7 @@ public class SysDictDataServiceImpl extends BaseServiceImpl<SysDictDataDao, SysD
         insert(entity);
         // 删除Redis缓存
         String dictType = baseDao.getTypeByTypeId(dto.getDictTypeId());
-        redisUtils.delete(RedisKeys.getDictDataByTypeKey(dictType));
+        twoLevelCacheManager.evict(TwoLevelCacheType.DICT_DATA, dictType);
     }
 
     @Override
@@ -97,7 +97,7 @@ public class SysDictDataServiceImpl extends BaseServiceImpl<SysDictDataDao, SysD
         updateById(entity);
         // 删除Redis缓存
         String dictType = baseDao.getTypeByTypeId(dto.getDictTypeId());
-        redisUtils.delete(RedisKeys.getDictDataByTypeKey(dictType));
+        twoLevelCacheManager.evict(TwoLevelCacheType.DICT_DATA, dictType);
     }
 
     @Override
@@ -107,7 +107,7 @@ public class SysDictDataServiceImpl extends BaseServiceImpl<SysDictDataDao, SysD
             SysDictDataEntity entity = baseDao.selectById(id);
             // 删除Redis缓存
             String dictType = baseDao.getTypeByTypeId(entity.getDictTypeId());
-            redisUtils.delete(RedisKeys.getDictDataByTypeKey(dictType));
+            twoLevelCacheManager.evict(TwoLevelCacheType.DICT_DATA, dictType);
             // 删除
             deleteById(id);
         }
@@ -163,21 +163,6 @@ public class SysDictDataServiceImpl extends BaseServiceImpl<SysDictDataDao, SysD
             return null;
         }
 
-        // 先从Redis获取缓存
-        String key = RedisKeys.getDictDataByTypeKey(dictType);
-        List<SysDictDataItem> cachedData = (List<SysDictDataItem>) redisUtils.get(key);
-        if (cachedData != null) {
-            return cachedData;
-        }
-
-        // 如果缓存中没有，则从数据库获取
-        List<SysDictDataItem> data = baseDao.getDictDataByType(dictType);
-
-        // 存入Redis缓存
-        if (data != null) {
-            redisUtils.set(key, data);
-        }
-
-        return data;
+        return twoLevelCacheManager.get(TwoLevelCacheType.DICT_DATA, dictType, baseDao::getDictDataByType);
     }
 }
\ No newline at end of file
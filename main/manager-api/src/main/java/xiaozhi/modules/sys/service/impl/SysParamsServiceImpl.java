@@ -21,6 +21,10 @@ import xiaozhi.common.page.PageData;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.utils.ConvertUtils;
 import xiaozhi.common.utils.JsonUtils;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
+import xiaozhi.modules.config.event.ConfigChangeEvent;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
+import xiaozhi.modules.sys.cache.SysParamsSnapshot;
 import xiaozhi.modules.sys.dao.SysParamsDao;
 import xiaozhi.modules.sys.dto.SysParamsDTO;
 import xiaozhi.modules.sys.entity.SysParamsEntity;
@@ -34,6 +38,9 @@ import xiaozhi.modules.sys.service.SysParamsService;
 @Service
 public class SysParamsServiceImpl extends BaseServiceImpl<SysParamsDao, SysParamsEntity> implements SysParamsService {
     private final SysParamsRedis sysParamsRedis;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
+    private final ConfigChangePublisher configChangePublisher;
+    private final SysParamsSnapshot sysParamsSnapshot;
 
     @Override
     public PageData<SysParamsDTO> page(Map<String, Object> params) {
@@ -79,6 +86,9 @@ public class SysParamsServiceImpl extends BaseServiceImpl<SysParamsDao, SysParam
         insert(entity);
 
         sysParamsRedis.set(entity.getParamCode(), entity.getParamValue());
+        sysParamsSnapshot.bumpVersion();
+        agentConfigSnapshotCache.evictAll();
+        configChangePublisher.paramChanged(entity.getParamCode(), ConfigChangeEvent.ACTION_UPDATE);
     }
 
     @Override
@@ -90,6 +100,9 @@ public class SysParamsServiceImpl extends BaseServiceImpl<SysParamsDao, SysParam
         updateById(entity);
 
         sysParamsRedis.set(entity.getParamCode(), entity.getParamValue());
+        sysParamsSnapshot.bumpVersion();
+        agentConfigSnapshotCache.evictAll();
+        configChangePublisher.paramChanged(entity.getParamCode(), ConfigChangeEvent.ACTION_UPDATE);
     }
 
     /**
@@ -158,10 +171,20 @@ public class SysParamsServiceImpl extends BaseServiceImpl<SysParamsDao, SysParam
 
         // 删除
         deleteBatchIds(Arrays.asList(ids));
+        sysParamsSnapshot.bumpVersion();
+        agentConfigSnapshotCache.evictAll();
+        for (String paramCode : paramCodes) {
+            configChangePublisher.paramChanged(paramCode, ConfigChangeEvent.ACTION_DELETE);
+        }
     }
 
     @Override
     public String getValue(String paramCode, Boolean fromCache) {
+        Map<String, String> values = sysParamsSnapshot.getValues();
+        if (values != null) {
+            return values.get(paramCode);
+        }
+
         String paramValue = null;
         if (fromCache) {
             paramValue = sysParamsRedis.get(paramCode);
@@ -195,6 +218,11 @@ public class SysParamsServiceImpl extends BaseServiceImpl<SysParamsDao, SysParam
     public int updateValueByCode(String paramCode, String paramValue) {
         int count = baseDao.updateValueByCode(paramCode, paramValue);
         sysParamsRedis.set(paramCode, paramValue);
+        agentConfigSnapshotCache.evictAll();
+        if (count > 0) {
+            sysParamsSnapshot.bumpVersion();
+            configChangePublisher.paramChanged(paramCode, ConfigChangeEvent.ACTION_UPDATE);
+        }
         return count;
     }
 
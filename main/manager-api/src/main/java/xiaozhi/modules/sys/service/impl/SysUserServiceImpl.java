@@ -18,6 +18,7 @@ import lombok.AllArgsConstructor;
 import xiaozhi.common.constant.Constant;
 import xiaozhi.common.exception.ErrorCode;
 import xiaozhi.common.exception.RenException;
+import xiaozhi.common.page.PageCursor;
 import xiaozhi.common.page.PageData;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.utils.ConvertUtils;
@@ -158,6 +159,9 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserDao, SysUserEntit
 
     @Override
     public PageData<AdminPageUserVO> page(AdminPageUserDTO dto) {
+        if (PageCursor.isCursorMode(dto.getCursor())) {
+            return pageByCursor(dto);
+        }
         Map<String, Object> params = new HashMap<String, Object>();
         params.put(Constant.PAGE, dto.getPage());
         params.put(Constant.LIMIT, dto.getLimit());
@@ -165,8 +169,29 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserDao, SysUserEntit
                 getPage(params, "id", true),
                 new QueryWrapper<SysUserEntity>().like(StringUtils.isNotBlank(dto.getMobile()), "username",
                         dto.getMobile()));
+        List<AdminPageUserVO> list = toAdminPageUserVO(page.getRecords());
+        return new PageData<>(list, page.getTotal());
+    }
+
+    /**
+     * 按主键游标分页
+     */
+    private PageData<AdminPageUserVO> pageByCursor(AdminPageUserDTO dto) {
+        int limit = PageCursor.parseLimit(dto.getLimit());
+        QueryWrapper<SysUserEntity> wrapper = new QueryWrapper<SysUserEntity>()
+                .like(StringUtils.isNotBlank(dto.getMobile()), "username", dto.getMobile());
+        long total = Boolean.TRUE.equals(dto.getWithTotal()) ? baseDao.selectCount(wrapper) : -1;
+
+        PageCursor.apply(wrapper, PageCursor.decode(dto.getCursor()), null, "id", true, limit, null,
+                PageCursor::parseLong);
+        List<SysUserEntity> users = baseDao.selectList(wrapper);
+        String nextCursor = PageCursor.next(users, limit, null, SysUserEntity::getId);
+        return new PageData<>(toAdminPageUserVO(users), total, nextCursor);
+    }
+
+    private List<AdminPageUserVO> toAdminPageUserVO(List<SysUserEntity> users) {
         // 循环处理page获取回来的数据，返回需要的字段
-        List<AdminPageUserVO> list = page.getRecords().stream().map(user -> {
+        return users.stream().map(user -> {
             AdminPageUserVO adminPageUserVO = new AdminPageUserVO();
             adminPageUserVO.setUserid(user.getId().toString());
             adminPageUserVO.setMobile(user.getUsername());
@@ -176,7 +201,6 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserDao, SysUserEntit
             adminPageUserVO.setCreateDate(user.getCreateDate());
             return adminPageUserVO;
         }).toList();
-        return new PageData<>(list, page.getTotal());
     }
 
     private boolean isStrongPassword(String password) {
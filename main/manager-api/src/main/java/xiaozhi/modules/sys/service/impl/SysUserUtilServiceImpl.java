@@ -2,8 +2,8 @@ package xiaozhi.modules.sys.service.impl;
 
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
-import xiaozhi.common.redis.RedisKeys;
-import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.common.cache.TwoLevelCacheManager;
+import xiaozhi.common.cache.TwoLevelCacheType;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.modules.sys.dao.SysUserDao;
 import xiaozhi.modules.sys.entity.SysUserEntity;
@@ -15,23 +15,19 @@ import java.util.function.Consumer;
 @AllArgsConstructor
 public class SysUserUtilServiceImpl extends BaseServiceImpl<SysUserDao, SysUserEntity> implements SysUserUtilService {
 
-    private RedisUtils redisUtils;
+    private TwoLevelCacheManager twoLevelCacheManager;
 
     @Override
     public void assignUsername(Long userId, Consumer<String> setter) {
-        String userIdKey = RedisKeys.getUserIdKey(userId);
-
-        Object value = redisUtils.get(userIdKey);
-        String username = (value != null) ? value.toString() : null;
-        if(username != null){
-            setter.accept(username);
-        }else {
+        if (userId == null) {
+            return;
+        }
+        String username = twoLevelCacheManager.get(TwoLevelCacheType.USERNAME, String.valueOf(userId), id -> {
             SysUserEntity entity = baseDao.selectById(userId);
-            if (entity != null) {
-                username = entity.getUsername();
-                redisUtils.set(userIdKey,username,10);
-                setter.accept(username);
-            }
+            return entity == null ? null : entity.getUsername();
+        });
+        if (username != null) {
+            setter.accept(username);
         }
     }
 }
@@ -0,0 +1,407 @@
+package xiaozhi.modules.sys.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * WebSocket长连接池
+ * <p>
+ * 按目标URI维护少量长连接，下发服务端动作、获取MCP工具列表等请求借用池中的连接完成一次请求/响应后归还，
+ * 不再每次请求都重新握手。每条连接同一时间只被一个请求使用，同一URI的并发请求分摊到多条连接上。
+ * <p>
+ * 后台定时对空闲连接发送Ping，超时未收到Pong、已断开或空闲过久的连接会被关闭；
+ * 连接失败的URI按指数退避重连，退避期间的请求直接失败，不再等待连接超时；
+ * 退避期满后的重连在独立的虚拟线程中进行，单个目标连接缓慢不会拖慢其他目标的保活检测。
+ */
+@Slf4j
+@Component
+public class WebSocketChannelPool {
+    /**
+     * 每个URI最多同时使用的连接数
+     */
+    private static final int MAX_CHANNELS_PER_URI = 4;
+    /**
+     * 等待空闲连接的最长时间（秒）
+     */
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 10;
+    /**
+     * 保活检测间隔（秒）
+     */
+    private static final long KEEPALIVE_SECONDS = 20;
+    /**
+     * 超过该时间未收到Pong视为连接失效（毫秒）
+     */
+    private static final long PONG_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(KEEPALIVE_SECONDS * 3);
+    /**
+     * 连接空闲超过该时间后关闭（毫秒）。xiaozhi-server在无活动约120秒后断开连接（Ping不算活动），
+     * 保活检测每20秒一次，实际关闭时间最多再晚一个检测周期，仍明显早于服务端断开
+     */
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    /**
+     * 重连退避初始时间和上限（毫秒）
+     */
+    private static final long BACKOFF_INITIAL_MILLIS = 1000;
+    private static final long BACKOFF_MAX_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    /**
+     * 没有连接且长时间未使用的URI会被移出连接池（毫秒）
+     */
+    private static final long GROUP_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 连接建立后的初始化操作，如MCP的initialize握手，失败时抛出异常
+     */
+    @FunctionalInterface
+    public interface ChannelInitializer {
+        void init(WebSocketClientManager client) throws Exception;
+    }
+
+    /**
+     * 使用连接完成一次请求/响应
+     */
+    @FunctionalInterface
+    public interface ChannelCallback<T> {
+        T doInChannel(WebSocketClientManager client) throws Exception;
+    }
+
+    /**
+     * 使用连接异步完成一次请求/响应，返回的future完成后连接才会归还
+     */
+    @FunctionalInterface
+    public interface AsyncChannelCallback<T> {
+        CompletableFuture<T> doInChannel(WebSocketClientManager client) throws Exception;
+    }
+
+    private final Map<String, ChannelGroup> groups = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    /**
+     * 异步请求获取连接（等待空闲连接、握手）使用虚拟线程，不占用请求线程和平台线程
+     */
+    private ExecutorService acquireExecutor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ws-channel-keepalive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::maintain, KEEPALIVE_SECONDS, KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+        acquireExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("ws-channel-acquire-", 0).factory());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        acquireExecutor.shutdownNow();
+        for (ChannelGroup group : groups.values()) {
+            PooledChannel channel;
+            while ((channel = group.idle.poll()) != null) {
+                close(group, channel);
+            }
+        }
+        groups.clear();
+    }
+
+    /**
+     * 借用目标URI的连接执行请求，没有空闲连接时新建连接
+     *
+     * @param builder     连接参数，以其URI作为连接池的key
+     * @param initializer 新建连接后的初始化操作，可为null
+     * @param callback    请求/响应处理，需使用不关闭连接的监听方法
+     * @return callback的返回值
+     */
+    public <T> T execute(WebSocketClientManager.Builder builder, ChannelInitializer initializer,
+            ChannelCallback<T> callback) throws Exception {
+        ChannelGroup group = group(builder, initializer);
+        PooledChannel channel = acquire(group);
+        try {
+            T result = callback.doInChannel(channel.client);
+            release(group, channel, true);
+            return result;
+        } catch (Exception e) {
+            release(group, channel, false);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步借用目标URI的连接执行请求，调用线程不等待连接和响应
+     *
+     * @param builder     连接参数，以其URI作为连接池的key
+     * @param initializer 新建连接后的初始化操作，可为null
+     * @param callback    异步请求/响应处理
+     * @return 请求结果
+     */
+    public <T> CompletableFuture<T> executeAsync(WebSocketClientManager.Builder builder,
+            ChannelInitializer initializer, AsyncChannelCallback<T> callback) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ChannelGroup group = group(builder, initializer);
+        acquireExecutor.execute(() -> {
+            PooledChannel channel;
+            try {
+                channel = acquire(group);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = callback.doInChannel(channel.client);
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((value, e) -> {
+                release(group, channel, e == null);
+                if (e != null) {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                            ? e.getCause()
+                            : e);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    private ChannelGroup group(WebSocketClientManager.Builder builder, ChannelInitializer initializer) {
+        ChannelGroup group = groups.computeIfAbsent(builder.getUri(), ChannelGroup::new);
+        group.builder = builder;
+        group.initializer = initializer;
+        group.lastUsedAt = System.currentTimeMillis();
+        return group;
+    }
+
+    /**
+     * 获取一条连接：优先复用空闲连接，否则新建连接
+     */
+    private PooledChannel acquire(ChannelGroup group) throws Exception {
+        if (!group.permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException("等待WebSocket连接超时");
+        }
+        try {
+            PooledChannel channel = pollIdle(group);
+            if (channel == null) {
+                channel = connect(group);
+            }
+            channel.client.clearMessages();
+            return channel;
+        } catch (Exception e) {
+            group.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还连接，请求失败或超时后连接中可能残留迟到的响应，直接关闭
+     */
+    private void release(ChannelGroup group, PooledChannel channel, boolean success) {
+        try {
+            channel.lastUsedAt = System.currentTimeMillis();
+            if (success && channel.client.isOpen()) {
+                group.idle.offerFirst(channel);
+            } else {
+                close(group, channel);
+            }
+        } finally {
+            group.permits.release();
+        }
+    }
+
+    /**
+     * 目标URI当前是否可用（未处于连接失败后的退避期）
+     */
+    public boolean isAvailable(String uri) {
+        ChannelGroup group = groups.get(uri);
+        return group == null || group.failures == 0 || System.currentTimeMillis() >= group.retryAt;
+    }
+
+    /**
+     * 各目标URI的连接状态
+     */
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (ChannelGroup group : groups.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("uri", group.uri);
+            item.put("status", group.failures == 0 ? "UP" : "DOWN");
+            item.put("channels", group.total.get());
+            item.put("idle", group.idle.size());
+            item.put("failures", group.failures);
+            item.put("lastError", group.lastError);
+            item.put("lastConnectedAt", group.lastConnectedAt);
+            item.put("retryAt", group.failures == 0 ? null : group.retryAt);
+            stats.add(item);
+        }
+        return stats;
+    }
+
+    /**
+     * 取出一条可用的空闲连接，顺带关闭已断开的连接
+     */
+    private PooledChannel pollIdle(ChannelGroup group) {
+        PooledChannel channel;
+        while ((channel = group.idle.poll()) != null) {
+            if (channel.client.isOpen()) {
+                return channel;
+            }
+            close(group, channel);
+        }
+        return null;
+    }
+
+    private PooledChannel connect(ChannelGroup group) throws Exception {
+        long now = System.currentTimeMillis();
+        if (group.failures > 0 && now < group.retryAt) {
+            throw new IOException("WebSocket连接失败，%d秒后重试：%s".formatted(
+                    TimeUnit.MILLISECONDS.toSeconds(group.retryAt - now) + 1, group.lastError));
+        }
+        WebSocketClientManager client = null;
+        try {
+            client = group.builder.build();
+            if (group.initializer != null) {
+                group.initializer.init(client);
+            }
+        } catch (Exception e) {
+            if (client != null) {
+                client.close();
+            }
+            int failures = ++group.failures;
+            long backoff = Math.min(BACKOFF_INITIAL_MILLIS << Math.min(failures - 1, 16), BACKOFF_MAX_MILLIS);
+            group.retryAt = System.currentTimeMillis() + backoff;
+            group.lastError = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            log.warn("WebSocket连接失败，URI: {}，连续失败{}次，{}ms后重试", group.uri, failures, backoff);
+            throw e;
+        }
+        group.failures = 0;
+        group.lastError = null;
+        group.lastConnectedAt = System.currentTimeMillis();
+        group.total.incrementAndGet();
+        return new PooledChannel(client);
+    }
+
+    private void close(ChannelGroup group, PooledChannel channel) {
+        group.total.decrementAndGet();
+        channel.client.close();
+    }
+
+    /**
+     * 保活：Ping空闲连接，关闭失效、空闲过久的连接；对退避期已过的失败URI尝试重连以恢复健康状态
+     */
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        for (ChannelGroup group : groups.values()) {
+            try {
+                for (PooledChannel channel : new ArrayList<>(group.idle)) {
+                    // 先从空闲队列中移除，避免与借用连接的请求并发写入
+                    if (!group.idle.remove(channel)) {
+                        continue;
+                    }
+                    if (!channel.client.isOpen()
+                            || now - channel.lastUsedAt > IDLE_TIMEOUT_MILLIS
+                            || now - channel.client.getLastPongAt() > PONG_TIMEOUT_MILLIS) {
+                        close(group, channel);
+                        continue;
+                    }
+                    try {
+                        channel.client.sendPing();
+                        group.idle.offerLast(channel);
+                    } catch (IOException e) {
+                        close(group, channel);
+                    }
+                }
+                if (group.failures > 0 && now >= group.retryAt && group.builder != null) {
+                    reconnectAsync(group);
+                }
+                if (group.total.get() == 0 && now - group.lastUsedAt > GROUP_EXPIRE_MILLIS) {
+                    groups.remove(group.uri, group);
+                }
+            } catch (Exception e) {
+                log.error("WebSocket连接保活检测失败，URI: {}", group.uri, e);
+            }
+        }
+    }
+
+    /**
+     * 在虚拟线程中重连退避期已过的URI，同一URI同时只有一个重连任务
+     */
+    private void reconnectAsync(ChannelGroup group) {
+        if (!group.reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        if (!group.permits.tryAcquire()) {
+            group.reconnecting.set(false);
+            return;
+        }
+        try {
+            acquireExecutor.execute(() -> {
+                try {
+                    PooledChannel channel = connect(group);
+                    group.idle.offerLast(channel);
+                    log.info("WebSocket重连成功，URI: {}", group.uri);
+                } catch (Exception ignored) {
+                    // connect中已记录失败次数和下次重试时间
+                } finally {
+                    group.permits.release();
+                    group.reconnecting.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            group.permits.release();
+            group.reconnecting.set(false);
+            throw e;
+        }
+    }
+
+    private static class ChannelGroup {
+        private final String uri;
+        private final BlockingDeque<PooledChannel> idle = new LinkedBlockingDeque<>();
+        private final Semaphore permits = new Semaphore(MAX_CHANNELS_PER_URI);
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicBoolean reconnecting = new AtomicBoolean();
+        private volatile WebSocketClientManager.Builder builder;
+        private volatile ChannelInitializer initializer;
+        private volatile long lastUsedAt;
+        private volatile long lastConnectedAt;
+        private volatile int failures;
+        private volatile long retryAt;
+        private volatile String lastError;
+
+        ChannelGroup(String uri) {
+            this.uri = uri;
+        }
+    }
+
+    private static class PooledChannel {
+        private final WebSocketClientManager client;
+        private volatile long lastUsedAt;
+
+        PooledChannel(WebSocketClientManager client) {
+            this.client = client;
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+    }
+}
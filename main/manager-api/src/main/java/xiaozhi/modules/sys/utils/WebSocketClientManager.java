@@ -5,10 +5,15 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -23,16 +28,20 @@ import java.util.function.Predicate;
 import org.springframework.util.StopWatch;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import xiaozhi.common.utils.DateUtils;
+import xiaozhi.common.utils.JsonRpcTwo;
 
 /**
  * WebSocketClientResource：支持 try-with-resources 模式
@@ -66,6 +75,18 @@ public class WebSocketClientManager implements Closeable {
 
     private final int queueCapacity;
 
+    // 最后一次收到 Pong 的时间，用于连接池的保活检测
+    private volatile long lastPongAt;
+
+    // 发送锁，多个请求共用一条连接时串行写入
+    private final Object sendLock = new Object();
+    // JSON-RPC 请求ID生成器，按连接递增
+    private final AtomicInteger rpcIdGenerator = new AtomicInteger();
+    // 等待响应的 JSON-RPC 请求，key为请求ID
+    private final Map<String, CompletableFuture<JsonNode>> pendingRequests = new ConcurrentHashMap<>();
+    // 等待指定消息的异步监听
+    private final ConcurrentLinkedQueue<MessageWaiter> messageWaiters = new ConcurrentLinkedQueue<>();
+
     // 私有构造，仅由 Builder 调用
     private WebSocketClientManager(Builder b) {
         this.maxSessionDuration = b.maxSessionDuration;
@@ -74,6 +95,7 @@ public class WebSocketClientManager implements Closeable {
         this.textMessageQueue = new LinkedBlockingQueue<>(queueCapacity);
         this.binaryMessageQueue = new LinkedBlockingQueue<>(queueCapacity);
         this.errorFuture = new CompletableFuture<>();
+        this.lastPongAt = System.currentTimeMillis();
     }
 
     public static WebSocketClientManager build(Builder b)
@@ -98,16 +120,150 @@ public class WebSocketClientManager implements Closeable {
      * 发送 Text
      */
     public void sendText(String text) throws IOException {
-        session.sendMessage(new TextMessage(text));
+        synchronized (sendLock) {
+            session.sendMessage(new TextMessage(text));
+        }
     }
 
     public void sendBinary(byte[] data) throws IOException {
-        session.sendMessage(new BinaryMessage(data));
+        synchronized (sendLock) {
+            session.sendMessage(new BinaryMessage(data));
+        }
     }
 
     public void sendJson(Object payload) throws IOException {
-        String json = OBJECT_MAPPER.writeValueAsString(payload);
-        session.sendMessage(new TextMessage(json));
+        sendText(OBJECT_MAPPER.writeValueAsString(payload));
+    }
+
+    /**
+     * 发送 JSON-RPC 请求，按请求ID关联响应。
+     * 不占用线程等待，响应到达时由接收线程完成 future，超时以 TimeoutException 完成
+     *
+     * @param method  方法名
+     * @param params  参数，可为null
+     * @param timeout 本次请求的超时时间
+     * @param unit    超时时间单位
+     * @return 完整的响应报文（包含result或error）
+     */
+    public CompletableFuture<JsonNode> sendRequest(String method, Object params, long timeout, TimeUnit unit) {
+        int id = rpcIdGenerator.incrementAndGet();
+        String key = String.valueOf(id);
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        pendingRequests.put(key, future);
+        future.orTimeout(timeout, unit).whenComplete((r, e) -> pendingRequests.remove(key));
+        try {
+            if (!isOpen()) {
+                throw new IOException("WebSocket 已关闭");
+            }
+            sendJson(new JsonRpcTwo(method, params, id));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 发送 JSON-RPC 通知（没有ID，不等待响应）
+     */
+    public void sendNotification(String method, Object params) throws IOException {
+        Map<String, Object> notification = new LinkedHashMap<>();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", method);
+        if (params != null) {
+            notification.put("params", params);
+        }
+        sendJson(notification);
+    }
+
+    /**
+     * 异步等待第一条满足条件的文本消息，需在发送请求前调用以免错过响应。
+     * 匹配的消息不再进入同步监听的队列
+     *
+     * @param matcher 消息匹配条件，参数为解析后的JSON
+     * @param timeout 超时时间
+     * @param unit    超时时间单位
+     * @return 匹配的消息
+     */
+    public CompletableFuture<JsonNode> expectMessage(Predicate<JsonNode> matcher, long timeout, TimeUnit unit) {
+        MessageWaiter waiter = new MessageWaiter(matcher);
+        messageWaiters.add(waiter);
+        waiter.future.orTimeout(timeout, unit).whenComplete((r, e) -> messageWaiters.remove(waiter));
+        if (!isOpen()) {
+            waiter.future.completeExceptionally(new IOException("WebSocket 已关闭"));
+        }
+        return waiter.future;
+    }
+
+    /**
+     * 将文本消息分发给等待中的 JSON-RPC 请求和异步监听，每条消息只解析一次
+     *
+     * @return 消息是否已被消费
+     */
+    private boolean dispatchAsync(String payload) {
+        if (pendingRequests.isEmpty() && messageWaiters.isEmpty()) {
+            return false;
+        }
+        JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(payload);
+        } catch (IOException e) {
+            return false;
+        }
+        if (node == null || !node.isObject()) {
+            return false;
+        }
+        JsonNode id = node.get("id");
+        if (id != null && !id.isNull() && (node.has("result") || node.has("error"))) {
+            CompletableFuture<JsonNode> future = pendingRequests.remove(id.asText());
+            if (future != null) {
+                future.complete(node);
+                return true;
+            }
+        }
+        Iterator<MessageWaiter> iterator = messageWaiters.iterator();
+        while (iterator.hasNext()) {
+            MessageWaiter waiter = iterator.next();
+            if (waiter.future.isDone()) {
+                iterator.remove();
+                continue;
+            }
+            boolean matched;
+            try {
+                matched = waiter.matcher.test(node);
+            } catch (Exception e) {
+                matched = false;
+            }
+            if (matched && waiter.future.complete(node)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 连接关闭或出错时，使所有等待中的异步请求失败
+     */
+    private void failPending(Throwable cause) {
+        for (String key : pendingRequests.keySet()) {
+            CompletableFuture<JsonNode> future = pendingRequests.remove(key);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+        MessageWaiter waiter;
+        while ((waiter = messageWaiters.poll()) != null) {
+            waiter.future.completeExceptionally(cause);
+        }
+    }
+
+    private static class MessageWaiter {
+        private final Predicate<JsonNode> matcher;
+        private final CompletableFuture<JsonNode> future = new CompletableFuture<>();
+
+        MessageWaiter(Predicate<JsonNode> matcher) {
+            this.matcher = matcher;
+        }
     }
 
     private <T> List<T> listenerCustom(
@@ -143,10 +299,11 @@ public class WebSocketClientManager implements Closeable {
 
     private <T> List<T> listenerCustomWithoutClose(
             BlockingQueue<T> queue,
-            Predicate<T> predicate)
+            Predicate<T> predicate,
+            long timeoutMillis)
             throws InterruptedException, TimeoutException, ExecutionException {
         List<T> collected = new ArrayList<>();
-        long deadline = System.currentTimeMillis() + maxSessionDurationUnit.toMillis(maxSessionDuration);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
 
         while (true) {
             if (errorFuture.isDone()) {
@@ -190,7 +347,47 @@ public class WebSocketClientManager implements Closeable {
      */
     public List<String> listenerWithoutClose(Predicate<String> predicate)
             throws InterruptedException, TimeoutException, ExecutionException {
-        return listenerCustomWithoutClose(textMessageQueue, predicate);
+        return listenerCustomWithoutClose(textMessageQueue, predicate,
+                maxSessionDurationUnit.toMillis(maxSessionDuration));
+    }
+
+    /**
+     * 同步接收多条消息，直到 predicate 为 true 或超过指定时间抛异常；
+     * 不自动关闭连接，用于连接池中的长连接，超时时间按单次请求计算而不是按连接计算
+     *
+     * @return 返回监听期间的所有消息列表
+     */
+    public List<String> listenerWithoutClose(Predicate<String> predicate, long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        return listenerCustomWithoutClose(textMessageQueue, predicate, unit.toMillis(timeout));
+    }
+
+    /**
+     * 清空尚未读取的消息，长连接复用前调用，避免读到上一次请求遗留的消息
+     */
+    public void clearMessages() {
+        textMessageQueue.clear();
+        binaryMessageQueue.clear();
+    }
+
+    /**
+     * 连接是否可用
+     */
+    public boolean isOpen() {
+        return session != null && session.isOpen() && !errorFuture.isDone();
+    }
+
+    /**
+     * 发送 Ping，对端回复的 Pong 会更新 lastPongAt
+     */
+    public void sendPing() throws IOException {
+        synchronized (sendLock) {
+            session.sendMessage(new PingMessage());
+        }
+    }
+
+    public long getLastPongAt() {
+        return lastPongAt;
     }
 
     public List<byte[]> listenerBinary(Predicate<byte[]> predicate)
@@ -235,7 +432,9 @@ public class WebSocketClientManager implements Closeable {
         }
         textMessageQueue.clear();
         binaryMessageQueue.clear();
-        errorFuture.completeExceptionally(new IOException("WebSocket 已关闭"));
+        IOException closed = new IOException("WebSocket 已关闭");
+        errorFuture.completeExceptionally(closed);
+        failPending(closed);
     }
 
     private class InternalHandler extends AbstractWebSocketHandler {
@@ -265,8 +464,10 @@ public class WebSocketClientManager implements Closeable {
         @Override
         protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
             String payload = message.getPayload();
-            // 入队
-            textMessageQueue.offer(payload);
+            // 先交给异步请求，未被消费的再入队
+            if (!dispatchAsync(payload)) {
+                textMessageQueue.offer(payload);
+            }
             // 回调用户注册的 onText
             if (onText != null) {
                 CALLBACK_EXECUTOR.submit(() -> onText.accept(payload));
@@ -289,6 +490,14 @@ public class WebSocketClientManager implements Closeable {
             }
         }
 
+        /**
+         * 处理 Pong
+         */
+        @Override
+        protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+            lastPongAt = System.currentTimeMillis();
+        }
+
         /**
          * 传输错误时回调
          */
@@ -297,6 +506,7 @@ public class WebSocketClientManager implements Closeable {
             super.handleTransportError(session, exception);
             // 保持原有逻辑：完成 errorFuture、回调 onError、关闭会话、异步通知连接失败
             errorFuture.completeExceptionally(exception);
+            failPending(exception);
             if (onError != null) {
                 CALLBACK_EXECUTOR.submit(() -> onError.accept(exception));
             }
@@ -309,6 +519,7 @@ public class WebSocketClientManager implements Closeable {
         @Override
         public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
             super.afterConnectionClosed(session, status);
+            failPending(new IOException("WebSocket 连接已关闭: " + status));
             if (stopWatch.isRunning()) {
                 stopWatch.stop();
             }
@@ -329,6 +540,10 @@ public class WebSocketClientManager implements Closeable {
         private int bufferSize = 8 * 1024; //默认 8kb
         private WebSocketHttpHeaders headers; // 请求头
 
+        public String getUri() {
+            return uri;
+        }
+
         /**
          * 目标 WS URI
          */
@@ -0,0 +1,28 @@
+package xiaozhi.modules.sys.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 服务端动作执行结果VO（每个节点一条）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "服务端动作执行结果")
+public class ServerActionResultVO {
+
+    @Schema(description = "目标ws地址")
+    private String targetWs;
+
+    @Schema(description = "是否成功，为空表示仍在等待响应")
+    private Boolean success;
+
+    @Schema(description = "服务端返回的消息或失败原因")
+    private String message;
+
+    @Schema(description = "耗时（毫秒）")
+    private Long latencyMs;
+}
@@ -0,0 +1,30 @@
+package xiaozhi.modules.sys.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * xiaozhi-server节点状态VO
+ */
+@Data
+@Schema(description = "服务端节点状态")
+public class ServerNodeVO {
+
+    @Schema(description = "websocket地址")
+    private String websocketUrl;
+
+    @Schema(description = "当前活跃会话数")
+    private Integer activeSessions;
+
+    @Schema(description = "最大会话数，为空或0表示不限制")
+    private Integer maxSessions;
+
+    @Schema(description = "CPU使用率（0-100）")
+    private Double cpuUsage;
+
+    @Schema(description = "最后一次心跳时间（毫秒时间戳），为空表示从未上报")
+    private Long reportedAt;
+
+    @Schema(description = "是否健康（心跳未超时）")
+    private Boolean healthy;
+}
@@ -14,12 +14,14 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 
 import cn.hutool.core.collection.CollectionUtil;
 import lombok.AllArgsConstructor;
+import xiaozhi.common.cache.TwoLevelCacheManager;
+import xiaozhi.common.cache.TwoLevelCacheType;
 import xiaozhi.common.constant.Constant;
 import xiaozhi.common.page.PageData;
-import xiaozhi.common.redis.RedisKeys;
-import xiaozhi.common.redis.RedisUtils;
 import xiaozhi.common.service.impl.BaseServiceImpl;
 import xiaozhi.common.utils.ConvertUtils;
+import xiaozhi.modules.config.cache.AgentConfigSnapshotCache;
+import xiaozhi.modules.config.event.ConfigChangePublisher;
 import xiaozhi.modules.model.dto.VoiceDTO;
 import xiaozhi.modules.timbre.dao.TimbreDao;
 import xiaozhi.modules.timbre.dto.TimbreDataDTO;
@@ -39,7 +41,9 @@ import xiaozhi.modules.timbre.vo.TimbreDetailsVO;
 public class TimbreServiceImpl extends BaseServiceImpl<TimbreDao, TimbreEntity> implements TimbreService {
 
     private final TimbreDao timbreDao;
-    private final RedisUtils redisUtils;
+    private final TwoLevelCacheManager twoLevelCacheManager;
+    private final AgentConfigSnapshotCache agentConfigSnapshotCache;
+    private final ConfigChangePublisher configChangePublisher;
 
     @Override
     public PageData<TimbreDetailsVO> page(TimbrePageDTO dto) {
@@ -60,32 +64,10 @@ public class TimbreServiceImpl extends BaseServiceImpl<TimbreDao, TimbreEntity>
 
     @Override
     public TimbreDetailsVO get(String timbreId) {
-        if (StringUtils.isBlank(timbreId)) {
-            return null;
-        }
-
-        // 先从Redis获取缓存
-        String key = RedisKeys.getTimbreDetailsKey(timbreId);
-        TimbreDetailsVO cachedDetails = (TimbreDetailsVO) redisUtils.get(key);
-        if (cachedDetails != null) {
-            return cachedDetails;
-        }
-
-        // 如果缓存中没有，则从数据库获取
-        TimbreEntity entity = baseDao.selectById(timbreId);
-        if (entity == null) {
-            return null;
-        }
-
-        // 转换为VO对象
-        TimbreDetailsVO details = ConvertUtils.sourceToTarget(entity, TimbreDetailsVO.class);
-
-        // 存入Redis缓存
-        if (details != null) {
-            redisUtils.set(key, details);
-        }
-
-        return details;
+        return twoLevelCacheManager.get(TwoLevelCacheType.TIMBRE_DETAILS, timbreId, id -> {
+            TimbreEntity entity = baseDao.selectById(id);
+            return entity == null ? null : ConvertUtils.sourceToTarget(entity, TimbreDetailsVO.class);
+        });
     }
 
     @Override
@@ -104,13 +86,19 @@ public class TimbreServiceImpl extends BaseServiceImpl<TimbreDao, TimbreEntity>
         timbreEntity.setId(timbreId);
         baseDao.updateById(timbreEntity);
         // 删除缓存
-        redisUtils.delete(RedisKeys.getTimbreDetailsKey(timbreId));
+        evictCache(timbreId);
+        agentConfigSnapshotCache.evictAll();
+        configChangePublisher.timbreChanged(timbreId);
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void delete(String[] ids) {
         baseDao.deleteBatchIds(Arrays.asList(ids));
+        for (String id : ids) {
+            evictCache(id);
+        }
+        agentConfigSnapshotCache.evictAll();
     }
 
     @Override
@@ -137,25 +125,14 @@ public class TimbreServiceImpl extends BaseServiceImpl<TimbreDao, TimbreEntity>
 
     @Override
     public String getTimbreNameById(String id) {
-        if (StringUtils.isBlank(id)) {
-            return null;
-        }
-
-        String cachedName = (String) redisUtils.get(RedisKeys.getTimbreNameById(id));
-
-        if (StringUtils.isNotBlank(cachedName)) {
-            return cachedName;
-        }
-
-        TimbreEntity entity = timbreDao.selectById(id);
-        if (entity != null) {
-            String name = entity.getName();
-            if (StringUtils.isNotBlank(name)) {
-                redisUtils.set(RedisKeys.getTimbreNameById(id), name);
-            }
-            return name;
-        }
+        return twoLevelCacheManager.get(TwoLevelCacheType.TIMBRE_NAME, id, timbreId -> {
+            TimbreEntity entity = timbreDao.selectById(timbreId);
+            return entity == null ? null : StringUtils.defaultIfBlank(entity.getName(), null);
+        });
+    }
 
-        return null;
+    private void evictCache(String timbreId) {
+        twoLevelCacheManager.evict(TwoLevelCacheType.TIMBRE_DETAILS, timbreId);
+        twoLevelCacheManager.evict(TwoLevelCacheType.TIMBRE_NAME, timbreId);
     }
 }
\ No newline at end of file
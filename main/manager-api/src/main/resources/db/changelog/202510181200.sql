@@ -0,0 +1,3 @@
+-- 聊天音频支持保存到外部音频存储，表中只记录存储key
+ALTER TABLE `ai_agent_chat_audio`
+    ADD COLUMN `storage_key` VARCHAR(64) NULL COMMENT '音频在外部存储中的key（内容SHA-256），为空时音频保存在audio字段';
@@ -0,0 +1,30 @@
+-- 智能体聊天会话汇总表，会话列表不再对聊天记录表做GROUP BY
+DROP TABLE IF EXISTS ai_agent_chat_session;
+CREATE TABLE ai_agent_chat_session
+(
+    agent_id      VARCHAR(32) NOT NULL COMMENT '智能体id',
+    session_id    VARCHAR(50) NOT NULL COMMENT '会话ID',
+    mac_address   VARCHAR(50) COMMENT 'MAC地址',
+    first_chat_at DATETIME(3) NOT NULL COMMENT '第一条消息时间',
+    last_chat_at  DATETIME(3) NOT NULL COMMENT '最后一条消息时间',
+    chat_count    INT NOT NULL DEFAULT 0 COMMENT '聊天条数',
+    last_content  VARCHAR(255) COMMENT '最后一条消息内容摘要',
+    PRIMARY KEY (agent_id, session_id),
+    INDEX idx_ai_agent_chat_session_agent_last (agent_id, last_chat_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT '智能体聊天会话汇总表';
+
+-- 从已有聊天记录生成会话汇总，摘要与写入时的规则一致：超过100个字符时截取前97个字符加"..."
+INSERT INTO ai_agent_chat_session (agent_id, session_id, mac_address, first_chat_at, last_chat_at, chat_count, last_content)
+SELECT h.agent_id,
+       h.session_id,
+       MAX(h.mac_address),
+       MIN(h.created_at),
+       MAX(h.created_at),
+       COUNT(*),
+       (SELECT CASE WHEN CHAR_LENGTH(l.content) > 100 THEN CONCAT(LEFT(l.content, 97), '...') ELSE l.content END
+        FROM ai_agent_chat_history l
+        WHERE l.agent_id = h.agent_id AND l.session_id = h.session_id
+        ORDER BY l.created_at DESC, l.id DESC LIMIT 1)
+FROM ai_agent_chat_history h
+WHERE h.agent_id IS NOT NULL AND h.session_id IS NOT NULL
+GROUP BY h.agent_id, h.session_id;
@@ -0,0 +1,10 @@
+-- 聊天记录保留策略：按时间定位清理区间、回收无引用音频需要的索引
+ALTER TABLE ai_agent_chat_history ADD INDEX idx_ai_agent_chat_history_created_at (created_at);
+ALTER TABLE ai_agent_chat_history ADD INDEX idx_ai_agent_chat_history_audio_id (audio_id);
+ALTER TABLE ai_agent_chat_history ADD INDEX idx_ai_agent_chat_history_agent_created (agent_id, created_at);
+
+-- 聊天记录保留策略参数
+delete from `sys_params` where id in (119, 120, 121);
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (119, 'server.chat_history_retention_days', '0', 'number', 1, '聊天记录保留天数，0表示永久保留');
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (120, 'server.chat_audio_retention_days', '0', 'number', 1, '聊天音频保留天数，过期只删除音频保留文字，0表示永久保留');
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (121, 'server.chat_history_max_messages', '0', 'number', 1, '每个智能体最多保留的聊天记录条数，0表示不限制');
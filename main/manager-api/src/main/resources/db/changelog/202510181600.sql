@@ -0,0 +1,3 @@
+-- websocket地址分配：设备亲和参数
+delete from `sys_params` where id = 122;
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (122, 'server.websocket_affinity', 'false', 'boolean', 1, '设备是否优先分配到上次的websocket地址（节点健康且未满载时）');
@@ -0,0 +1,7 @@
+-- OTA分批发布与下载限流参数
+delete from `sys_params` where id in (123, 124, 125, 126, 127);
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (123, 'server.ota_rollout_initial_percent', '100', 'number', 1, 'OTA新固件发布后首批可升级的设备百分比（100表示不分批）');
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (124, 'server.ota_rollout_step_percent', '10', 'number', 1, 'OTA分批发布每批增加的设备百分比');
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (125, 'server.ota_rollout_step_minutes', '10', 'number', 1, 'OTA分批发布每批间隔（分钟）');
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (126, 'server.ota_max_active_downloads', '0', 'number', 1, '同一固件同时下载的最大设备数（0表示不限制）');
+INSERT INTO `sys_params` (id, param_code, param_value, value_type, param_type, remark) VALUES (127, 'server.ota_download_rate', '0', 'number', 1, '同一固件每秒允许开始下载的设备数（0表示不限制）');
@@ -0,0 +1,4 @@
+-- 固件文件哈希与ETag，上传时计算，下载时不再读取文件
+ALTER TABLE `ai_ota` ADD COLUMN `md5` varchar(32) DEFAULT NULL COMMENT '文件MD5' AFTER `size`;
+ALTER TABLE `ai_ota` ADD COLUMN `sha256` varchar(64) DEFAULT NULL COMMENT '文件SHA-256' AFTER `md5`;
+ALTER TABLE `ai_ota` ADD COLUMN `etag` varchar(80) DEFAULT NULL COMMENT '下载使用的ETag' AFTER `sha256`;
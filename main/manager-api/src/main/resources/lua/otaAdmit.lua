@@ -0,0 +1,54 @@
+-- OTA下载准入：活跃下载数上限 + 新下载地址令牌桶
+-- KEYS[1] 正在进行的下载（zset，成员为下载ID，score为租约到期时间）
+-- KEYS[2] 令牌桶（hash：tokens、ts）
+-- KEYS[3] 各设备当前占用名额的下载ID（hash：MAC地址 -> 下载ID）
+-- ARGV[1] 设备MAC地址
+-- ARGV[2] 下载ID
+-- ARGV[3] 当前时间（毫秒）
+-- ARGV[4] 租约时长（毫秒），下载结束时由otaRelease.lua归还，租约只在未下载或节点崩溃时兜底
+-- ARGV[5] 最大活跃下载数，0表示不限制
+-- ARGV[6] 每秒下发的新下载地址数，0表示不限制
+-- 返回 1 允许，0 拒绝
+local now = tonumber(ARGV[3])
+local lease = tonumber(ARGV[4])
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now)
+
+-- 下载尚未结束的设备重新检查时，用新的下载ID替换原名额，不占用新的名额和令牌
+local previous = redis.call('HGET', KEYS[3], ARGV[1])
+if previous and redis.call('ZREM', KEYS[1], previous) == 1 then
+    redis.call('ZADD', KEYS[1], now + lease, ARGV[2])
+    redis.call('HSET', KEYS[3], ARGV[1], ARGV[2])
+    redis.call('PEXPIRE', KEYS[1], lease * 2)
+    redis.call('PEXPIRE', KEYS[3], lease * 2)
+    return 1
+end
+
+local maxActive = tonumber(ARGV[5])
+if maxActive > 0 and redis.call('ZCARD', KEYS[1]) >= maxActive then
+    return 0
+end
+
+local rate = tonumber(ARGV[6])
+if rate > 0 then
+    local tokens = tonumber(redis.call('HGET', KEYS[2], 'tokens'))
+    local ts = tonumber(redis.call('HGET', KEYS[2], 'ts'))
+    if not tokens or not ts then
+        tokens = rate
+        ts = now
+    end
+    -- 桶容量为一秒的令牌数
+    tokens = math.min(rate, tokens + math.max(0, now - ts) * rate / 1000)
+    if tokens < 1 then
+        redis.call('HSET', KEYS[2], 'tokens', tostring(tokens), 'ts', now)
+        redis.call('PEXPIRE', KEYS[2], 60000)
+        return 0
+    end
+    redis.call('HSET', KEYS[2], 'tokens', tostring(tokens - 1), 'ts', now)
+    redis.call('PEXPIRE', KEYS[2], 60000)
+end
+
+redis.call('ZADD', KEYS[1], now + lease, ARGV[2])
+redis.call('HSET', KEYS[3], ARGV[1], ARGV[2])
+redis.call('PEXPIRE', KEYS[1], lease * 2)
+redis.call('PEXPIRE', KEYS[3], lease * 2)
+return 1
@@ -0,0 +1,5 @@
+-- OTA下载结束后归还下载名额
+-- KEYS[1] 正在进行的下载（zset，成员为下载ID，score为租约到期时间）
+-- ARGV[1] 下载ID
+-- 返回 归还的名额数
+return redis.call('ZREM', KEYS[1], ARGV[1])
@@ -0,0 +1,322 @@
+package xiaozhi.modules.agent.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import xiaozhi.common.constant.Constant;
+import xiaozhi.common.utils.JsonUtils;
+import xiaozhi.modules.agent.buffer.ChatHistoryIngestBuffer.ChatReport;
+import xiaozhi.modules.agent.dao.AiAgentChatHistoryDao;
+import xiaozhi.modules.agent.dao.AiAgentChatSessionDao;
+import xiaozhi.modules.agent.entity.AgentChatAudioEntity;
+import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
+import xiaozhi.modules.agent.entity.AgentEntity;
+import xiaozhi.modules.agent.service.AgentChatAudioService;
+import xiaozhi.modules.agent.service.AgentService;
+import xiaozhi.modules.device.service.DeviceService;
+
+@DisplayName("聊天记录写入队列测试")
+public class ChatHistoryIngestBufferTest {
+    private static final String MAC = "aa:bb:cc:dd:ee:ff";
+
+    @TempDir
+    Path spillDir;
+
+    private AgentEntity agent;
+    private AiAgentChatHistoryDao historyDao;
+    private AiAgentChatSessionDao sessionDao;
+    private AgentChatAudioService audioService;
+    private ChatHistoryIngestBuffer buffer;
+    /**
+     * 写入成功的记录的会话ID
+     */
+    private final List<String> committed = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        agent = new AgentEntity();
+        agent.setId("agent-1");
+        agent.setChatHistoryConf(Constant.ChatHistoryConfEnum.RECORD_TEXT.getCode());
+        AgentService agentService = mock(AgentService.class);
+        when(agentService.getDefaultAgentByMacAddress(anyString())).thenReturn(agent);
+
+        historyDao = mock(AiAgentChatHistoryDao.class);
+        sessionDao = mock(AiAgentChatSessionDao.class);
+        audioService = mock(AgentChatAudioService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        buffer = new ChatHistoryIngestBuffer(agentService, historyDao, sessionDao, audioService,
+                mock(DeviceService.class), transactionTemplate);
+        ReflectionTestUtils.setField(buffer, "spillPath", spillDir.toString());
+        ReflectionTestUtils.setField(buffer, "running", true);
+    }
+
+    @Test
+    @DisplayName("批量写入因一条坏数据失败时，其余记录逐条写入，只有坏数据进入死信文件")
+    public void testBadRowOnlyDeadLettered() throws IOException {
+        failWhenContains("bad", new DataIntegrityViolationException("Data too long for column 'content'"));
+
+        assertTrue(buffer.commit(List.of(report("s1"), report("bad"), report("s3"))));
+
+        assertEquals(List.of("s1", "s3"), committed);
+        assertEquals(0, readSpill().size());
+        List<Map<String, Object>> deadLetters = readDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals("bad", ((Map<?, ?>) deadLetters.get(0).get("report")).get("sessionId"));
+    }
+
+    @Test
+    @DisplayName("数据库不可用时记录写入溢出文件，重试次数加一，不进入死信文件")
+    public void testTransientFailureSpilled() throws IOException {
+        doThrow(new TransientDataAccessResourceException("Connection refused")).when(historyDao)
+                .insertBatch(anyList());
+
+        assertFalse(buffer.commit(List.of(report("s1"), report("s2"), report("s3"))));
+
+        // 批量一次，逐条重试遇到第一条临时错误后不再继续
+        verify(historyDao, times(2)).insertBatch(anyList());
+        List<ChatReport> spilled = readSpill();
+        assertEquals(3, spilled.size());
+        spilled.forEach(report -> assertEquals(1, report.getAttempts()));
+        assertEquals(0, readDeadLetters().size());
+    }
+
+    @Test
+    @DisplayName("重试次数达到上限的记录进入死信文件")
+    public void testExhaustedAttemptsDeadLettered() throws IOException {
+        doThrow(new TransientDataAccessResourceException("Connection refused")).when(historyDao)
+                .insertBatch(anyList());
+        ChatReport exhausted = report("s1");
+        exhausted.setAttempts(ChatHistoryIngestBuffer.MAX_ATTEMPTS - 1);
+
+        assertFalse(buffer.commit(List.of(exhausted, report("s2"))));
+
+        List<ChatReport> spilled = readSpill();
+        assertEquals(1, spilled.size());
+        assertEquals("s2", spilled.get(0).getSessionId());
+        assertEquals(1, readDeadLetters().size());
+    }
+
+    @Test
+    @DisplayName("超长内容不写数据库，直接进入死信文件；按字符而不是UTF-16长度判断")
+    public void testOverlongContentDeadLettered() throws IOException {
+        failWhenContains("never", new DataIntegrityViolationException("unused"));
+        ChatReport overlong = report("s1");
+        overlong.setContent("a".repeat(1025));
+        ChatReport emoji = report("s2");
+        emoji.setContent("😀".repeat(1024));
+
+        assertTrue(buffer.commit(List.of(overlong, emoji)));
+
+        assertEquals(List.of("s2"), committed);
+        assertEquals(1, readDeadLetters().size());
+    }
+
+    @Test
+    @DisplayName("没有会话ID的记录照常写入，但不更新会话汇总")
+    public void testNullSessionNotSummarized() {
+        failWhenContains("never", new DataIntegrityViolationException("unused"));
+
+        assertTrue(buffer.commit(List.of(report(null))));
+
+        verify(historyDao).insertBatch(anyList());
+        verify(sessionDao, never()).upsertBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("会话摘要超过100个字符时截取97个字符加省略号，不截断emoji")
+    public void testSessionSnippet() {
+        assertEquals("a".repeat(100), ChatHistoryIngestBuffer.snippet("a".repeat(100)));
+        assertEquals("a".repeat(97) + "...", ChatHistoryIngestBuffer.snippet("a".repeat(101)));
+        assertEquals("😀".repeat(97) + "...", ChatHistoryIngestBuffer.snippet("😀".repeat(101)));
+        assertNull(ChatHistoryIngestBuffer.snippet(null));
+    }
+
+    @Test
+    @DisplayName("队列字节数达到上限时记录写入溢出文件")
+    public void testQueueByteBudgetSpills() throws IOException {
+        String audio = "A".repeat(1024 * 1024);
+        for (int i = 0; i < 65; i++) {
+            ChatReport report = report("s" + i);
+            report.setAudioBase64(audio);
+            buffer.offer(report);
+        }
+
+        assertEquals(63, buffer.getStats().get("queueSize"));
+        assertTrue((Long) buffer.getStats().get("queueBytes") <= ChatHistoryIngestBuffer.MAX_QUEUE_BYTES);
+        assertEquals(2, readSpill().size());
+    }
+
+    @Test
+    @DisplayName("智能体不记录音频时不解码音频")
+    public void testAudioNotDecodedWhenNotRecorded() throws IOException {
+        failWhenContains("never", new DataIntegrityViolationException("unused"));
+        ChatReport report = report("s1");
+        report.setAudioBase64("not base64!");
+
+        assertTrue(buffer.commit(List.of(report)));
+
+        assertEquals(List.of("s1"), committed);
+        assertEquals(0, readDeadLetters().size());
+    }
+
+    @Test
+    @DisplayName("记录写入成功后删除暂存的音频文件，写入失败时保留")
+    public void testAudioFileDeletedAfterCommit() throws IOException {
+        ChatReport committedReport = report("s1");
+        committedReport.setAudioFile(Files.write(buffer.createAudioFile(), new byte[16]).toString());
+        ChatReport failedReport = report("bad");
+        failedReport.setAudioFile(Files.write(buffer.createAudioFile(), new byte[16]).toString());
+        failWhenContains("bad", new TransientDataAccessResourceException("Connection refused"));
+
+        assertFalse(buffer.commit(List.of(committedReport, failedReport)));
+
+        assertFalse(Files.exists(Path.of(committedReport.getAudioFile())));
+        assertTrue(Files.exists(Path.of(failedReport.getAudioFile())));
+        assertEquals(failedReport.getAudioFile(), readSpill().get(0).getAudioFile());
+    }
+
+    @Test
+    @DisplayName("重试时沿用音频ID，已写入音频存储的音频不再重复写入")
+    public void testAudioStoredOnceAcrossRetries() throws IOException {
+        agent.setChatHistoryConf(Constant.ChatHistoryConfEnum.RECORD_TEXT_AUDIO.getCode());
+        List<String> stored = new ArrayList<>();
+        doAnswer(inv -> {
+            for (AgentChatAudioEntity audio : inv.<List<AgentChatAudioEntity>>getArgument(0)) {
+                if (audio.getStorageKey() == null) {
+                    stored.add(audio.getId());
+                    audio.setStorageKey("key-" + audio.getId());
+                    audio.setAudio(null);
+                }
+            }
+            return null;
+        }).when(audioService).saveAudioBatch(anyList());
+        doThrow(new TransientDataAccessResourceException("Connection refused")).when(historyDao)
+                .insertBatch(anyList());
+        ChatReport report = report("s1");
+        report.setAudioBase64("AAAA");
+
+        assertFalse(buffer.commit(List.of(report)));
+        ChatReport spilled = readSpill().get(0);
+        assertFalse(buffer.commit(List.of(spilled)));
+
+        assertEquals(1, stored.size());
+        assertEquals(stored.get(0), spilled.getAudioId());
+        assertEquals("key-" + stored.get(0), spilled.getAudioStorageKey());
+    }
+
+    @Test
+    @DisplayName("导入溢出文件成功后删除文件")
+    public void testReplaySpill() throws IOException {
+        writeSpill(250);
+        failWhenContains("never", new DataIntegrityViolationException("unused"));
+
+        buffer.replaySpill();
+
+        assertEquals(250, committed.size());
+        assertFalse(Files.exists(spillDir.resolve("spill.jsonl")));
+        assertFalse(Files.exists(spillDir.resolve("spill.jsonl.replay")));
+    }
+
+    @Test
+    @DisplayName("导入中遇到临时错误时停止，剩余记录原样放回溢出文件")
+    public void testReplayStopsOnTransientFailure() throws IOException {
+        writeSpill(250);
+        doThrow(new TransientDataAccessResourceException("Connection refused")).when(historyDao)
+                .insertBatch(anyList());
+
+        buffer.replaySpill();
+
+        // 第一批：批量一次 + 逐条一次，第二批不再尝试
+        verify(historyDao, times(2)).insertBatch(anyList());
+        List<ChatReport> spilled = readSpill();
+        assertEquals(250, spilled.size());
+        assertEquals(200, spilled.stream().filter(report -> report.getAttempts() == 1).count());
+        assertEquals(50, spilled.stream().filter(report -> report.getAttempts() == 0).count());
+        assertFalse(Files.exists(spillDir.resolve("spill.jsonl.replay")));
+    }
+
+    /**
+     * 批次中包含指定会话ID时抛出异常，否则记录写入成功的会话ID
+     */
+    private void failWhenContains(String sessionId, RuntimeException error) {
+        doAnswer(inv -> {
+            List<AgentChatHistoryEntity> list = inv.getArgument(0);
+            if (list.stream().anyMatch(history -> sessionId.equals(history.getSessionId()))) {
+                throw error;
+            }
+            list.forEach(history -> committed.add(String.valueOf(history.getSessionId())));
+            return null;
+        }).when(historyDao).insertBatch(anyList());
+    }
+
+    private static ChatReport report(String sessionId) {
+        return new ChatReport(MAC, sessionId, (byte) 1, "你好", null, null, null, null, System.currentTimeMillis(), 0);
+    }
+
+    private void writeSpill(int count) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(JsonUtils.toJsonString(report("s" + i))).append('\n');
+        }
+        Files.writeString(spillDir.resolve("spill.jsonl"), lines.toString(), StandardCharsets.UTF_8);
+    }
+
+    private List<ChatReport> readSpill() throws IOException {
+        List<ChatReport> reports = new ArrayList<>();
+        for (String line : readLines("spill.jsonl")) {
+            reports.add(JsonUtils.parseObject(line, ChatReport.class));
+        }
+        return reports;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> readDeadLetters() throws IOException {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (String line : readLines("dead-letter.jsonl")) {
+            records.add(JsonUtils.parseObject(line, Map.class));
+        }
+        return records;
+    }
+
+    private List<String> readLines(String fileName) throws IOException {
+        Path file = spillDir.resolve(fileName);
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream().filter(line -> !line.isBlank()).toList();
+    }
+}
@@ -0,0 +1,196 @@
+package xiaozhi.modules.agent.retention;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import xiaozhi.common.constant.Constant;
+import xiaozhi.modules.agent.dao.AiAgentChatAudioDao;
+import xiaozhi.modules.agent.dao.AiAgentChatHistoryDao;
+import xiaozhi.modules.agent.dao.AiAgentChatSessionDao;
+import xiaozhi.modules.agent.entity.AgentChatHistoryEntity;
+import xiaozhi.modules.sys.service.SysParamsService;
+
+/**
+ * 按保留天数清理的边界测试。聊天记录表用内存列表模拟，查询按Mapper中的SQL条件实现
+ */
+@DisplayName("聊天记录清理测试")
+public class ChatHistoryPurgerTest {
+    private static final long NOW = System.currentTimeMillis();
+
+    /**
+     * 模拟的聊天记录表
+     */
+    private final List<AgentChatHistoryEntity> rows = new ArrayList<>();
+    /**
+     * 被删除的音频ID
+     */
+    private final Set<String> deletedAudioIds = new TreeSet<>();
+    private SysParamsService sysParamsService;
+    private ChatHistoryPurger purger;
+
+    @BeforeEach
+    public void setUp() {
+        AiAgentChatHistoryDao historyDao = mock(AiAgentChatHistoryDao.class);
+        when(historyDao.selectPurgeChunkBefore(any(), any(), any(), anyBoolean(), anyInt()))
+                .thenAnswer(inv -> selectPurgeChunkBefore(inv.getArgument(0), inv.getArgument(1),
+                        inv.getArgument(2), inv.getArgument(3), inv.getArgument(4)));
+        when(historyDao.deleteBatchIds(anyCollection())).thenAnswer(inv -> {
+            Collection<?> ids = inv.getArgument(0);
+            rows.removeIf(row -> ids.contains(row.getId()));
+            return ids.size();
+        });
+        doAnswer(inv -> {
+            List<Long> ids = inv.getArgument(0);
+            rows.stream().filter(row -> ids.contains(row.getId())).forEach(row -> row.setAudioId(null));
+            return null;
+        }).when(historyDao).clearAudioIdByIds(anyList());
+
+        AiAgentChatAudioDao audioDao = mock(AiAgentChatAudioDao.class);
+        when(audioDao.deleteBatchIds(anyCollection())).thenAnswer(inv -> {
+            Collection<?> ids = inv.getArgument(0);
+            ids.forEach(id -> deletedAudioIds.add((String) id));
+            return ids.size();
+        });
+
+        sysParamsService = mock(SysParamsService.class);
+        when(sysParamsService.getValue(anyString(), any())).thenReturn("0");
+
+        purger = new ChatHistoryPurger(historyDao, audioDao, mock(AiAgentChatSessionDao.class), sysParamsService);
+        ReflectionTestUtils.setField(purger, "running", true);
+    }
+
+    @Test
+    @DisplayName("按创建时间清理，与主键顺序无关")
+    public void testRetentionIgnoresIdOrder() {
+        // 主键递增，创建时间乱序：设备上报时间不准、溢出文件导入的旧记录主键更大
+        addRow(1, daysAgo(40), null);
+        addRow(2, daysAgo(1), null);
+        addRow(3, daysAgo(31), null);
+        addRow(4, daysAgo(0), null);
+        addRow(5, daysAgo(45), null);
+        addRow(6, daysAgo(29), null);
+        setParam(Constant.SERVER_CHAT_HISTORY_RETENTION_DAYS, "30");
+
+        purger.sweep();
+
+        assertEquals(Set.of(2L, 4L, 6L), remainingIds());
+    }
+
+    @Test
+    @DisplayName("保留天数边界两侧的记录")
+    public void testRetentionBoundary() {
+        long cutoff = NOW - TimeUnit.DAYS.toMillis(30);
+        addRow(1, cutoff + TimeUnit.MINUTES.toMillis(1), null);
+        addRow(2, cutoff - TimeUnit.MINUTES.toMillis(1), null);
+        setParam(Constant.SERVER_CHAT_HISTORY_RETENTION_DAYS, "30");
+
+        purger.sweep();
+
+        assertEquals(Set.of(1L), remainingIds());
+    }
+
+    @Test
+    @DisplayName("创建时间相同的记录超过一块时按主键继续分块，全部清理")
+    public void testChunksWithSameCreatedAt() {
+        long time = daysAgo(40);
+        for (long id = 1; id <= 1200; id++) {
+            addRow(id, time, null);
+        }
+        addRow(1201, daysAgo(1), null);
+        setParam(Constant.SERVER_CHAT_HISTORY_RETENTION_DAYS, "30");
+
+        purger.sweep();
+
+        assertEquals(Set.of(1201L), remainingIds());
+    }
+
+    @Test
+    @DisplayName("音频过期只清理过期记录的音频，保留文字")
+    public void testAudioRetention() {
+        addRow(1, daysAgo(1), "audio-new");
+        addRow(2, daysAgo(10), "audio-old");
+        addRow(3, daysAgo(10), null);
+        addRow(4, daysAgo(3), "audio-recent");
+        setParam(Constant.SERVER_CHAT_AUDIO_RETENTION_DAYS, "7");
+
+        purger.sweep();
+
+        assertEquals(Set.of(1L, 2L, 3L, 4L), remainingIds());
+        assertEquals(Set.of("audio-old"), deletedAudioIds);
+        assertEquals(List.of("audio-new", "audio-recent"),
+                rows.stream().map(AgentChatHistoryEntity::getAudioId).filter(id -> id != null).toList());
+    }
+
+    /**
+     * 与Mapper中selectPurgeChunkBefore的条件一致
+     */
+    private List<AgentChatHistoryEntity> selectPurgeChunkBefore(Date cutoff, Date afterTime, Long afterId,
+            boolean audioOnly, int limit) {
+        return rows.stream()
+                .filter(row -> row.getCreatedAt().before(cutoff))
+                .filter(row -> afterTime == null || row.getCreatedAt().after(afterTime)
+                        || (row.getCreatedAt().equals(afterTime) && row.getId() > afterId))
+                .filter(row -> !audioOnly || row.getAudioId() != null)
+                .sorted(Comparator.comparing(AgentChatHistoryEntity::getCreatedAt)
+                        .thenComparing(AgentChatHistoryEntity::getId))
+                .limit(limit)
+                .map(this::copy)
+                .toList();
+    }
+
+    private AgentChatHistoryEntity copy(AgentChatHistoryEntity row) {
+        return AgentChatHistoryEntity.builder()
+                .id(row.getId())
+                .agentId(row.getAgentId())
+                .sessionId(row.getSessionId())
+                .audioId(row.getAudioId())
+                .createdAt(row.getCreatedAt())
+                .build();
+    }
+
+    private void addRow(long id, long createdAt, String audioId) {
+        rows.add(AgentChatHistoryEntity.builder()
+                .id(id)
+                .agentId("agent-1")
+                .sessionId("session-1")
+                .audioId(audioId)
+                .createdAt(new Date(createdAt))
+                .build());
+    }
+
+    private void setParam(String paramCode, String value) {
+        when(sysParamsService.getValue(eq(paramCode), any())).thenReturn(value);
+    }
+
+    private Set<Long> remainingIds() {
+        return rows.stream().map(AgentChatHistoryEntity::getId).collect(Collectors.toSet());
+    }
+
+    private static long daysAgo(int days) {
+        return NOW - TimeUnit.DAYS.toMillis(days);
+    }
+}
@@ -0,0 +1,65 @@
+package xiaozhi.modules.agent.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("本地分段音频存储测试")
+public class LocalSegmentAudioStorageTest {
+    @TempDir
+    Path root;
+
+    @Test
+    @DisplayName("索引末尾未写完的行在启动时截掉，之后的索引行不会接在它后面")
+    public void testUnterminatedIndexLineTruncated() throws IOException {
+        byte[] first = "first".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second".getBytes(StandardCharsets.UTF_8);
+        LocalSegmentAudioStorage storage = open();
+        String firstKey = storage.put(first);
+        storage.close();
+        // 模拟写索引时进程崩溃，长度字段只写了一半
+        Files.writeString(root.resolve("index.log"), "abc 1 5 1", StandardOpenOption.APPEND);
+
+        storage = open();
+        String secondKey = storage.put(second);
+        storage.close();
+
+        storage = open();
+        assertArrayEquals(first, storage.get(firstKey));
+        assertArrayEquals(second, storage.get(secondKey));
+        storage.close();
+        List<String> lines = Files.readAllLines(root.resolve("index.log"), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+    }
+
+    @Test
+    @DisplayName("流式写入已存在的内容时不保留本次写入")
+    public void testStreamPutDeduplicated() throws IOException {
+        byte[] data = "audio".getBytes(StandardCharsets.UTF_8);
+        LocalSegmentAudioStorage storage = open();
+        String key = storage.put(data);
+        long segmentSize = Files.size(root.resolve("segment-000001.dat"));
+
+        assertEquals(key, storage.put(new ByteArrayInputStream(data), data.length));
+        assertEquals(segmentSize, Files.size(root.resolve("segment-000001.dat")));
+        assertArrayEquals(data, storage.get(key));
+        storage.close();
+    }
+
+    private LocalSegmentAudioStorage open() throws IOException {
+        LocalSegmentAudioStorage storage = new LocalSegmentAudioStorage(root.toString());
+        storage.init();
+        return storage;
+    }
+}
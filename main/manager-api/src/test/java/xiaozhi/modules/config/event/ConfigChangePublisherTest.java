@@ -0,0 +1,157 @@
+package xiaozhi.modules.config.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+
+/**
+ * 断线重连补发测试
+ */
+@DisplayName("配置变更事件补发测试")
+public class ConfigChangePublisherTest {
+    private static final Pattern SSE_LINE = Pattern.compile("(id|event):(\\S+)");
+
+    private RedisUtils redisUtils;
+    private ConfigChangePublisher publisher;
+
+    @BeforeEach
+    public void setUp() {
+        redisUtils = mock(RedisUtils.class);
+        publisher = new ConfigChangePublisher(redisUtils, mock(RedisMessageListenerContainer.class));
+    }
+
+    @Test
+    @DisplayName("事件连续时逐条补发")
+    public void testReplayContiguous() throws IOException {
+        receive(1, 2, 3, 4, 5);
+        setCurrentSeq(5);
+
+        assertEquals(List.of("config_change:3", "config_change:4", "config_change:5"), replay(2));
+    }
+
+    @Test
+    @DisplayName("乱序到达的事件按序号补发")
+    public void testReplayOutOfOrderArrival() throws IOException {
+        receive(1, 2, 4, 3, 5);
+        setCurrentSeq(5);
+
+        assertEquals(List.of("config_change:2", "config_change:3", "config_change:4", "config_change:5"),
+                replay(1));
+    }
+
+    @Test
+    @DisplayName("补发范围中间缺少序号时发送reset")
+    public void testReplayGapInMiddle() throws IOException {
+        receive(1, 2, 3, 5, 6);
+        setCurrentSeq(6);
+
+        assertEquals(List.of("reset:6"), replay(1));
+    }
+
+    @Test
+    @DisplayName("补发范围末尾缺少序号（事件未到达或发布失败）时发送reset")
+    public void testReplayGapAtEnd() throws IOException {
+        receive(1, 2, 3);
+        setCurrentSeq(4);
+
+        assertEquals(List.of("reset:4"), replay(1));
+    }
+
+    @Test
+    @DisplayName("需要的事件已被淘汰时发送reset")
+    public void testReplayEvicted() throws IOException {
+        for (long seq = 1; seq <= 1100; seq++) {
+            receive(seq);
+        }
+        setCurrentSeq(1100);
+
+        assertEquals(List.of("reset:1100"), replay(50));
+        assertEquals(100, replay(1000).size());
+    }
+
+    @Test
+    @DisplayName("客户端序号大于当前序号（Redis序号被重置）时发送reset")
+    public void testReplayAheadOfCurrent() throws IOException {
+        receive(1, 2);
+        setCurrentSeq(2);
+
+        assertEquals(List.of("reset:2"), replay(10));
+    }
+
+    @Test
+    @DisplayName("已是最新时不补发，重复事件只保留一条")
+    public void testReplayUpToDateAndDuplicate() throws IOException {
+        receive(1, 2);
+        assertFalse(publisher.addRecent(event(2)));
+        setCurrentSeq(2);
+
+        assertEquals(List.of(), replay(2));
+        assertEquals(List.of("config_change:2"), replay(1));
+    }
+
+    private void receive(long... seqs) {
+        for (long seq : seqs) {
+            publisher.addRecent(event(seq));
+        }
+    }
+
+    private static ConfigChangeEvent event(long seq) {
+        ConfigChangeEvent event = new ConfigChangeEvent(ConfigChangeEvent.TYPE_AGENT,
+                ConfigChangeEvent.ACTION_UPDATE, "agent-" + seq, null);
+        event.setSeq(seq);
+        return event;
+    }
+
+    private void setCurrentSeq(long seq) {
+        when(redisUtils.get(RedisKeys.getConfigChangeSeqKey())).thenReturn(seq);
+    }
+
+    /**
+     * 补发并返回发送的事件，格式为 "事件名:序号"
+     */
+    private List<String> replay(long lastSeq) throws IOException {
+        CapturingEmitter emitter = new CapturingEmitter();
+        publisher.replay(emitter, lastSeq);
+        return emitter.sent;
+    }
+
+    private static class CapturingEmitter extends SseEmitter {
+        private final List<String> sent = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String id = null;
+            String name = null;
+            for (DataWithMediaType data : builder.build()) {
+                if (!(data.getData() instanceof String text)) {
+                    continue;
+                }
+                Matcher matcher = SSE_LINE.matcher(text);
+                while (matcher.find()) {
+                    if ("id".equals(matcher.group(1))) {
+                        id = matcher.group(2);
+                    } else {
+                        name = matcher.group(2);
+                    }
+                }
+            }
+            sent.add(name + ":" + id);
+        }
+    }
+}
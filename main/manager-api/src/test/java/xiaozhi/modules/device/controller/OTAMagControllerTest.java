@@ -0,0 +1,223 @@
+package xiaozhi.modules.device.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import xiaozhi.common.redis.RedisKeys;
+import xiaozhi.common.redis.RedisUtils;
+import xiaozhi.modules.device.entity.OtaEntity;
+import xiaozhi.modules.device.service.OtaRolloutService;
+import xiaozhi.modules.device.service.OtaService;
+
+/**
+ * 固件下载次数限制测试，Redis用内存Map模拟。下载响应的文件内容按请求的范围读取，模拟实际发送
+ */
+@DisplayName("固件下载次数测试")
+public class OTAMagControllerTest {
+    private static final String OTA_ID = "ota-1";
+    private static final String UUID = "download-1";
+    private static final String ETAG = "\"etag-v1\"";
+    private static final int SIZE = 1024 * 1024;
+    private static final int KB = 1024;
+
+    @TempDir
+    Path firmwareDir;
+
+    private final Map<String, Object> redis = new ConcurrentHashMap<>();
+    private OtaEntity otaEntity;
+    private OtaRolloutService otaRolloutService;
+    private OTAMagController controller;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        Path firmware = firmwareDir.resolve("firmware.bin");
+        Files.write(firmware, new byte[SIZE]);
+        otaEntity = new OtaEntity();
+        otaEntity.setId(OTA_ID);
+        otaEntity.setType("esp32");
+        otaEntity.setVersion("1.0.0");
+        otaEntity.setSize((long) SIZE);
+        otaEntity.setEtag(ETAG);
+        otaEntity.setFirmwarePath(firmware.toAbsolutePath().toString());
+        OtaService otaService = mock(OtaService.class);
+        when(otaService.selectById(OTA_ID)).thenAnswer(inv -> otaEntity);
+
+        RedisUtils redisUtils = mock(RedisUtils.class);
+        when(redisUtils.get(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        when(redisUtils.increment(anyString(), anyLong())).thenAnswer(
+                inv -> (Long) redis.merge(inv.getArgument(0), 1L, (a, b) -> (Long) a + (Long) b));
+        doAnswer(inv -> redis.remove(inv.<String>getArgument(0))).when(redisUtils).delete(anyString());
+        when(redisUtils.hGetAll(anyString())).thenAnswer(inv -> {
+            Map<String, Object> hash = (Map<String, Object>) redis.get(inv.<String>getArgument(0));
+            return hash == null ? new HashMap<>() : new HashMap<>(hash);
+        });
+        doAnswer(inv -> redis.put(inv.getArgument(0), new HashMap<>(inv.<Map<String, Object>>getArgument(1))))
+                .when(redisUtils).hMSet(anyString(), anyMap(), anyLong());
+        doAnswer(inv -> ((Map<String, Object>) redis.computeIfAbsent(inv.getArgument(0), k -> new HashMap<>()))
+                .put(inv.getArgument(1), inv.getArgument(2))).when(redisUtils).hSet(anyString(), anyString(), any());
+
+        redis.put(RedisKeys.getOtaIdKey(UUID), OTA_ID);
+        otaRolloutService = mock(OtaRolloutService.class);
+        controller = new OTAMagController(otaService, otaRolloutService, redisUtils);
+    }
+
+    @Test
+    @DisplayName("完整下载超过3次后链接失效")
+    public void testFullDownloadsLimited() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.OK, status(download(null, null, null, 0, SIZE)));
+        }
+        assertEquals(HttpStatus.NOT_FOUND, status(download(null, null, null, 0, SIZE)));
+        assertEquals(HttpStatus.NOT_FOUND, status(download(null, null, null, 0, SIZE)));
+    }
+
+    @Test
+    @DisplayName("不带If-Range的Range请求计入下载次数")
+    public void testRangeWithoutIfRangeCounted() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            download("bytes=1-", null, null, 1, SIZE - 1);
+        }
+        assertEquals(HttpStatus.NOT_FOUND, status(download("bytes=1-", null, null, 1, SIZE - 1)));
+    }
+
+    @Test
+    @DisplayName("完整下载后用bytes=1-加正确的If-Range续传，仍计入下载次数")
+    public void testResumeFarBeforeServedCounted() throws IOException {
+        download(null, null, null, 0, SIZE);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(HttpStatus.OK, status(download("bytes=1-", ETAG, null, 1, SIZE - 1)));
+        }
+        assertEquals(3L, downloadCount());
+        assertEquals(HttpStatus.NOT_FOUND, status(download("bytes=1-", ETAG, null, 1, SIZE - 1)));
+    }
+
+    @Test
+    @DisplayName("从上次实际发送到的位置续传不计入下载次数")
+    public void testResumeFromServedPositionNotCounted() throws IOException {
+        download(null, null, null, 0, 300 * KB);
+        download("bytes=" + 300 * KB + "-", ETAG, null, 300 * KB, 300 * KB);
+        // 设备只收到了一部分，起点比已发送位置早但在允许范围内
+        download("bytes=" + 500 * KB + "-", ETAG, null, 500 * KB, SIZE - 500 * KB);
+
+        assertEquals(1L, downloadCount());
+    }
+
+    @Test
+    @DisplayName("续传起点超过已发送位置时计入下载次数")
+    public void testResumeBeyondServedCounted() throws IOException {
+        download(null, null, null, 0, 300 * KB);
+        download("bytes=" + 900 * KB + "-", ETAG, null, 900 * KB, SIZE - 900 * KB);
+
+        assertEquals(2L, downloadCount());
+    }
+
+    @Test
+    @DisplayName("同一次下载不计数的续传次数有上限")
+    public void testResumeCountLimited() throws IOException {
+        download(null, null, null, 0, 300 * KB);
+        for (int i = 0; i < 10; i++) {
+            download("bytes=" + 300 * KB + "-", ETAG, null, 300 * KB, 0);
+        }
+        assertEquals(1L, downloadCount());
+
+        download("bytes=" + 300 * KB + "-", ETAG, null, 300 * KB, 0);
+        assertEquals(2L, downloadCount());
+    }
+
+    @Test
+    @DisplayName("固件替换后ETag变化，续传按新的下载计数")
+    public void testResumeAfterFirmwareChangedCounted() throws IOException {
+        download(null, null, null, 0, 300 * KB);
+        otaEntity.setEtag("\"etag-v2\"");
+
+        download("bytes=" + 300 * KB + "-", ETAG, null, 300 * KB, SIZE - 300 * KB);
+        assertEquals(2L, downloadCount());
+    }
+
+    @Test
+    @DisplayName("304和416响应不发送文件，不计入下载次数")
+    public void testNotModifiedAndUnsatisfiableNotCounted() throws IOException {
+        download(null, null, null, 0, SIZE);
+
+        assertNull(download(null, null, ETAG, 0, 0));
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                status(download("bytes=" + SIZE + "-", null, null, 0, 0)));
+        assertEquals(1L, downloadCount());
+    }
+
+    @Test
+    @DisplayName("文件发送结束或请求未发送文件时归还下载名额")
+    public void testLeaseReleased() throws IOException {
+        ResponseEntity<Resource> response = download(null, null, null, 0, 0);
+        // 文件流关闭时归还
+        verify(otaRolloutService, times(1)).release(OTA_ID, UUID);
+
+        assertEquals(HttpStatus.OK, status(response));
+        assertNull(download(null, null, ETAG, 0, 0));
+        verify(otaRolloutService, times(2)).release(OTA_ID, UUID);
+    }
+
+    /**
+     * 请求下载，响应包含文件时从start开始读取length字节后关闭，模拟发送了这部分内容
+     */
+    private ResponseEntity<Resource> download(String range, String ifRange, String ifNoneMatch, long start,
+            int length) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/otaMag/download/" + UUID);
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        ResponseEntity<Resource> response = controller.downloadFirmware(UUID,
+                new ServletWebRequest(request, new MockHttpServletResponse()));
+        if (response != null && response.getBody() != null) {
+            try (InputStream in = response.getBody().getInputStream()) {
+                in.skipNBytes(start);
+                in.readNBytes(length);
+            }
+        }
+        return response;
+    }
+
+    private static HttpStatus status(ResponseEntity<Resource> response) {
+        return HttpStatus.valueOf(response.getStatusCode().value());
+    }
+
+    private Object downloadCount() {
+        return redis.get(RedisKeys.getOtaDownloadCountKey(UUID));
+    }
+}
@@ -67,6 +67,9 @@ def get_config_from_api(config):
             "http_port": config["server"].get("http_port", ""),
             "vision_explain": config["server"].get("vision_explain", ""),
             "auth_key": config["server"].get("auth_key", ""),
+            # 本节点的websocket地址和最大会话数，用于向manager-api上报心跳
+            "websocket": config["server"].get("websocket", ""),
+            "max_sessions": config["server"].get("max_sessions"),
         }
     return config_data
 
@@ -185,6 +185,28 @@ def report(
         return None
 
 
+def report_server_heartbeat(
+    websocket_url: str, active_sessions: int, max_sessions, cpu_usage: float
+) -> Optional[Dict]:
+    """上报本节点心跳和负载，manager-api据此为设备分配websocket地址。下次心跳会重新上报，失败时不重试"""
+    if not ManageApiClient._instance:
+        return None
+    try:
+        return ManageApiClient._instance._request(
+            "POST",
+            "/config/server-heartbeat",
+            json={
+                "websocketUrl": websocket_url,
+                "activeSessions": active_sessions,
+                "maxSessions": max_sessions,
+                "cpuUsage": cpu_usage,
+            },
+        )
+    except Exception as e:
+        print(f"心跳上报失败: {e}")
+        return None
+
+
 def init_service(config):
     ManageApiClient(config)
 
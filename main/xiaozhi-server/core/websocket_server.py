@@ -1,12 +1,16 @@
 import asyncio
+import psutil
 import websockets
 from config.logger import setup_logging
 from core.connection import ConnectionHandler
 from config.config_loader import get_config_from_api
 from core.utils.modules_initialize import initialize_modules
 from core.utils.util import check_vad_update, check_asr_update
+from config.manage_api_client import report_server_heartbeat
 
 TAG = __name__
+# 心跳上报间隔（秒），manager-api超过30秒未收到心跳的节点不再分配新设备
+HEARTBEAT_INTERVAL_SECONDS = 10
 
 
 class WebSocketServer:
@@ -37,6 +41,9 @@ class WebSocketServer:
         host = server_config.get("ip", "0.0.0.0")
         port = int(server_config.get("port", 8000))
 
+        if self.config.get("read_config_from_api", False):
+            asyncio.create_task(self._report_heartbeat())
+
         async with websockets.serve(
             self._handle_connection, host, port, process_request=self._http_response
         ):
@@ -77,6 +84,26 @@ class WebSocketServer:
                     f"服务器端强制关闭连接时出错: {close_error}"
                 )
 
+    async def _report_heartbeat(self):
+        """定时向manager-api上报本节点的会话数和CPU使用率"""
+        websocket_url = self.config["server"].get("websocket", "")
+        if not websocket_url or "你" in websocket_url:
+            self.logger.bind(tag=TAG).warning(
+                "未配置server.websocket，不上报心跳，manager-api按负载未知分配本节点"
+            )
+            return
+        # 首次调用返回0，作为之后计算CPU使用率的起点
+        psutil.cpu_percent(None)
+        while True:
+            await asyncio.sleep(HEARTBEAT_INTERVAL_SECONDS)
+            await asyncio.to_thread(
+                report_server_heartbeat,
+                websocket_url,
+                len(self.active_connections),
+                self.config["server"].get("max_sessions"),
+                psutil.cpu_percent(None),
+            )
+
     async def _http_response(self, websocket, request_headers):
         # 检查是否为 WebSocket 升级请求
         if request_headers.headers.get("connection", "").lower() == "upgrade":